@@ -0,0 +1,16 @@
+package com.example.wq.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 紧凑主键注解
+ *
+ * 标记在实体类上，开启 wq.compact-key.enabled 后主键 _id 在数据库中以 BIGINT 存储（Java 侧及接口仍为字符串形式），
+ * 未标记的实体（或未开启时）保持 varchar 主键。引用该实体的外键字段需标注
+ * {@code @Type(CompactForeignKeyType.class)}。
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CompactKey {
+}
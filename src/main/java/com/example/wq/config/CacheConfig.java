@@ -43,6 +43,7 @@ public class CacheConfig {
             buildCache("userCache", 10, 1000),
             buildCache("productCache", 30, 500),
             buildCache("queryCache", 5, 2000),
+            buildCache("orderDetailCache", 5, 10000),  // 订单详情（状态流转时主动失效）
             buildCache("demoCache", 10, 100)  // 演示缓存
         ));
 
@@ -0,0 +1,27 @@
+package com.example.wq.config;
+
+import com.example.wq.entity.CompactKeyType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 紧凑主键配置
+ *
+ * wq.compact-key.enabled 控制 @CompactKey 实体的主键与订单外键是否以 BIGINT 映射，默认关闭（varchar，
+ * 与原有表结构一致）。ddl-auto=update 不会修改已有列的类型，已有数据库须先执行紧凑主键迁移再开启；
+ * 开启后启动时校验列类型，仍为字符串时启动失败（CompactKeyMigrationService）
+ */
+@Configuration
+public class CompactKeyConfig {
+
+    /**
+     * 在创建 EntityManagerFactory（构建实体元数据）前设置映射开关
+     */
+    @Bean
+    public HibernatePropertiesCustomizer compactKeyCustomizer(
+            @Value("${wq.compact-key.enabled:false}") boolean enabled) {
+        return properties -> CompactKeyType.setEnabled(enabled);
+    }
+}
@@ -31,7 +31,7 @@ import java.util.List;
  * 特性：
  * 1. 放行用户端和管理端登录接口和接口文档
  * 2. 支持两种Token类型：user（用户端）和admin（管理端）
- * 3. 其他接口需要 JWT 认证
+ * 3. 运维接口需要管理端 Token，其他接口需要 JWT 认证
  * 4. 配置 CORS 跨域支持
  * 5. 禁用 CSRF（API 接口不需要）
  * 6. 防止常见 Web 攻击（XSS、帧劫持等）
@@ -97,6 +97,9 @@ public class SecurityConfig {
                 // 放行通用CRUD接口
                 .requestMatchers("/api/crud/**").permitAll()
 
+                // 运维接口（秒杀/库存分桶/报名排队开关、紧凑主键迁移、缓存与监控）仅限管理端 Token
+                .requestMatchers("/admin/**").hasRole(JwtAuthenticationFilter.ADMIN_ROLE)
+
                 // 其他所有请求都需要认证
                 .anyRequest().authenticated()
             )
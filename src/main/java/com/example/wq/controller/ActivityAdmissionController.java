@@ -0,0 +1,66 @@
+package com.example.wq.controller;
+
+import com.example.wq.entity.Result;
+import com.example.wq.service.ActivityAdmissionQueue;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 活动报名排队管理控制器
+ *
+ * 按活动开启/关闭报名排队模式，查看各活动的排队与录取情况；仅限管理端 Token（SecurityConfig）
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/activity-admission")
+@Tag(name = "活动报名排队管理", description = "热门活动报名排队模式开关与监控接口")
+public class ActivityAdmissionController {
+
+    @Autowired
+    private ActivityAdmissionQueue activityAdmissionQueue;
+
+    /**
+     * 开启活动报名排队模式
+     */
+    @PostMapping("/{activityId}/enable")
+    @Operation(summary = "开启排队模式", description = "该活动的报名请求进入队列，由单个写入线程按批录取")
+    public Result<Map<String, Object>> enable(
+            @Parameter(description = "活动ID") @PathVariable String activityId) {
+        try {
+            return Result.success("排队模式已开启", activityAdmissionQueue.enable(activityId));
+        } catch (Exception e) {
+            log.error("开启报名排队失败: {}", e.getMessage(), e);
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭活动报名排队模式
+     */
+    @PostMapping("/{activityId}/disable")
+    @Operation(summary = "关闭排队模式", description = "已入队的请求照常处理，新请求恢复普通报名")
+    public Result<Map<String, Object>> disable(
+            @Parameter(description = "活动ID") @PathVariable String activityId) {
+        try {
+            return Result.success("排队模式已关闭", activityAdmissionQueue.disable(activityId));
+        } catch (Exception e) {
+            log.error("关闭报名排队失败: {}", e.getMessage(), e);
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 排队统计
+     */
+    @GetMapping("/stats")
+    @Operation(summary = "排队统计", description = "各排队活动的队列长度、录取/拒绝数及批次数")
+    public Result<Map<String, Object>> getStats() {
+        return Result.success(activityAdmissionQueue.getStats());
+    }
+}
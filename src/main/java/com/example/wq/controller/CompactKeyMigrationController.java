@@ -0,0 +1,55 @@
+package com.example.wq.controller;
+
+import com.example.wq.entity.Result;
+import com.example.wq.service.CompactKeyMigrationService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 紧凑主键迁移控制器
+ *
+ * 一次性迁移：需先配置 wq.compact-key.migration.enabled=true，在停机窗口内手动触发；仅限管理端 Token（SecurityConfig）
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/compact-key")
+@Tag(name = "紧凑主键迁移", description = "订单/明细/预占/事件外发及归档表主键迁移为 BIGINT 的一次性运维接口")
+public class CompactKeyMigrationController {
+
+    @Autowired
+    private CompactKeyMigrationService compactKeyMigrationService;
+
+    /**
+     * 查看待迁移列
+     */
+    @GetMapping("/status")
+    @Operation(summary = "查看迁移状态", description = "返回仍为字符串类型的待迁移列")
+    public Result<Map<String, Object>> status() {
+        try {
+            return Result.success(compactKeyMigrationService.getStatus());
+        } catch (Exception e) {
+            log.error("查看紧凑主键迁移状态失败: {}", e.getMessage(), e);
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 执行迁移
+     */
+    @PostMapping("/migrate")
+    @Operation(summary = "执行迁移", description = "历史非数字订单ID重新分配为 Snowflake ID（订单号不变），列改为 BIGINT。" +
+            "多节点同时触发时只有一个节点执行")
+    public Result<Map<String, Object>> migrate() {
+        try {
+            return Result.success("紧凑主键迁移完成", compactKeyMigrationService.migrate());
+        } catch (Exception e) {
+            log.error("紧凑主键迁移失败: {}", e.getMessage(), e);
+            return Result.error(e.getMessage());
+        }
+    }
+}
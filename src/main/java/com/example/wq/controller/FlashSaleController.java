@@ -0,0 +1,68 @@
+package com.example.wq.controller;
+
+import com.example.wq.entity.Result;
+import com.example.wq.service.FlashSaleService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 秒杀管理控制器
+ *
+ * 按商品开启/关闭秒杀模式，查看令牌池与落库队列状态；仅限管理端 Token（SecurityConfig）
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/flash-sale")
+@Tag(name = "秒杀管理", description = "商品秒杀模式开关与监控接口")
+public class FlashSaleController {
+
+    @Autowired
+    private FlashSaleService flashSaleService;
+
+    /**
+     * 开启商品秒杀模式
+     */
+    @PostMapping("/{productId}/enable")
+    @Operation(summary = "开启秒杀", description = "将商品可用库存装入令牌池，之后该商品的下单走秒杀通道")
+    public Result<Map<String, Object>> enable(
+            @Parameter(description = "商品ID") @PathVariable String productId,
+            @Parameter(description = "投放数量，不传则投放全部可用库存") @RequestParam(required = false) Integer tokens,
+            @Parameter(description = "每单限购数量") @RequestParam(defaultValue = "1") int limitPerOrder) {
+        try {
+            return Result.success("秒杀已开启", flashSaleService.enable(productId, tokens, limitPerOrder));
+        } catch (Exception e) {
+            log.error("开启秒杀失败: {}", e.getMessage(), e);
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭商品秒杀模式
+     */
+    @PostMapping("/{productId}/disable")
+    @Operation(summary = "关闭秒杀", description = "作废剩余令牌，商品恢复普通下单")
+    public Result<Map<String, Object>> disable(
+            @Parameter(description = "商品ID") @PathVariable String productId) {
+        try {
+            return Result.success("秒杀已关闭", flashSaleService.disable(productId));
+        } catch (Exception e) {
+            log.error("关闭秒杀失败: {}", e.getMessage(), e);
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 秒杀统计
+     */
+    @GetMapping("/stats")
+    @Operation(summary = "秒杀统计", description = "各秒杀商品的剩余令牌、抢购/售罄次数及落库队列长度")
+    public Result<Map<String, Object>> getStats() {
+        return Result.success(flashSaleService.getStats());
+    }
+}
@@ -181,19 +181,26 @@ public class MallOrderController {
     }
 
     /**
-     * 获取用户订单列表
+     * 获取用户订单列表（游标分页）
      */
     @GetMapping("/list")
-    @Operation(summary = "获取用户订单列表", description = "查询用户的订单列表")
-    public Result<java.util.List<Map<String, Object>>> getUserOrders(
-            @Parameter(description = "用户ID") @RequestParam String userId) {
+    @Operation(summary = "获取用户订单列表", description = "按创建时间倒序游标分页查询用户的订单，翻页时传入上一页返回的 nextCursor")
+    public Result<Map<String, Object>> getUserOrders(
+            @Parameter(description = "用户ID") @RequestParam String userId,
+            @Parameter(description = "分页游标（上一页返回的 nextCursor），首页不传") @RequestParam(required = false) String cursor,
+            @Parameter(description = "每页条数（最大100）") @RequestParam(defaultValue = "20") int size,
+            @Parameter(description = "订单状态：0-待支付 1-已支付 2-已发货 3-已完成 4-已取消，不传查询全部") @RequestParam(required = false) Integer status) {
 
         try {
-            @SuppressWarnings("unchecked")
-            java.util.List<Map<String, Object>> orders = (java.util.List<Map<String, Object>>)
-                    mallOrderService.getUserOrders(userId).get("data");
+            Map<String, Object> result = mallOrderService.getUserOrders(userId, cursor, size, status);
 
-            return Result.success("查询成功", orders);
+            if (Boolean.TRUE.equals(result.get("success"))) {
+                @SuppressWarnings("unchecked")
+                Map<String, Object> data = (Map<String, Object>) result.get("data");
+                return Result.success("查询成功", data);
+            } else {
+                return Result.error((String) result.get("message"));
+            }
         } catch (Exception e) {
             log.error("查询订单列表失败: {}", e.getMessage(), e);
             return Result.error(e.getMessage());
@@ -1,6 +1,11 @@
 package com.example.wq.controller;
 
 import com.example.wq.entity.Result;
+import com.example.wq.service.ActivityMembershipIndex;
+import com.example.wq.service.ActivitySeatAllocator;
+import com.example.wq.service.ActivityTagIndex;
+import com.example.wq.service.GeoIndexService;
+import com.example.wq.service.InventoryLockHousekeepingService;
 import com.zaxxer.hikari.HikariDataSource;
 import com.zaxxer.hikari.HikariPoolMXBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,6 +24,21 @@ import java.util.Map;
  *
  * 访问路径：GET /admin/pool-stats
  * 说明：查看 HikariCP 连接池状态
+ *
+ * 访问路径：GET /admin/inventory-lock-housekeeping
+ * 说明：查看最近一次库存预占清理处理的记录数
+ *
+ * 访问路径：GET /admin/activity-seats
+ * 说明：查看本节点活动名额计数
+ *
+ * 访问路径：GET /admin/geo-index
+ * 说明：查看本节点附近活动/社区索引规模
+ *
+ * 访问路径：GET /admin/activity-tag-index
+ * 说明：查看本节点活动标签索引规模
+ *
+ * 访问路径：GET /admin/activity-membership
+ * 说明：查看本节点报名成员索引规模与命中情况
  */
 @RestController
 @RequestMapping("/admin")
@@ -28,6 +48,21 @@ public class MonitorController {
     @Autowired
     private DataSource dataSource;
 
+    @Autowired
+    private InventoryLockHousekeepingService inventoryLockHousekeepingService;
+
+    @Autowired
+    private ActivitySeatAllocator activitySeatAllocator;
+
+    @Autowired
+    private GeoIndexService geoIndexService;
+
+    @Autowired
+    private ActivityTagIndex activityTagIndex;
+
+    @Autowired
+    private ActivityMembershipIndex activityMembershipIndex;
+
     /**
      * 获取连接池状态
      */
@@ -92,6 +127,46 @@ public class MonitorController {
         return Result.success(info);
     }
 
+    /**
+     * 获取最近一次库存预占清理的统计
+     */
+    @GetMapping("/inventory-lock-housekeeping")
+    public Result<Map<String, Object>> getInventoryLockHousekeeping() {
+        return Result.success(inventoryLockHousekeepingService.getLastRun());
+    }
+
+    /**
+     * 获取本节点活动名额计数
+     */
+    @GetMapping("/activity-seats")
+    public Result<Map<String, Object>> getActivitySeats() {
+        return Result.success(activitySeatAllocator.getStats());
+    }
+
+    /**
+     * 获取本节点附近索引统计
+     */
+    @GetMapping("/geo-index")
+    public Result<Map<String, Object>> getGeoIndex() {
+        return Result.success(geoIndexService.getStats());
+    }
+
+    /**
+     * 获取本节点活动标签索引统计
+     */
+    @GetMapping("/activity-tag-index")
+    public Result<Map<String, Object>> getActivityTagIndex() {
+        return Result.success(activityTagIndex.getStats());
+    }
+
+    /**
+     * 获取本节点报名成员索引统计
+     */
+    @GetMapping("/activity-membership")
+    public Result<Map<String, Object>> getActivityMembership() {
+        return Result.success(activityMembershipIndex.getStats());
+    }
+
     /**
      * 格式化字节数
      */
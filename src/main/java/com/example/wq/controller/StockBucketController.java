@@ -0,0 +1,68 @@
+package com.example.wq.controller;
+
+import com.example.wq.entity.Result;
+import com.example.wq.service.StockBucketService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 库存分桶管理控制器
+ *
+ * 热门商品开启/关闭库存分桶，查看各分桶库存；仅限管理端 Token（SecurityConfig）
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin/stock-bucket")
+@Tag(name = "库存分桶管理", description = "热门商品库存分桶开关与查看接口")
+public class StockBucketController {
+
+    @Autowired
+    private StockBucketService stockBucketService;
+
+    /**
+     * 开启库存分桶
+     */
+    @PostMapping("/{productId}/enable")
+    @Operation(summary = "开启库存分桶", description = "将商品当前库存均分到多个分桶，支付扣减分散到不同行锁")
+    public Result<Map<String, Object>> enable(
+            @Parameter(description = "商品ID") @PathVariable String productId,
+            @Parameter(description = "分桶数（2-64）") @RequestParam(defaultValue = "8") int stripes) {
+        try {
+            return Result.success("库存分桶已开启", stockBucketService.enable(productId, stripes));
+        } catch (Exception e) {
+            log.error("开启库存分桶失败: {}", e.getMessage(), e);
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 关闭库存分桶
+     */
+    @PostMapping("/{productId}/disable")
+    @Operation(summary = "关闭库存分桶", description = "分桶库存汇总回商品表，恢复单行库存")
+    public Result<Map<String, Object>> disable(
+            @Parameter(description = "商品ID") @PathVariable String productId) {
+        try {
+            return Result.success("库存分桶已关闭", stockBucketService.disable(productId));
+        } catch (Exception e) {
+            log.error("关闭库存分桶失败: {}", e.getMessage(), e);
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 查看分桶库存
+     */
+    @GetMapping("/{productId}")
+    @Operation(summary = "查看分桶库存", description = "查询商品各分桶的库存")
+    public Result<Map<String, Object>> getBuckets(
+            @Parameter(description = "商品ID") @PathVariable String productId) {
+        return Result.success(stockBucketService.getBuckets(productId));
+    }
+}
@@ -2,15 +2,21 @@ package com.example.wq.controller.乐享;
 
 import com.example.wq.entity.ActivityRegistration;
 import com.example.wq.entity.Result;
+import com.example.wq.service.ActivityAdmissionQueue;
+import com.example.wq.service.ActivityTagIndex;
 import com.example.wq.service.CommunityActivityService;
+import com.example.wq.service.GeoIndexService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -24,9 +30,18 @@ import java.util.HashMap;
 public class CommunityActivityController {
 
     private final CommunityActivityService communityActivityService;
+    private final ActivityAdmissionQueue activityAdmissionQueue;
+    private final GeoIndexService geoIndexService;
+    private final ActivityTagIndex activityTagIndex;
 
-    public CommunityActivityController(CommunityActivityService communityActivityService) {
+    public CommunityActivityController(CommunityActivityService communityActivityService,
+                                       ActivityAdmissionQueue activityAdmissionQueue,
+                                       GeoIndexService geoIndexService,
+                                       ActivityTagIndex activityTagIndex) {
         this.communityActivityService = communityActivityService;
+        this.activityAdmissionQueue = activityAdmissionQueue;
+        this.geoIndexService = geoIndexService;
+        this.activityTagIndex = activityTagIndex;
     }
 
  
@@ -67,12 +82,56 @@ public class CommunityActivityController {
         return Result.success("查询成功", registered);
     }
 
+    /**
+     * 批量检查用户是否已报名多个活动
+     */
+    @PostMapping("/community-activity/registered-batch")
+    @Operation(summary = "批量检查报名状态", description = "一次查询用户是否已报名多个活动（活动列表页使用），返回 活动ID -> true/false")
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(
+        description = "批量查询报名状态请求参数<br><b>参数说明：</b><br>" +
+                "- <code>userId</code>: 必填，用户ID<br>" +
+                "- <code>activityIds</code>: 必填，活动ID数组（最多200个）",
+        required = true,
+        content = @Content(
+            mediaType = "application/json",
+            schema = @Schema(
+                type = "object",
+                example = "{\"userId\":\"user123\",\"activityIds\":[\"1234567890\",\"1234567891\"]}"
+            )
+        )
+    )
+    public Result<Map<String, Boolean>> isUserRegisteredBatch(@RequestBody Map<String, Object> request) {
+
+        Object userIdValue = request.get("userId");
+        Object activityIdsValue = request.get("activityIds");
+
+        if (userIdValue == null || userIdValue.toString().trim().isEmpty()) {
+            return Result.error("用户ID不能为空");
+        }
+
+        if (!(activityIdsValue instanceof List<?> activityIdList) || activityIdList.isEmpty()) {
+            return Result.error("活动ID列表不能为空");
+        }
+
+        if (activityIdList.size() > 200) {
+            return Result.error("活动ID列表最多200个");
+        }
+
+        List<String> activityIds = activityIdList.stream()
+                .filter(id -> id != null && !id.toString().trim().isEmpty())
+                .map(Object::toString)
+                .toList();
+
+        return Result.success("查询成功",
+                communityActivityService.isUserRegistered(activityIds, userIdValue.toString()));
+    }
+
     /**
      * 用户报名参加活动（优化版：支持免费/付费活动，高并发安全）
      */
     @PostMapping("/community-activity/register")
     @Operation(summary = "报名参加活动", description = "用户报名参加社区活动。免费活动直接报名成功，付费活动需完成支付。" +
-            "使用事务控制+行锁+原子扣减，保证高并发下的数据一致性。")
+            "名额由内存计数闸门+条件更新保证；开启排队模式的活动按批录取。")
     @io.swagger.v3.oas.annotations.parameters.RequestBody(
         description = "报名请求参数<br><b>参数说明：</b><br>" +
                 "- <code>activityId</code>: 必填，活动ID<br>" +
@@ -109,9 +168,10 @@ public class CommunityActivityController {
         }
 
         try {
-            Map<String, Object> result = communityActivityService.registerActivity(
-                    activityId, userId, userName, userPhone, remarks
-            );
+            // 开启排队模式的热门活动进入报名队列按批录取
+            Map<String, Object> result = activityAdmissionQueue.isEnabled(activityId)
+                    ? activityAdmissionQueue.register(activityId, userId, userName, userPhone, remarks)
+                    : communityActivityService.registerActivity(activityId, userId, userName, userPhone, remarks);
             return Result.success("报名成功", result);
         } catch (RuntimeException e) {
             log.error("报名失败: {}", e.getMessage());
@@ -161,4 +221,73 @@ public class CommunityActivityController {
         }
     }
 
+    /**
+     * 查询附近的活动
+     */
+    @GetMapping("/community-activity/nearby")
+    @Operation(summary = "附近的活动", description = "按距离由近到远返回附近未结束的活动，可按活动状态、分类过滤。" +
+            "基于内存空间索引查询，不扫描活动表")
+    public Result<List<Map<String, Object>>> findNearbyActivities(
+            @Parameter(description = "纬度") @RequestParam Double latitude,
+            @Parameter(description = "经度") @RequestParam Double longitude,
+            @Parameter(description = "查询半径（米，默认5000，最大50000）") @RequestParam(required = false) Integer radius,
+            @Parameter(description = "返回条数（默认20，最大100）") @RequestParam(required = false) Integer limit,
+            @Parameter(description = "活动状态，可多选：0-报名中 1-报名结束 3-已满员，不传查询全部未结束的活动") @RequestParam(required = false) List<Integer> status,
+            @Parameter(description = "活动分类：0-文化活动 1-体育健身 2-娱乐休闲 3-志愿服务 4-学习培训，不传查询全部") @RequestParam(required = false) Integer category) {
+
+        try {
+            return Result.success("查询成功",
+                    geoIndexService.findNearbyActivities(latitude, longitude, radius, limit, status, category));
+        } catch (RuntimeException e) {
+            log.error("查询附近活动失败: {}", e.getMessage());
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 查询附近的社区
+     */
+    @GetMapping("/community/nearby")
+    @Operation(summary = "附近的社区", description = "按距离由近到远返回附近的社区，基于内存空间索引查询，不扫描社区表")
+    public Result<List<Map<String, Object>>> findNearbyCommunities(
+            @Parameter(description = "纬度") @RequestParam Double latitude,
+            @Parameter(description = "经度") @RequestParam Double longitude,
+            @Parameter(description = "查询半径（米，默认5000，最大50000）") @RequestParam(required = false) Integer radius,
+            @Parameter(description = "返回条数（默认20，最大100）") @RequestParam(required = false) Integer limit) {
+
+        try {
+            return Result.success("查询成功",
+                    geoIndexService.findNearbyCommunities(latitude, longitude, radius, limit));
+        } catch (RuntimeException e) {
+            log.error("查询附近社区失败: {}", e.getMessage());
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 按标签、分类浏览活动
+     */
+    @GetMapping("/community-activity/browse")
+    @Operation(summary = "按标签浏览活动", description = "按标签（全部包含/任一包含）、分类、状态、开始时间筛选未结束的活动，" +
+            "按开始时间升序分页，并返回各标签、分类、状态的数量统计。基于内存倒排索引查询，不访问数据库")
+    public Result<Map<String, Object>> browseActivities(
+            @Parameter(description = "必须全部包含的标签，可多选") @RequestParam(required = false) List<String> tags,
+            @Parameter(description = "至少包含其一的标签，可多选") @RequestParam(required = false) List<String> anyTags,
+            @Parameter(description = "活动状态，可多选：0-报名中 1-报名结束 3-已满员，不传查询全部未结束的活动") @RequestParam(required = false) List<Integer> status,
+            @Parameter(description = "活动分类，可多选：0-文化活动 1-体育健身 2-娱乐休闲 3-志愿服务 4-学习培训，不传查询全部") @RequestParam(required = false) List<Integer> category,
+            @Parameter(description = "活动开始时间下限，格式 yyyy-MM-dd'T'HH:mm:ss") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startFrom,
+            @Parameter(description = "活动开始时间上限，格式 yyyy-MM-dd'T'HH:mm:ss") @RequestParam(required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTo,
+            @Parameter(description = "页码（从0开始）") @RequestParam(required = false) Integer page,
+            @Parameter(description = "每页条数（默认20，最大100）") @RequestParam(required = false) Integer size) {
+
+        try {
+            return Result.success("查询成功",
+                    activityTagIndex.search(tags, anyTags, status, category, startFrom, startTo, page, size));
+        } catch (RuntimeException e) {
+            log.error("按标签浏览活动失败: {}", e.getMessage());
+            return Result.error(e.getMessage());
+        }
     }
+}
@@ -1,9 +1,11 @@
 package com.example.wq.entity;
 
 import com.example.wq.annotation.ExcludeField;
+import com.example.wq.util.SnowflakeIdGenerator;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Type;
 import org.hibernate.annotations.UpdateTimestamp;
 
 import jakarta.persistence.*;
@@ -21,9 +23,10 @@ public abstract class AbstractHibernateBean implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    @Schema(description = "实体ID", example = "1703123456789_1234")
+    @Schema(description = "实体ID", example = "0001234567890123456")
     @Id
     @Column(name = "_id")
+    @Type(CompactKeyType.class)
     @ExcludeField
     private String _id;
 
@@ -45,10 +48,10 @@ public abstract class AbstractHibernateBean implements Serializable {
     private Integer status = 1;
 
     /**
-     * 生成唯一ID
+     * 生成唯一ID（Snowflake 风格，全局唯一且按时间递增）
      */
     public static String generateId() {
-        return String.valueOf(System.currentTimeMillis()) + "_" + String.valueOf((int)(Math.random() * 10000));
+        return SnowflakeIdGenerator.nextIdString();
     }
 }
 
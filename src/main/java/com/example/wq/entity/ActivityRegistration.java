@@ -19,7 +19,10 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "activity_registration", indexes = {
     @Index(name = "uk_activity_user", columnList = "activity_id,user_id", unique = true),
+    @Index(name = "idx_payment_expire", columnList = "payment_status,payment_expire_time"),
+    @Index(name = "idx_create_time", columnList = "create_time"),
  })
+@EntityListeners(ActivityRegistrationListener.class)
 @Data
 @EqualsAndHashCode(callSuper = true)
 @Schema(description = "活动报名实体")
@@ -77,7 +80,7 @@ public class ActivityRegistration extends AbstractHibernateBean {
     @Column(name = "cancel_reason", length = 500)
     private String cancelReason;
 
-    @Schema(description = "订单号", example = "ACT1705321234567890ABC123")
+    @Schema(description = "订单号", example = "ACT0001234567890123456")
     @Column(name = "order_no", length = 64, unique = true)
     private String orderNo;
 
@@ -0,0 +1,34 @@
+package com.example.wq.entity;
+
+import com.example.wq.context.ApplicationContextProvider;
+import com.example.wq.service.ActivityMembershipIndex;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * 活动报名实体监听器
+ *
+ * 报名记录新增或修改后，将用户追加到报名成员索引；报名记录删除后丢弃该活动的索引。
+ * 批量 UPDATE（取消报名）不删除记录，不影响索引
+ */
+public class ActivityRegistrationListener {
+
+    @PostPersist
+    @PostUpdate
+    public void onSaved(ActivityRegistration registration) {
+        if (ApplicationContextProvider.getApplicationContext() == null) {
+            return;
+        }
+        ApplicationContextProvider.getBean(ActivityMembershipIndex.class)
+                .onRegistered(registration.getActivityId(), registration.getUserId());
+    }
+
+    @PostRemove
+    public void onRemoved(ActivityRegistration registration) {
+        if (ApplicationContextProvider.getApplicationContext() == null) {
+            return;
+        }
+        ApplicationContextProvider.getBean(ActivityMembershipIndex.class).onRemoved(registration.getActivityId());
+    }
+}
@@ -11,6 +11,7 @@ import lombok.EqualsAndHashCode;
  */
 @Entity
 @Table(name = "community")
+@EntityListeners(CommunityListener.class)
 @Data
 @EqualsAndHashCode(callSuper = true)
 @Schema(description = "社区实体")
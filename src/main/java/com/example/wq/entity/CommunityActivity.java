@@ -25,6 +25,7 @@ import java.util.List;
     @Index(name = "idx_audit_status", columnList = "audit_status"),
     @Index(name = "idx_status_start_time", columnList = "status,activity_start_time")
 })
+@EntityListeners(CommunityActivityListener.class)
 @Data
 @EqualsAndHashCode(callSuper = true)
 @Schema(description = "社区活动实体")
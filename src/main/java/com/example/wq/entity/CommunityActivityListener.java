@@ -0,0 +1,38 @@
+package com.example.wq.entity;
+
+import com.example.wq.context.ApplicationContextProvider;
+import com.example.wq.service.ActivityTagIndex;
+import com.example.wq.service.ActivityTransitionEngine;
+import com.example.wq.service.GeoIndexService;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * 社区活动实体监听器
+ *
+ * 活动新增或修改（含报名时间、活动时间变更）后，重新登记状态流转时间点并更新附近活动索引、标签索引；
+ * 活动删除后移出附近活动索引和标签索引。批量 UPDATE 不经过实体，不会触发
+ */
+public class CommunityActivityListener {
+
+    @PostPersist
+    @PostUpdate
+    public void onSaved(CommunityActivity activity) {
+        if (ApplicationContextProvider.getApplicationContext() == null) {
+            return;
+        }
+        ApplicationContextProvider.getBean(ActivityTransitionEngine.class).schedule(activity);
+        ApplicationContextProvider.getBean(GeoIndexService.class).indexActivity(activity);
+        ApplicationContextProvider.getBean(ActivityTagIndex.class).indexActivity(activity);
+    }
+
+    @PostRemove
+    public void onRemoved(CommunityActivity activity) {
+        if (ApplicationContextProvider.getApplicationContext() == null) {
+            return;
+        }
+        ApplicationContextProvider.getBean(GeoIndexService.class).removeActivity(activity.get_id());
+        ApplicationContextProvider.getBean(ActivityTagIndex.class).removeActivity(activity.get_id());
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.wq.entity;
+
+import com.example.wq.context.ApplicationContextProvider;
+import com.example.wq.service.GeoIndexService;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * 社区实体监听器
+ *
+ * 社区新增、修改（含坐标变更、逻辑删除）或删除后，更新附近社区索引
+ */
+public class CommunityListener {
+
+    @PostPersist
+    @PostUpdate
+    public void onSaved(Community community) {
+        if (ApplicationContextProvider.getApplicationContext() == null) {
+            return;
+        }
+        ApplicationContextProvider.getBean(GeoIndexService.class).indexCommunity(community);
+    }
+
+    @PostRemove
+    public void onRemoved(Community community) {
+        if (ApplicationContextProvider.getApplicationContext() == null) {
+            return;
+        }
+        ApplicationContextProvider.getBean(GeoIndexService.class).removeCommunity(community.get_id());
+    }
+}
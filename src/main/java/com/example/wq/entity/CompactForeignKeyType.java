@@ -0,0 +1,18 @@
+package com.example.wq.entity;
+
+import java.util.Properties;
+
+/**
+ * 紧凑外键类型
+ *
+ * 用于引用 {@link com.example.wq.annotation.CompactKey} 实体的外键字段（如订单ID）：
+ * 与被引用的主键一致，开启 wq.compact-key.enabled 时以 BIGINT 存储，否则为 varchar；
+ * 不依赖所在实体是否标记了 CompactKey
+ */
+public class CompactForeignKeyType extends CompactKeyType {
+
+    @Override
+    public void setParameterValues(Properties parameters) {
+        compact = isEnabled();
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.wq.entity;
+
+import com.example.wq.annotation.CompactKey;
+import com.example.wq.util.SnowflakeIdGenerator;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.DynamicParameterizedType;
+import org.hibernate.usertype.UserType;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * 实体主键类型
+ *
+ * 按实体决定 _id 的存储方式：
+ * - 标记了 {@link CompactKey} 的实体：BIGINT（8字节，二级索引与外键更紧凑，比较更快）
+ * - 其他实体：varchar，与原有表结构一致
+ *
+ * BIGINT 映射需配置 wq.compact-key.enabled=true 才生效（默认关闭，所有实体均为 varchar），
+ * 已有数据库须先执行紧凑主键迁移（CompactKeyMigrationService）再开启，开启后启动时校验列类型。
+ * 开关在 Hibernate 构建元数据前由 CompactKeyConfig 设置。
+ *
+ * Java 侧始终为字符串，BIGINT 读出后按 {@link SnowflakeIdGenerator#toIdString(long)} 还原为19位定长形式
+ */
+public class CompactKeyType implements UserType<String>, DynamicParameterizedType {
+
+    private static volatile boolean enabled;
+
+    protected boolean compact;
+
+    /**
+     * 设置是否启用 BIGINT 映射（须在 EntityManagerFactory 创建前调用）
+     */
+    public static void setEnabled(boolean enabled) {
+        CompactKeyType.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setParameterValues(Properties parameters) {
+        String entityName = parameters.getProperty(ENTITY);
+        if (!enabled || entityName == null) {
+            compact = false;
+            return;
+        }
+        try {
+            Class<?> entityClass = Class.forName(entityName, false, CompactKeyType.class.getClassLoader());
+            compact = entityClass.isAnnotationPresent(CompactKey.class);
+        } catch (ClassNotFoundException e) {
+            compact = false;
+        }
+    }
+
+    @Override
+    public int getSqlType() {
+        return compact ? Types.BIGINT : Types.VARCHAR;
+    }
+
+    @Override
+    public Class<String> returnedClass() {
+        return String.class;
+    }
+
+    @Override
+    public boolean equals(String x, String y) {
+        return Objects.equals(x, y);
+    }
+
+    @Override
+    public int hashCode(String x) {
+        return Objects.hashCode(x);
+    }
+
+    @Override
+    public String nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session, Object owner)
+            throws SQLException {
+        if (!compact) {
+            return rs.getString(position);
+        }
+        long value = rs.getLong(position);
+        return rs.wasNull() ? null : SnowflakeIdGenerator.toIdString(value);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, String value, int index, SharedSessionContractImplementor session)
+            throws SQLException {
+        if (value == null) {
+            st.setNull(index, getSqlType());
+        } else if (compact) {
+            st.setLong(index, toKey(value));
+        } else {
+            st.setString(index, value);
+        }
+    }
+
+    @Override
+    public String deepCopy(String value) {
+        return value;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return false;
+    }
+
+    @Override
+    public Serializable disassemble(String value) {
+        return value;
+    }
+
+    @Override
+    public String assemble(Serializable cached, Object owner) {
+        return (String) cached;
+    }
+
+    /**
+     * 字符串ID转为数值键，非数字ID（迁移前的历史格式）视为非法
+     */
+    static Long toKey(String id) {
+        if (id == null || id.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("非法的ID: " + id);
+        }
+    }
+}
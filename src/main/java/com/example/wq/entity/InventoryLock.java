@@ -1,9 +1,11 @@
 package com.example.wq.entity;
 
+import com.example.wq.annotation.CompactKey;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import org.hibernate.annotations.Type;
 
 /**
  * 库存预占实体
@@ -14,8 +16,9 @@ import lombok.EqualsAndHashCode;
     @Index(name = "idx_product_id", columnList = "product_id"),
     @Index(name = "idx_order_id", columnList = "order_id"),
     @Index(name = "idx_expire_time", columnList = "expire_time"),
-    @Index(name = "idx_status", columnList = "status")
+    @Index(name = "idx_status_update_time", columnList = "status,update_time")
 })
+@CompactKey
 @Data
 @EqualsAndHashCode(callSuper = true)
 @Schema(description = "库存预占实体")
@@ -25,7 +28,8 @@ public class InventoryLock extends AbstractHibernateBean {
     @Column(name = "product_id", length = 64, nullable = false)
     private String productId;
 
-    @Schema(description = "订单ID", example = "1703123456789_456")
+    @Schema(description = "订单ID", example = "0001234567890123456")
+    @Type(CompactForeignKeyType.class)
     @Column(name = "order_id", length = 64, nullable = false)
     private String orderId;
 
@@ -0,0 +1,48 @@
+package com.example.wq.entity;
+
+import com.example.wq.annotation.CompactKey;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.hibernate.annotations.Type;
+
+import java.time.LocalDateTime;
+
+/**
+ * 库存预占归档实体
+ * 已释放的预占记录由定时任务从 inventory_lock 批量移入，保留期满后删除；
+ * 主键沿用原预占记录ID
+ */
+@Entity
+@Table(name = "inventory_lock_archive", indexes = {
+    @Index(name = "idx_order_id", columnList = "order_id"),
+    @Index(name = "idx_archive_time", columnList = "archive_time")
+})
+@CompactKey
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Schema(description = "库存预占归档实体")
+public class InventoryLockArchive extends AbstractHibernateBean {
+
+    @Schema(description = "商品ID", example = "1703123456789_123")
+    @Column(name = "product_id", length = 64, nullable = false)
+    private String productId;
+
+    @Schema(description = "订单ID", example = "0001234567890123456")
+    @Type(CompactForeignKeyType.class)
+    @Column(name = "order_id", length = 64, nullable = false)
+    private String orderId;
+
+    @Schema(description = "预占数量", example = "2")
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    @Schema(description = "过期时间（秒级时间戳）", example = "1704067200")
+    @Column(name = "expire_time", nullable = false)
+    private Long expireTime;
+
+    @Schema(description = "归档时间", example = "2024-01-22 14:30:00")
+    @Column(name = "archive_time", nullable = false)
+    private LocalDateTime archiveTime;
+}
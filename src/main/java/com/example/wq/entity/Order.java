@@ -1,5 +1,6 @@
 package com.example.wq.entity;
 
+import com.example.wq.annotation.CompactKey;
 import com.example.wq.enums.OrderStatus;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.persistence.*;
@@ -16,15 +17,17 @@ import java.util.List;
 @Entity
 @Table(name = "wqorder", indexes = {
     @Index(name = "idx_order_no", columnList = "order_no", unique = true),
-    @Index(name = "idx_user_id", columnList = "user_id"),
-    @Index(name = "idx_status", columnList = "status")
+    @Index(name = "idx_user_create_time", columnList = "user_id,create_time"),
+    @Index(name = "idx_status", columnList = "status"),
+    @Index(name = "idx_status_create_time", columnList = "status,create_time")
 })
+@CompactKey
 @Data
 @EqualsAndHashCode(callSuper = true)
 @Schema(description = "订单实体")
 public class Order extends AbstractHibernateBean {
 
-    @Schema(description = "订单编号", example = "ORD20240120123456")
+    @Schema(description = "订单编号", example = "ORD0001234567890123456")
     @Column(name = "order_no", length = 50, unique = true, nullable = false)
     private String orderNo;
 
@@ -0,0 +1,63 @@
+package com.example.wq.entity;
+
+import com.example.wq.annotation.CompactKey;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 订单归档实体
+ * 已完成/已取消且超过保留天数的订单由定时任务从 wqorder 批量移入，主键沿用原订单ID；
+ * 查询订单详情与订单列表时透明回查
+ */
+@Entity
+@Table(name = "wqorder_archive", indexes = {
+    @Index(name = "idx_order_no", columnList = "order_no", unique = true),
+    @Index(name = "idx_user_create_time", columnList = "user_id,create_time")
+})
+@CompactKey
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Schema(description = "订单归档实体")
+public class OrderArchive extends AbstractHibernateBean {
+
+    @Schema(description = "订单编号", example = "ORD0001234567890123456")
+    @Column(name = "order_no", length = 50, unique = true, nullable = false)
+    private String orderNo;
+
+    @Schema(description = "用户ID", example = "1703123456789_1234")
+    @Column(name = "user_id", length = 64, nullable = false)
+    private String userId;
+
+    @Schema(description = "订单总金额", example = "256.00")
+    @Column(name = "total_amount", precision = 10, scale = 2, nullable = false)
+    private BigDecimal totalAmount;
+
+    @Schema(description = "收货人姓名", example = "张三")
+    @Column(name = "receiver_name", length = 50, nullable = false)
+    private String receiverName;
+
+    @Schema(description = "收货人电话", example = "13800138000")
+    @Column(name = "receiver_phone", length = 20, nullable = false)
+    private String receiverPhone;
+
+    @Schema(description = "收货地址", example = "北京市朝阳区xxx街道xxx号")
+    @Column(name = "receiver_address", length = 500, nullable = false)
+    private String receiverAddress;
+
+    @Schema(description = "订单备注", example = "请周末配送")
+    @Column(name = "remark", length = 500)
+    private String remark;
+
+    @Schema(description = "支付时间", example = "2024-01-20T14:30:00")
+    @Column(name = "pay_time")
+    private LocalDateTime payTime;
+
+    @Schema(description = "归档时间", example = "2024-01-22 14:30:00")
+    @Column(name = "archive_time", nullable = false)
+    private LocalDateTime archiveTime;
+}
@@ -1,9 +1,11 @@
 package com.example.wq.entity;
 
+import com.example.wq.annotation.CompactKey;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import org.hibernate.annotations.Type;
 
 import java.math.BigDecimal;
 
@@ -15,12 +17,14 @@ import java.math.BigDecimal;
         @Index(name = "idx_order_id", columnList = "order_id"),
         @Index(name = "idx_product_id", columnList = "product_id")
 })
+@CompactKey
 @Data
 @EqualsAndHashCode(callSuper = true)
 @Schema(description = "订单明细实体")
 public class OrderItem extends AbstractHibernateBean {
 
-    @Schema(description = "订单ID", example = "1703123456789_1234")
+    @Schema(description = "订单ID", example = "0001234567890123456")
+    @Type(CompactForeignKeyType.class)
     @Column(name = "order_id", length = 64, nullable = false)
     private String orderId;
 
@@ -50,4 +54,11 @@ public class OrderItem extends AbstractHibernateBean {
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "order_id", insertable = false, updatable = false)
     private Order order;
+
+    @PrePersist
+    protected void onCreate() {
+        if (get_id() == null || get_id().isEmpty()) {
+            set_id(generateId());
+        }
+    }
 }
@@ -0,0 +1,55 @@
+package com.example.wq.entity;
+
+import com.example.wq.annotation.CompactKey;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.hibernate.annotations.Type;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 订单明细归档实体
+ * 随所属订单一起从 order_item 移入，主键沿用原明细ID
+ */
+@Entity
+@Table(name = "order_item_archive", indexes = {
+        @Index(name = "idx_order_id", columnList = "order_id")
+})
+@CompactKey
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Schema(description = "订单明细归档实体")
+public class OrderItemArchive extends AbstractHibernateBean {
+
+    @Schema(description = "订单ID", example = "0001234567890123456")
+    @Type(CompactForeignKeyType.class)
+    @Column(name = "order_id", length = 64, nullable = false)
+    private String orderId;
+
+    @Schema(description = "商品ID", example = "1703123456789_5678")
+    @Column(name = "product_id", length = 64, nullable = false)
+    private String productId;
+
+    @Schema(description = "商品名称", example = "钙加维D软胶囊")
+    @Column(name = "product_name", length = 200, nullable = false)
+    private String productName;
+
+    @Schema(description = "商品单价", example = "128.00")
+    @Column(name = "product_price", precision = 10, scale = 2, nullable = false)
+    private BigDecimal productPrice;
+
+    @Schema(description = "数量", example = "2")
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    @Schema(description = "小计金额", example = "256.00")
+    @Column(name = "subtotal", precision = 10, scale = 2, nullable = false)
+    private BigDecimal subtotal;
+
+    @Schema(description = "归档时间", example = "2024-01-22 14:30:00")
+    @Column(name = "archive_time", nullable = false)
+    private LocalDateTime archiveTime;
+}
@@ -0,0 +1,76 @@
+package com.example.wq.entity;
+
+import com.example.wq.annotation.CompactKey;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.hibernate.annotations.Type;
+
+import java.time.LocalDateTime;
+
+/**
+ * 订单事件外发表实体
+ * 与订单状态变更在同一事务中写入，由 OrderOutboxDispatcher 批量分发给事件监听器；
+ * 主键按时间递增，分发按主键顺序进行
+ */
+@Entity
+@Table(name = "order_outbox", indexes = {
+    @Index(name = "idx_dispatch_status_next_attempt", columnList = "dispatch_status,next_attempt_time"),
+    @Index(name = "idx_order_id", columnList = "order_id")
+})
+@CompactKey
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Schema(description = "订单事件外发表实体")
+public class OrderOutboxEvent extends AbstractHibernateBean {
+
+    @Schema(description = "事件类型：1-订单创建，2-订单支付，3-订单取消，4-订单超时", example = "2")
+    @Column(name = "event_type", nullable = false)
+    private Integer eventType;
+
+    @Schema(description = "订单ID", example = "0001234567890123456")
+    @Type(CompactForeignKeyType.class)
+    @Column(name = "order_id", length = 64, nullable = false)
+    private String orderId;
+
+    @Schema(description = "用户ID", example = "1703123456789_1234")
+    @Column(name = "user_id", length = 64)
+    private String userId;
+
+    @Schema(description = "事件内容（JSON）")
+    @Column(name = "payload", columnDefinition = "TEXT")
+    private String payload;
+
+    @Schema(description = "分发状态：0-待分发，1-已分发，2-分发失败（超过重试次数）", example = "0")
+    @Column(name = "dispatch_status", nullable = false)
+    private Integer dispatchStatus;
+
+    @Schema(description = "已失败的分发次数", example = "0")
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Schema(description = "下次分发时间", example = "2024-01-22 14:30:00")
+    @Column(name = "next_attempt_time", nullable = false)
+    private LocalDateTime nextAttemptTime;
+
+    @Schema(description = "分发完成时间", example = "2024-01-22 14:30:00")
+    @Column(name = "dispatch_time")
+    private LocalDateTime dispatchTime;
+
+    @PrePersist
+    protected void onCreate() {
+        if (get_id() == null || get_id().isEmpty()) {
+            set_id(generateId());
+        }
+        if (this.dispatchStatus == null) {
+            this.dispatchStatus = 0;
+        }
+        if (this.attempts == null) {
+            this.attempts = 0;
+        }
+        if (this.nextAttemptTime == null) {
+            this.nextAttemptTime = LocalDateTime.now();
+        }
+    }
+}
@@ -52,6 +52,14 @@ public class Product extends AbstractHibernateBean {
     @Column(name = "sales", nullable = false)
     private Integer sales = 0;
 
+    @Schema(description = "销量基数（后台设置或初始数据中不来自订单的销量，按订单校准销量时保留）", example = "0")
+    @Column(name = "sales_offset")
+    private Integer salesOffset;
+
+    @Schema(description = "库存分桶数（0-未分桶；大于0时库存以 product_stock_bucket 为准，stock 为定时汇总值）", example = "0")
+    @Column(name = "stock_stripes")
+    private Integer stockStripes = 0;
+
     @Schema(description = "评分（0-5）", example = "4.5")
     @Column(name = "rating", precision = 3, scale = 2)
     private BigDecimal rating = BigDecimal.ZERO;
@@ -107,6 +115,9 @@ public class Product extends AbstractHibernateBean {
         if (this.sales == null) {
             this.sales = 0;
         }
+        if (this.salesOffset == null) {
+            this.salesOffset = this.sales;
+        }
         if (this.rating == null) {
             this.rating = BigDecimal.ZERO;
         }
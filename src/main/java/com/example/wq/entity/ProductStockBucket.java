@@ -0,0 +1,43 @@
+package com.example.wq.entity;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+/**
+ * 商品库存分桶实体
+ * 热门商品开启分桶后，库存拆分到多行，支付扣减分散到不同行锁上；
+ * 商品表的 stock 由定时任务按分桶汇总回写
+ */
+@Entity
+@Table(name = "product_stock_bucket", indexes = {
+    @Index(name = "uk_product_bucket", columnList = "product_id,bucket_no", unique = true)
+})
+@Data
+@EqualsAndHashCode(callSuper = true)
+@Schema(description = "商品库存分桶实体")
+public class ProductStockBucket extends AbstractHibernateBean {
+
+    @Schema(description = "商品ID", example = "0001234567890123456")
+    @Column(name = "product_id", length = 64, nullable = false)
+    private String productId;
+
+    @Schema(description = "分桶编号（0 ~ 分桶数-1）", example = "0")
+    @Column(name = "bucket_no", nullable = false)
+    private Integer bucketNo;
+
+    @Schema(description = "分桶库存", example = "25")
+    @Column(name = "stock", nullable = false)
+    private Integer stock = 0;
+
+    @PrePersist
+    protected void onCreate() {
+        if (get_id() == null || get_id().isEmpty()) {
+            set_id(generateId());
+        }
+        if (this.stock == null) {
+            this.stock = 0;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.persistence.*;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import org.hibernate.annotations.Type;
 
 /**
  * 商品评价实体
@@ -24,7 +25,8 @@ public class Review extends AbstractHibernateBean {
     @Column(name = "product_id", length = 64, nullable = false)
     private String productId;
 
-    @Schema(description = "订单ID", example = "1703123456789_1234")
+    @Schema(description = "订单ID", example = "0001234567890123456")
+    @Type(CompactForeignKeyType.class)
     @Column(name = "order_id", length = 64, nullable = false)
     private String orderId;
 
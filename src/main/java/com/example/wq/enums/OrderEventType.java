@@ -0,0 +1,58 @@
+package com.example.wq.enums;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * 订单事件类型枚举（订单事件外发表）
+ */
+public enum OrderEventType {
+
+    /**
+     * 订单创建
+     */
+    CREATED(1, "订单创建"),
+
+    /**
+     * 订单支付
+     */
+    PAID(2, "订单支付"),
+
+    /**
+     * 订单取消
+     */
+    CANCELLED(3, "订单取消"),
+
+    /**
+     * 订单超时
+     */
+    EXPIRED(4, "订单超时");
+
+    private final Integer code;
+    private final String description;
+
+    OrderEventType(Integer code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    @JsonValue
+    public Integer getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public static OrderEventType fromCode(Integer code) {
+        if (code == null) {
+            return null;
+        }
+        for (OrderEventType type : OrderEventType.values()) {
+            if (type.code.equals(code)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -1,11 +1,17 @@
 package com.example.wq.repository;
 
 import com.example.wq.entity.ActivityRegistration;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -87,4 +93,144 @@ public interface ActivityRegistrationRepository extends JpaRepository<ActivityRe
             @Param("orderNo") String orderNo
     );
 
-    }
+    /**
+     * 取消已报名的记录（条件更新）
+     * 只有已报名状态的记录才会被更新，并发重复取消时只有一次成功，名额只释放一次
+     *
+     * @param _id          报名记录ID
+     * @param cancelTime   取消时间
+     * @param cancelReason 取消原因
+     * @return 更新的记录数（1 表示成功，0 表示状态已变更）
+     */
+    @Modifying
+    @Query("UPDATE ActivityRegistration r " +
+            "SET r.status = 1, r.cancelTime = :cancelTime, r.cancelReason = :cancelReason " +
+            "WHERE r._id = :_id AND r.status = 0")
+    int cancelIfRegistered(
+            @Param("_id") String _id,
+            @Param("cancelTime") LocalDateTime cancelTime,
+            @Param("cancelReason") String cancelReason
+    );
+
+    /**
+     * 取消未支付的报名记录（条件更新）
+     * 与支付回调并发时，已支付的记录不会被取消
+     *
+     * @param _id          报名记录ID
+     * @param cancelTime   取消时间
+     * @param cancelReason 取消原因
+     * @return 更新的记录数（1 表示成功，0 表示状态已变更）
+     */
+    @Modifying
+    @Query("UPDATE ActivityRegistration r " +
+            "SET r.status = 1, r.cancelTime = :cancelTime, r.cancelReason = :cancelReason " +
+            "WHERE r._id = :_id AND r.status = 0 AND r.paymentStatus = 0")
+    int cancelIfUnpaid(
+            @Param("_id") String _id,
+            @Param("cancelTime") LocalDateTime cancelTime,
+            @Param("cancelReason") String cancelReason
+    );
+
+    /**
+     * 统计活动的有效报名数（未取消）
+     *
+     * @param activityId 活动ID
+     * @return 有效报名数
+     */
+    @Query("SELECT COUNT(r) FROM ActivityRegistration r WHERE r.activityId = :activityId AND r.status <> 1")
+    long countOccupiedByActivityId(@Param("activityId") String activityId);
+
+    /**
+     * 查询活动中已有报名记录（含已取消）的用户ID
+     *
+     * @param activityId 活动ID
+     * @param userIds    用户ID列表
+     * @return 已有报名记录的用户ID
+     */
+    @Query("SELECT r.userId FROM ActivityRegistration r WHERE r.activityId = :activityId AND r.userId IN :userIds")
+    List<String> findUserIdsByActivityIdAndUserIdIn(
+            @Param("activityId") String activityId,
+            @Param("userIds") List<String> userIds
+    );
+
+    /**
+     * 查询活动的报名用户（[activityId, userId]，含已取消，用于加载报名成员索引）
+     *
+     * @param activityIds 活动ID列表
+     * @return [activityId, userId] 列表
+     */
+    @Query("SELECT r.activityId, r.userId FROM ActivityRegistration r WHERE r.activityId IN :activityIds")
+    List<Object[]> findActivityUserPairsByActivityIdIn(@Param("activityIds") Collection<String> activityIds);
+
+    /**
+     * 查询指定时间之后创建的报名（[activityId, userId]，用于增量同步报名成员索引）
+     *
+     * @param since 创建时间下限（含）
+     * @return [activityId, userId] 列表
+     */
+    @Query("SELECT r.activityId, r.userId FROM ActivityRegistration r WHERE r.createTime >= :since")
+    List<Object[]> findActivityUserPairsCreatedSince(@Param("since") LocalDateTime since);
+
+    /**
+     * 查询用户在指定活动中已有报名记录（含已取消）的活动ID
+     *
+     * @param userId      用户ID
+     * @param activityIds 活动ID列表
+     * @return 活动ID列表
+     */
+    @Query("SELECT r.activityId FROM ActivityRegistration r WHERE r.userId = :userId AND r.activityId IN :activityIds")
+    List<String> findActivityIdsByUserIdAndActivityIdIn(
+            @Param("userId") String userId,
+            @Param("activityIds") Collection<String> activityIds
+    );
+
+    /**
+     * 查询待支付报名的支付过期时间（[registrationId, paymentExpireTime]，用于重建支付超时队列）
+     */
+    @Query("SELECT r._id, r.paymentExpireTime FROM ActivityRegistration r " +
+            "WHERE r.status = 0 AND r.paymentStatus = 0 AND r.paymentExpireTime IS NOT NULL")
+    List<Object[]> findUnpaidExpireTimes();
+
+    /**
+     * 查询支付已过期的待支付报名ID（兜底扫描）
+     *
+     * @param now      当前时间
+     * @param pageable 分页（每批数量）
+     * @return 报名记录ID列表
+     */
+    @Query("SELECT r._id FROM ActivityRegistration r " +
+            "WHERE r.status = 0 AND r.paymentStatus = 0 AND r.paymentExpireTime <= :now")
+    List<String> findExpiredUnpaidIds(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * 锁定指定报名中支付已过期的待支付记录（[registrationId, activityId]），随后在同一事务中取消
+     * 与支付回调并发时，已支付的记录不会被锁定取消
+     *
+     * @param ids 报名记录ID列表
+     * @param now 当前时间
+     * @return [registrationId, activityId] 列表
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r._id, r.activityId FROM ActivityRegistration r " +
+            "WHERE r._id IN :ids AND r.status = 0 AND r.paymentStatus = 0 AND r.paymentExpireTime <= :now")
+    List<Object[]> lockExpiredUnpaid(@Param("ids") Collection<String> ids, @Param("now") LocalDateTime now);
+
+    /**
+     * 批量取消报名记录（已锁定的待支付记录）
+     *
+     * @param ids          报名记录ID列表
+     * @param cancelTime   取消时间
+     * @param cancelReason 取消原因
+     * @return 更新的记录数
+     */
+    @Modifying
+    @Query("UPDATE ActivityRegistration r " +
+            "SET r.status = 1, r.cancelTime = :cancelTime, r.cancelReason = :cancelReason " +
+            "WHERE r._id IN :ids AND r.status = 0")
+    int cancelByIds(
+            @Param("ids") Collection<String> ids,
+            @Param("cancelTime") LocalDateTime cancelTime,
+            @Param("cancelReason") String cancelReason
+    );
+
+}
@@ -1,15 +1,14 @@
 package com.example.wq.repository;
 
 import com.example.wq.entity.CommunityActivity;
-import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -50,54 +49,122 @@ public interface CommunityActivityRepository extends JpaRepository<CommunityActi
     );
 
     /**
-     * 查找需要关闭报名的活动列表
+     * 批量更新活动结束时间已到的活动状态为"活动结束"
      *
-     * @param currentStatus 当前状态
+     * @param endedStatus     活动结束状态
      * @param currentDateTime 当前时间
-     * @param deleted       未删除标记
-     * @return 需要更新的活动列表
+     * @param deleted         未删除标记
+     * @return 更新的记录数
      */
-    @Query("SELECT a FROM CommunityActivity a " +
-            "WHERE a.status = :currentStatus " +
-            "AND a.registrationDeadlineTime IS NOT NULL " +
-            "AND a.registrationDeadlineTime <= :currentDateTime " +
+    @Modifying
+    @Query("UPDATE CommunityActivity a " +
+            "SET a.status = :endedStatus " +
+            "WHERE a.status <> :endedStatus " +
+            "AND a.activityEndTime <= :currentDateTime " +
             "AND a.deleted = :deleted")
-    List<CommunityActivity> findActivitiesToCloseRegistration(
-            @Param("currentStatus") Integer currentStatus,
+    int updateEndedActivities(
+            @Param("endedStatus") Integer endedStatus,
             @Param("currentDateTime") LocalDateTime currentDateTime,
             @Param("deleted") Integer deleted
     );
 
     /**
-     * 使用行锁查询活动（用于高并发报名场景）
+     * 查询未结束活动的状态时间点（[activityId, status, registrationDeadlineTime, activityStartTime, activityEndTime]，
+     * 用于重建状态流转队列）
      *
-     * @param activityId 活动ID
-     * @return 活动信息（带行锁）
+     * @param endedStatus 活动结束状态
+     * @param deleted     未删除标记
+     * @return 活动时间点列表
+     */
+    @Query("SELECT a._id, a.status, a.registrationDeadlineTime, a.activityStartTime, a.activityEndTime " +
+            "FROM CommunityActivity a WHERE a.status <> :endedStatus AND a.deleted = :deleted")
+    List<Object[]> findTransitionCandidates(
+            @Param("endedStatus") Integer endedStatus,
+            @Param("deleted") Integer deleted
+    );
+
+    /**
+     * 查询未结束且有坐标的活动（用于重建附近活动索引）
+     *
+     * @param endedStatus 活动结束状态
+     * @param deleted     未删除标记
+     * @return 活动列表
+     */
+    @Query("SELECT a FROM CommunityActivity a WHERE a.status <> :endedStatus AND a.deleted = :deleted " +
+            "AND a.latitude IS NOT NULL AND a.longitude IS NOT NULL")
+    List<CommunityActivity> findGeoCandidates(
+            @Param("endedStatus") Integer endedStatus,
+            @Param("deleted") Integer deleted
+    );
+
+    /**
+     * 查询未删除、未结束的活动（用于重建活动标签索引）
+     *
+     * @param endedStatus 活动结束状态
+     * @param deleted     未删除标记
+     * @return 活动列表
      */
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    @Query("SELECT a FROM CommunityActivity a WHERE a._id = :activityId")
-    Optional<CommunityActivity> findByIdWithLock(@Param("activityId") String activityId);
+    @Query("SELECT a FROM CommunityActivity a WHERE a.status <> :endedStatus AND a.deleted = :deleted")
+    List<CommunityActivity> findLiveActivities(
+            @Param("endedStatus") Integer endedStatus,
+            @Param("deleted") Integer deleted
+    );
 
     /**
-     * 原子扣减名额（条件更新）
-     * 只有当当前人数小于最大人数时才更新成功
+     * 批量关闭报名：报名中/已满员且已到报名截止时间或活动开始时间的活动
+     * 时间条件防止活动时间修改后，旧的到点条目误改状态
+     *
+     * @param activityIds  活动ID列表
+     * @param closedStatus 报名结束状态
+     * @param now          当前时间
+     * @return 更新的记录数
+     */
+    @Modifying
+    @Query("UPDATE CommunityActivity a " +
+            "SET a.status = :closedStatus " +
+            "WHERE a._id IN :activityIds " +
+            "AND a.status IN (0, 3) " +
+            "AND ((a.registrationDeadlineTime IS NOT NULL AND a.registrationDeadlineTime <= :now) " +
+            "OR a.activityStartTime <= :now)")
+    int closeRegistrationByIds(
+            @Param("activityIds") Collection<String> activityIds,
+            @Param("closedStatus") Integer closedStatus,
+            @Param("now") LocalDateTime now
+    );
+
+    /**
+     * 批量结束活动：已到活动结束时间的活动
+     *
+     * @param activityIds 活动ID列表
+     * @param endedStatus 活动结束状态
+     * @param now         当前时间
+     * @return 更新的记录数
+     */
+    @Modifying
+    @Query("UPDATE CommunityActivity a " +
+            "SET a.status = :endedStatus " +
+            "WHERE a._id IN :activityIds " +
+            "AND a.status <> :endedStatus " +
+            "AND a.activityEndTime <= :now")
+    int endActivitiesByIds(
+            @Param("activityIds") Collection<String> activityIds,
+            @Param("endedStatus") Integer endedStatus,
+            @Param("now") LocalDateTime now
+    );
+
+    /**
+     * 原子占用名额（条件更新）
+     * 单条 UPDATE 完成检查与加一，无需先加行锁查询，也不会因并发报名导致 CAS 比对失败
      *
      * @param activityId 活动ID
-     * @param currentParticipants 当前参与人数（用于 CAS 检查）
-     * @param maxParticipants 最大参与人数
      * @return 更新的记录数（1 表示成功，0 表示名额已满）
      */
     @Modifying
     @Query("UPDATE CommunityActivity a " +
             "SET a.currentParticipants = a.currentParticipants + 1 " +
             "WHERE a._id = :activityId " +
-            "AND a.currentParticipants = :currentParticipants " +
-            "AND a.currentParticipants < :maxParticipants")
-    int incrementParticipantsAtomically(
-            @Param("activityId") String activityId,
-            @Param("currentParticipants") Integer currentParticipants,
-            @Param("maxParticipants") Integer maxParticipants
-    );
+            "AND a.currentParticipants < a.maxParticipants")
+    int incrementParticipants(@Param("activityId") String activityId);
 
     /**
      * 根据活动ID和未删除状态查找活动
@@ -113,21 +180,48 @@ public interface CommunityActivityRepository extends JpaRepository<CommunityActi
     );
 
     /**
-     * 原子减少名额（条件更新）
-     * 只有当当前人数大于0时才更新成功
+     * 原子释放名额（条件更新）
+     * 相对减一，与并发的报名/取消可交换执行，不依赖事先读取的人数，人数为0时不再减少
      *
      * @param activityId 活动ID
-     * @param currentParticipants 当前参与人数（用于 CAS 检查）
-     * @return 更新的记录数（1 表示成功，0 表示失败）
+     * @return 更新的记录数（1 表示成功，0 表示人数已为0或活动不存在）
      */
     @Modifying
     @Query("UPDATE CommunityActivity a " +
             "SET a.currentParticipants = a.currentParticipants - 1 " +
             "WHERE a._id = :activityId " +
-            "AND a.currentParticipants = :currentParticipants " +
             "AND a.currentParticipants > 0")
-    int decrementParticipantsAtomically(
-            @Param("activityId") String activityId,
-            @Param("currentParticipants") Integer currentParticipants
+    int decrementParticipants(@Param("activityId") String activityId);
+
+    /**
+     * 按数量释放名额（条件更新，批量取消同一活动的多个报名时一次更新）
+     * 相对减少，人数不会减到0以下
+     *
+     * @param activityId 活动ID
+     * @param count      释放的名额数
+     * @return 更新的记录数
+     */
+    @Modifying
+    @Query("UPDATE CommunityActivity a " +
+            "SET a.currentParticipants = CASE WHEN a.currentParticipants > :count " +
+            "THEN a.currentParticipants - :count ELSE 0 END " +
+            "WHERE a._id = :activityId")
+    int decrementParticipantsBy(@Param("activityId") String activityId, @Param("count") Integer count);
+
+    /**
+     * 查找参与人数与有效报名数（未取消）不一致的活动ID
+     *
+     * @param statuses 活动状态范围
+     * @param deleted  未删除标记
+     * @return 活动ID列表
+     */
+    @Query("SELECT a._id FROM CommunityActivity a " +
+            "WHERE a.status IN :statuses " +
+            "AND a.deleted = :deleted " +
+            "AND a.currentParticipants <> (SELECT COUNT(r) FROM ActivityRegistration r " +
+            "WHERE r.activityId = a._id AND r.status <> 1)")
+    List<String> findParticipantDriftIds(
+            @Param("statuses") List<Integer> statuses,
+            @Param("deleted") Integer deleted
     );
 }
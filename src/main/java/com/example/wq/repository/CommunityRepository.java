@@ -0,0 +1,26 @@
+package com.example.wq.repository;
+
+import com.example.wq.entity.Community;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * 社区 Repository
+ */
+@Repository
+public interface CommunityRepository extends JpaRepository<Community, String> {
+
+    /**
+     * 查询未删除且有坐标的社区（用于重建附近社区索引）
+     *
+     * @param deleted 未删除标记
+     * @return 社区列表
+     */
+    @Query("SELECT c FROM Community c " +
+            "WHERE c.deleted = :deleted AND c.latitude IS NOT NULL AND c.longitude IS NOT NULL")
+    List<Community> findGeoCandidates(@Param("deleted") Integer deleted);
+}
@@ -0,0 +1,46 @@
+package com.example.wq.repository;
+
+import com.example.wq.entity.InventoryLockArchive;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 库存预占归档 Repository
+ */
+@Repository
+public interface InventoryLockArchiveRepository extends JpaRepository<InventoryLockArchive, String> {
+
+    /**
+     * 将指定的预占记录复制到归档表（INSERT ... SELECT，不载入实体）
+     *
+     * @return 归档的记录数
+     */
+    @Modifying
+    @Query("INSERT INTO InventoryLockArchive (_id, productId, orderId, quantity, expireTime, status, " +
+            "createTime, updateTime, archiveTime) " +
+            "SELECT il._id, il.productId, il.orderId, il.quantity, il.expireTime, il.status, " +
+            "il.createTime, il.updateTime, :archiveTime " +
+            "FROM InventoryLock il WHERE il._id IN :ids")
+    int archiveByIds(@Param("ids") Collection<String> ids, @Param("archiveTime") LocalDateTime archiveTime);
+
+    /**
+     * 查询归档时间早于指定时间的记录ID（分批删除用）
+     */
+    @Query("SELECT a._id FROM InventoryLockArchive a WHERE a.archiveTime < :before")
+    List<String> findIdsArchivedBefore(@Param("before") LocalDateTime before, Pageable pageable);
+
+    /**
+     * 按ID批量删除归档记录
+     */
+    @Modifying
+    @Query("DELETE FROM InventoryLockArchive a WHERE a._id IN :ids")
+    int deleteByIds(@Param("ids") Collection<String> ids);
+}
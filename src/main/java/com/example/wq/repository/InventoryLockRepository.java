@@ -1,12 +1,15 @@
 package com.example.wq.repository;
 
 import com.example.wq.entity.InventoryLock;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -21,16 +24,84 @@ public interface InventoryLockRepository extends JpaRepository<InventoryLock, St
     @Query("SELECT SUM(il.quantity) FROM InventoryLock il WHERE il.productId = :productId AND il.status = 1 AND il.expireTime > :currentTime")
     Integer sumLockedQuantity(@Param("productId") String productId, @Param("currentTime") Long currentTime);
 
+    /**
+     * 查询商品当前处于锁定状态的预占总数（不区分是否过期，过期预占由订单超时取消时释放）
+     */
+    @Query("SELECT SUM(il.quantity) FROM InventoryLock il WHERE il.productId = :productId AND il.status = 1")
+    Integer sumActiveLockedQuantity(@Param("productId") String productId);
+
+    /**
+     * 按商品汇总锁定中的预占数量（[productId, quantity]，用于重建库存账本）
+     */
+    @Query("SELECT il.productId, SUM(il.quantity) FROM InventoryLock il WHERE il.status = 1 GROUP BY il.productId")
+    List<Object[]> sumActiveLockedQuantityGroupByProduct();
+
+    /**
+     * 查询订单的预占记录
+     */
+    List<InventoryLock> findByOrderIdAndStatus(String orderId, Integer status);
+
     /**
      * 释放订单的所有库存预占
+     * 批量 UPDATE 不触发 @UpdateTimestamp，释放语句均显式写入 update_time 作为释放时间（归档按此计算保留期）
      */
     @Modifying
-    @Query("UPDATE InventoryLock il SET il.status = 0 WHERE il.orderId = :orderId")
+    @Query("UPDATE InventoryLock il SET il.status = 0, il.updateTime = CURRENT_TIMESTAMP " +
+            "WHERE il.orderId = :orderId AND il.status = 1")
     int releaseByOrderId(@Param("orderId") String orderId);
 
     /**
-     * 查询过期的库存预占记录
+     * 按商品汇总已取消订单中仍锁定的预占数量（[productId, quantity]）
+     */
+    @Query("SELECT il.productId, SUM(il.quantity) FROM InventoryLock il " +
+            "WHERE il.status = 1 " +
+            "AND il.orderId IN (SELECT o._id FROM Order o WHERE o._id IN :orderIds AND o.status = 4) " +
+            "GROUP BY il.productId")
+    List<Object[]> sumLockedQuantityOfCancelledOrders(@Param("orderIds") Collection<String> orderIds);
+
+    /**
+     * 批量释放已取消订单的库存预占
+     */
+    @Modifying
+    @Query("UPDATE InventoryLock il SET il.status = 0, il.updateTime = CURRENT_TIMESTAMP " +
+            "WHERE il.status = 1 " +
+            "AND il.orderId IN (SELECT o._id FROM Order o WHERE o._id IN :orderIds AND o.status = 4)")
+    int releaseByCancelledOrderIds(@Param("orderIds") Collection<String> orderIds);
+
+    /**
+     * 按商品汇总指定订单中订单已非待支付（或订单不存在）却仍锁定的预占数量（[productId, quantity]）
+     */
+    @Query("SELECT il.productId, SUM(il.quantity) FROM InventoryLock il " +
+            "WHERE il.status = 1 AND il.orderId IN :orderIds " +
+            "AND il.orderId NOT IN (SELECT o._id FROM Order o WHERE o._id IN :orderIds AND o.status = 0) " +
+            "GROUP BY il.productId")
+    List<Object[]> sumOrphanLockedQuantity(@Param("orderIds") Collection<String> orderIds);
+
+    /**
+     * 批量释放指定订单中订单已非待支付（或订单不存在）却仍锁定的预占
+     */
+    @Modifying
+    @Query("UPDATE InventoryLock il SET il.status = 0, il.updateTime = CURRENT_TIMESTAMP " +
+            "WHERE il.status = 1 AND il.orderId IN :orderIds " +
+            "AND il.orderId NOT IN (SELECT o._id FROM Order o WHERE o._id IN :orderIds AND o.status = 0)")
+    int releaseOrphanLocks(@Param("orderIds") Collection<String> orderIds);
+
+    /**
+     * 查询过期的库存预占记录（分批处理用）
      */
     @Query("SELECT il FROM InventoryLock il WHERE il.expireTime <= :currentTime AND il.status = 1")
-    List<InventoryLock> findExpiredLocks(@Param("currentTime") Long currentTime);
+    List<InventoryLock> findExpiredLocks(@Param("currentTime") Long currentTime, Pageable pageable);
+
+    /**
+     * 查询释放时间早于指定时间的已释放预占记录ID（分批归档用）
+     */
+    @Query("SELECT il._id FROM InventoryLock il WHERE il.status = 0 AND il.updateTime < :before")
+    List<String> findReleasedIdsBefore(@Param("before") LocalDateTime before, Pageable pageable);
+
+    /**
+     * 按ID批量删除已释放的预占记录
+     */
+    @Modifying
+    @Query("DELETE FROM InventoryLock il WHERE il._id IN :ids AND il.status = 0")
+    int deleteReleasedByIds(@Param("ids") Collection<String> ids);
 }
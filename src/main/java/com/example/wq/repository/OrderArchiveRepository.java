@@ -0,0 +1,69 @@
+package com.example.wq.repository;
+
+import com.example.wq.entity.OrderArchive;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 订单归档 Repository
+ */
+@Repository
+public interface OrderArchiveRepository extends JpaRepository<OrderArchive, String> {
+
+    /**
+     * 用户归档订单列表第一页（按创建时间倒序，与 OrderRepository.findUserOrderIds 排序一致）
+     */
+    @Query("SELECT o FROM OrderArchive o WHERE o.userId = :userId " +
+           "AND (:status IS NULL OR o.status = :status) " +
+           "ORDER BY o.createTime DESC, o._id DESC")
+    List<OrderArchive> findUserOrders(@Param("userId") String userId,
+                                      @Param("status") Integer status,
+                                      Pageable pageable);
+
+    /**
+     * 用户归档订单列表游标之后的订单（与 OrderRepository.findUserOrderIdsBefore 游标一致）
+     */
+    @Query("SELECT o FROM OrderArchive o WHERE o.userId = :userId " +
+           "AND (:status IS NULL OR o.status = :status) " +
+           "AND (o.createTime < :cursorTime OR (o.createTime = :cursorTime AND o._id < :cursorId)) " +
+           "ORDER BY o.createTime DESC, o._id DESC")
+    List<OrderArchive> findUserOrdersBefore(@Param("userId") String userId,
+                                            @Param("status") Integer status,
+                                            @Param("cursorTime") LocalDateTime cursorTime,
+                                            @Param("cursorId") String cursorId,
+                                            Pageable pageable);
+
+    /**
+     * 将指定订单复制到归档表（INSERT ... SELECT，不载入实体）
+     *
+     * @return 归档的订单数
+     */
+    @Modifying
+    @Query("INSERT INTO OrderArchive (_id, orderNo, userId, totalAmount, status, receiverName, receiverPhone, " +
+           "receiverAddress, remark, payTime, createTime, updateTime, archiveTime) " +
+           "SELECT o._id, o.orderNo, o.userId, o.totalAmount, o.status, o.receiverName, o.receiverPhone, " +
+           "o.receiverAddress, o.remark, o.payTime, o.createTime, o.updateTime, :archiveTime " +
+           "FROM Order o WHERE o._id IN :orderIds")
+    int archiveOrders(@Param("orderIds") Collection<String> orderIds, @Param("archiveTime") LocalDateTime archiveTime);
+
+    /**
+     * 将指定订单的明细复制到归档表
+     *
+     * @return 归档的明细数
+     */
+    @Modifying
+    @Query("INSERT INTO OrderItemArchive (_id, orderId, productId, productName, productPrice, quantity, subtotal, " +
+           "status, createTime, updateTime, archiveTime) " +
+           "SELECT oi._id, oi.orderId, oi.productId, oi.productName, oi.productPrice, oi.quantity, oi.subtotal, " +
+           "oi.status, oi.createTime, oi.updateTime, :archiveTime " +
+           "FROM OrderItem oi WHERE oi.orderId IN :orderIds")
+    int archiveItems(@Param("orderIds") Collection<String> orderIds, @Param("archiveTime") LocalDateTime archiveTime);
+}
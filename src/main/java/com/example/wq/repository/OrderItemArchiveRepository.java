@@ -0,0 +1,20 @@
+package com.example.wq.repository;
+
+import com.example.wq.entity.OrderItemArchive;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 订单明细归档 Repository
+ */
+@Repository
+public interface OrderItemArchiveRepository extends JpaRepository<OrderItemArchive, String> {
+
+    /**
+     * 按订单ID批量查询归档明细
+     */
+    List<OrderItemArchive> findByOrderIdIn(Collection<String> orderIds);
+}
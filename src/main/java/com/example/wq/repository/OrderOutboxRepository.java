@@ -0,0 +1,63 @@
+package com.example.wq.repository;
+
+import com.example.wq.entity.OrderOutboxEvent;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 订单事件外发表 Repository
+ */
+@Repository
+public interface OrderOutboxRepository extends JpaRepository<OrderOutboxEvent, String> {
+
+    /**
+     * 锁定一批待分发的事件（按主键顺序，跳过其他节点正在分发的事件）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT e FROM OrderOutboxEvent e WHERE e.dispatchStatus = 0 AND e.nextAttemptTime <= :now ORDER BY e._id")
+    List<OrderOutboxEvent> lockDispatchable(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * 批量标记为已分发
+     */
+    @Modifying
+    @Query("UPDATE OrderOutboxEvent e SET e.dispatchStatus = 1, e.dispatchTime = :dispatchTime WHERE e._id IN :ids")
+    int markDispatched(@Param("ids") Collection<String> ids, @Param("dispatchTime") LocalDateTime dispatchTime);
+
+    /**
+     * 批量记录分发失败：延后重试，失败次数达到上限时标记为分发失败
+     */
+    @Modifying
+    @Query("UPDATE OrderOutboxEvent e SET e.attempts = e.attempts + 1, e.nextAttemptTime = :nextAttemptTime, " +
+            "e.dispatchStatus = CASE WHEN e.attempts + 1 >= :maxAttempts THEN 2 ELSE 0 END " +
+            "WHERE e._id IN :ids")
+    int markFailed(@Param("ids") Collection<String> ids,
+                   @Param("nextAttemptTime") LocalDateTime nextAttemptTime,
+                   @Param("maxAttempts") Integer maxAttempts);
+
+    /**
+     * 查询分发完成时间早于指定时间的事件ID（分批删除用）
+     */
+    @Query("SELECT e._id FROM OrderOutboxEvent e WHERE e.dispatchStatus = 1 AND e.dispatchTime < :before")
+    List<String> findDispatchedIdsBefore(@Param("before") LocalDateTime before, Pageable pageable);
+
+    /**
+     * 按ID批量删除事件
+     */
+    @Modifying
+    @Query("DELETE FROM OrderOutboxEvent e WHERE e._id IN :ids")
+    int deleteByIds(@Param("ids") Collection<String> ids);
+}
@@ -1,12 +1,17 @@
 package com.example.wq.repository;
 
 import com.example.wq.entity.Order;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,13 +27,118 @@ public interface OrderRepository extends JpaRepository<Order, String> {
     Optional<Order> findByOrderNo(String orderNo);
 
     /**
-     * 查询用户的订单
+     * 用户订单列表第一页的订单ID（按创建时间倒序，走 user_id+create_time 联合索引）
+     *
+     * @param status 订单状态，为空时不过滤
      */
-    List<Order> findByUserIdOrderByCreateTimeDesc(String userId);
+    @Query("SELECT o._id FROM Order o WHERE o.userId = :userId " +
+           "AND (:status IS NULL OR o.status = :status) " +
+           "ORDER BY o.createTime DESC, o._id DESC")
+    List<String> findUserOrderIds(@Param("userId") String userId,
+                                  @Param("status") Integer status,
+                                  Pageable pageable);
+
+    /**
+     * 用户订单列表游标之后的订单ID（keyset 分页，查询代价与翻页深度无关）
+     *
+     * @param cursorTime 上一页最后一条订单的创建时间
+     * @param cursorId   上一页最后一条订单的ID（创建时间相同时用于排序）
+     */
+    @Query("SELECT o._id FROM Order o WHERE o.userId = :userId " +
+           "AND (:status IS NULL OR o.status = :status) " +
+           "AND (o.createTime < :cursorTime OR (o.createTime = :cursorTime AND o._id < :cursorId)) " +
+           "ORDER BY o.createTime DESC, o._id DESC")
+    List<String> findUserOrderIdsBefore(@Param("userId") String userId,
+                                        @Param("status") Integer status,
+                                        @Param("cursorTime") LocalDateTime cursorTime,
+                                        @Param("cursorId") String cursorId,
+                                        Pageable pageable);
+
+    /**
+     * 按ID批量查询订单并抓取明细（一条 SQL，避免逐单加载明细的 N+1）
+     */
+    @Query("SELECT DISTINCT o FROM Order o LEFT JOIN FETCH o.items WHERE o._id IN :orderIds")
+    List<Order> findWithItemsByIdIn(@Param("orderIds") Collection<String> orderIds);
 
     /**
      * 查询超时未支付的订单
      */
     @Query("SELECT o FROM Order o WHERE o.status = 0 AND o.createTime < :expireTime")
     List<Order> findExpiredPendingOrders(@Param("expireTime") LocalDateTime expireTime);
+
+    /**
+     * 查询所有待支付订单的创建时间（[orderId, createTime]，用于重建超时队列）
+     */
+    @Query("SELECT o._id, o.createTime FROM Order o WHERE o.status = 0")
+    List<Object[]> findPendingOrderCreateTimes();
+
+    /**
+     * 订单状态条件流转（CAS：仅当当前状态为 expectedStatus 时更新）
+     *
+     * @return 更新的记录数（1 表示流转成功，0 表示状态已被其他操作改变）
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.status = :newStatus WHERE o._id = :orderId AND o.status = :expectedStatus")
+    int updateStatus(@Param("orderId") String orderId,
+                     @Param("expectedStatus") Integer expectedStatus,
+                     @Param("newStatus") Integer newStatus);
+
+    /**
+     * 待支付订单标记为已支付（CAS：仅当当前状态为待支付时更新）
+     *
+     * @return 更新的记录数（1 表示成功，0 表示订单已不是待支付状态）
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.status = 1, o.payTime = :payTime WHERE o._id = :orderId AND o.status = 0")
+    int markPaid(@Param("orderId") String orderId, @Param("payTime") LocalDateTime payTime);
+
+    /**
+     * 分批查询超时未支付的订单ID（按创建时间升序，走 status+create_time 联合索引）
+     */
+    @Query("SELECT o._id FROM Order o WHERE o.status = 0 AND o.createTime < :expireTime ORDER BY o.createTime")
+    List<String> findExpiredPendingOrderIds(@Param("expireTime") LocalDateTime expireTime, Pageable pageable);
+
+    /**
+     * 分批查询可归档的订单ID：已完成/已取消、创建时间早于指定时间且没有评价（评价外键引用订单）
+     */
+    @Query("SELECT o._id FROM Order o WHERE o.status IN (3, 4) AND o.createTime < :before " +
+           "AND NOT EXISTS (SELECT 1 FROM Review r WHERE r.orderId = o._id) " +
+           "ORDER BY o.createTime")
+    List<String> findArchivableOrderIds(@Param("before") LocalDateTime before, Pageable pageable);
+
+    /**
+     * 删除已归档订单的明细
+     */
+    @Modifying
+    @Query("DELETE FROM OrderItem oi WHERE oi.orderId IN :orderIds")
+    int deleteItemsByOrderIds(@Param("orderIds") Collection<String> orderIds);
+
+    /**
+     * 删除已归档的订单（仅已完成/已取消）
+     */
+    @Modifying
+    @Query("DELETE FROM Order o WHERE o._id IN :orderIds AND o.status IN (3, 4)")
+    int deleteArchivedOrders(@Param("orderIds") Collection<String> orderIds);
+
+    /**
+     * 锁定指定订单中仍为待支付的订单（[orderId, userId]），随后在同一事务中取消
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o._id, o.userId FROM Order o WHERE o._id IN :orderIds AND o.status = 0")
+    List<Object[]> lockPendingOrders(@Param("orderIds") Collection<String> orderIds);
+
+    /**
+     * 查询订单的用户ID
+     */
+    @Query("SELECT o.userId FROM Order o WHERE o._id = :orderId")
+    String findUserIdById(@Param("orderId") String orderId);
+
+    /**
+     * 批量取消待支付订单（仅更新仍处于待支付状态的订单）
+     *
+     * @return 实际取消的订单数
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.status = 4 WHERE o._id IN :orderIds AND o.status = 0")
+    int cancelPendingOrders(@Param("orderIds") Collection<String> orderIds);
 }
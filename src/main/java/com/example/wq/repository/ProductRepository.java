@@ -2,11 +2,82 @@ package com.example.wq.repository;
 
 import com.example.wq.entity.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 /**
  * 商品 Repository
  */
 @Repository
 public interface ProductRepository extends JpaRepository<Product, String> {
+
+    /**
+     * 查询商品库存
+     */
+    @Query("SELECT p.stock FROM Product p WHERE p._id = :productId")
+    Integer findStockById(@Param("productId") String productId);
+
+    /**
+     * 查询所有商品的库存（[productId, stock]，用于重建库存账本）
+     */
+    @Query("SELECT p._id, p.stock FROM Product p")
+    List<Object[]> findAllStocks();
+
+    /**
+     * 条件扣减库存（库存不足时不更新）
+     * 单条 UPDATE 完成检查与扣减，并发支付不会超卖，也无需在 Java 逻辑期间持有行锁
+     * 已开启库存分桶的商品不在此扣减（由 StockBucketService 扣减分桶）；销量由 ProductCounterService 定时批量累加
+     *
+     * @return 更新的记录数（1 表示扣减成功，0 表示库存不足、商品不存在或已分桶）
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.stock = p.stock - :quantity " +
+            "WHERE p._id = :productId AND p.stock >= :quantity AND COALESCE(p.stockStripes, 0) = 0")
+    int decreaseStock(@Param("productId") String productId, @Param("quantity") Integer quantity);
+
+    /**
+     * 查询已开启库存分桶的商品（[productId, stockStripes]）
+     */
+    @Query("SELECT p._id, p.stockStripes FROM Product p WHERE p.stockStripes > 0")
+    List<Object[]> findStripedProducts();
+
+    /**
+     * 分桶商品汇总回写：库存为分桶合计（未变化时不更新）
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.stock = :stock WHERE p._id = :productId AND p.stock <> :stock")
+    int foldBucketStock(@Param("productId") String productId, @Param("stock") Integer stock);
+
+    /**
+     * 初始化销量基数（字段新增前的商品）：当前销量减去已计入的订单销量
+     * 只应在计数器已全部落库时调用（上次正常退出）；支付事件尚未分发的订单还未计入销量，不扣除
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.salesOffset = p.sales - " +
+            "(SELECT COALESCE(SUM(oi.quantity), 0) FROM OrderItem oi WHERE oi.productId = p._id " +
+            "AND oi.orderId IN (SELECT o._id FROM Order o WHERE o.status IN (1, 2, 3)) " +
+            "AND oi.orderId NOT IN (SELECT e.orderId FROM OrderOutboxEvent e WHERE e.eventType = 2 AND e.dispatchStatus = 0)) - " +
+            "(SELECT COALESCE(SUM(ai.quantity), 0) FROM OrderItemArchive ai WHERE ai.productId = p._id " +
+            "AND ai.orderId IN (SELECT ao._id FROM OrderArchive ao WHERE ao.status IN (1, 2, 3))) " +
+            "WHERE p.salesOffset IS NULL")
+    int initSalesOffsets();
+
+    /**
+     * 按销量基数 + 已支付/已发货/已完成订单的明细重新计算商品销量（计数器未落库的增量丢失后校准）
+     * 在线表与归档表（order_item_archive）的明细合计；支付事件尚未分发的订单不计入，
+     * 由分发时的销量累加计入，避免重复；销量基数未初始化的商品不更新
+     */
+    @Modifying
+    @Query("UPDATE Product p SET p.sales = p.salesOffset + " +
+            "(SELECT COALESCE(SUM(oi.quantity), 0) FROM OrderItem oi WHERE oi.productId = p._id " +
+            "AND oi.orderId IN (SELECT o._id FROM Order o WHERE o.status IN (1, 2, 3)) " +
+            "AND oi.orderId NOT IN (SELECT e.orderId FROM OrderOutboxEvent e WHERE e.eventType = 2 AND e.dispatchStatus = 0)) + " +
+            "(SELECT COALESCE(SUM(ai.quantity), 0) FROM OrderItemArchive ai WHERE ai.productId = p._id " +
+            "AND ai.orderId IN (SELECT ao._id FROM OrderArchive ao WHERE ao.status IN (1, 2, 3))) " +
+            "WHERE p.salesOffset IS NOT NULL")
+    int recalculateSales();
 }
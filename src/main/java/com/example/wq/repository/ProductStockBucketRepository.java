@@ -0,0 +1,67 @@
+package com.example.wq.repository;
+
+import com.example.wq.entity.ProductStockBucket;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * 商品库存分桶 Repository
+ */
+@Repository
+public interface ProductStockBucketRepository extends JpaRepository<ProductStockBucket, String> {
+
+    /**
+     * 锁定一个库存足够的分桶（跳过已被其他事务锁定的分桶，不等待）
+     * 从 start 号分桶开始按编号环形排序，pageable 取 1 条
+     * 数据库不支持 SKIP LOCKED 时（如 MySQL 5.7）退化为普通行锁
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT b FROM ProductStockBucket b WHERE b.productId = :productId AND b.stock >= :quantity " +
+           "ORDER BY CASE WHEN b.bucketNo >= :start THEN 0 ELSE 1 END, b.bucketNo")
+    List<ProductStockBucket> findAvailableSkipLocked(@Param("productId") String productId,
+                                                     @Param("quantity") Integer quantity,
+                                                     @Param("start") Integer start,
+                                                     Pageable pageable);
+
+    /**
+     * 使用行锁查询商品的全部分桶（按分桶编号排序，加锁顺序一致）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM ProductStockBucket b WHERE b.productId = :productId ORDER BY b.bucketNo")
+    List<ProductStockBucket> findByProductIdWithLock(@Param("productId") String productId);
+
+    /**
+     * 查询商品的全部分桶（不加锁，用于查看）
+     */
+    List<ProductStockBucket> findByProductIdOrderByBucketNo(String productId);
+
+    /**
+     * 查询商品的分桶库存合计（未分桶时返回 null）
+     */
+    @Query("SELECT SUM(b.stock) FROM ProductStockBucket b WHERE b.productId = :productId")
+    Integer sumStockByProductId(@Param("productId") String productId);
+
+    /**
+     * 按商品汇总分桶库存（[productId, stock]）
+     */
+    @Query("SELECT b.productId, SUM(b.stock) FROM ProductStockBucket b GROUP BY b.productId")
+    List<Object[]> sumStockGroupByProduct();
+
+    /**
+     * 删除商品的全部分桶
+     */
+    @Modifying
+    @Query("DELETE FROM ProductStockBucket b WHERE b.productId = :productId")
+    int deleteByProductId(@Param("productId") String productId);
+}
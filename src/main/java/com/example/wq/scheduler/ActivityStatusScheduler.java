@@ -1,9 +1,11 @@
 package com.example.wq.scheduler;
 
-import com.example.wq.entity.CommunityActivity;
 import com.example.wq.enums.ActivityStatus;
 import com.example.wq.enums.DeletedFlag;
 import com.example.wq.repository.CommunityActivityRepository;
+import com.example.wq.service.ActivityTransitionEngine;
+import com.example.wq.service.CommunityActivityService;
+import com.example.wq.service.RegistrationExpiryQueue;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -23,13 +25,44 @@ import java.util.List;
 public class ActivityStatusScheduler {
 
     private final CommunityActivityRepository activityRepository;
+    private final CommunityActivityService communityActivityService;
+    private final RegistrationExpiryQueue registrationExpiryQueue;
+    private final ActivityTransitionEngine activityTransitionEngine;
+
+    // 每批执行的活动状态变更数
+    private static final int TRANSITION_BATCH_SIZE = 500;
+
+    // 每批取消的支付超时报名数
+    private static final int EXPIRY_BATCH_SIZE = 100;
+
+    // 每轮最多处理的批次数，避免积压时长时间占用调度线程
+    private static final int MAX_BATCHES_PER_RUN = 10;
 
     /**
-     * 定时检查报名截止时间（兜底方案）
-     * 每天凌晨2点执行一次，处理长时间未被访问的活动
+     * 执行已到点的活动状态变更（报名结束、活动结束）
+     * 每1秒执行一次
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void fireStatusTransitions() {
+        for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+            try {
+                if (activityTransitionEngine.applyDue(TRANSITION_BATCH_SIZE) == 0) {
+                    return;
+                }
+            } catch (Exception e) {
+                // 本批变更已重新入队，退避后重试
+                log.error("活动状态流转失败: {}", e.getMessage(), e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 定时检查报名截止时间与活动结束时间（兜底方案）
+     * 每天凌晨2点执行一次
      *
-     * 主要的状态更新逻辑在查询时实时完成，这里只是兜底处理：
-     * - 处理那些长时间无人访问的活动
+     * 状态变更主要由 ActivityTransitionEngine 按各活动的时间点实时完成，这里只是兜底处理：
+     * - 处理流转队列异常（如重建失败）遗漏的活动
      * - 确保数据库中的状态最终一致性
      *
      * cron表达式: "0 0 2 * * ?" - 每天凌晨2点执行
@@ -43,30 +76,78 @@ public class ActivityStatusScheduler {
             // 获取当前时间
             LocalDateTime currentDateTime = LocalDateTime.now();
 
-            // 查找需要关闭报名的活动（用于日志记录）
-            List<CommunityActivity> activitiesToClose = activityRepository.findActivitiesToCloseRegistration(
-                    ActivityStatus.REGISTERING.getCode(),
+            // 批量更新活动状态（直接条件更新，无需先查询）
+            int closedCount = activityRepository.updateRegistrationClosedActivities(
+                    ActivityStatus.REGISTERING.getCode(),      // 当前状态：报名中
+                    ActivityStatus.REGISTRATION_CLOSED.getCode(), // 新状态：报名结束
+                    currentDateTime,                            // 当前时间
+                    DeletedFlag.NOT_DELETED.getCode()           // 未删除
+            );
+            int endedCount = activityRepository.updateEndedActivities(
+                    ActivityStatus.ACTIVITY_ENDED.getCode(),
                     currentDateTime,
                     DeletedFlag.NOT_DELETED.getCode()
             );
 
-            if (activitiesToClose.isEmpty()) {
-                log.info("没有需要关闭报名的活动");
+            if (closedCount > 0 || endedCount > 0) {
+                log.info("定时任务兜底更新活动状态：报名结束 {} 个，活动结束 {} 个", closedCount, endedCount);
+            }
+
+        } catch (Exception e) {
+            log.error("定时任务检查活动报名截止时间时发生错误", e);
+        }
+    }
+
+    /**
+     * 取消支付超时的报名并归还名额
+     * 每1秒执行一次
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void fireExpiredRegistrations() {
+        for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+            List<String> registrationIds = registrationExpiryQueue.pollExpired(EXPIRY_BATCH_SIZE);
+            if (registrationIds.isEmpty()) {
                 return;
             }
 
-            // 批量更新活动状态
-            int updatedCount = activityRepository.updateRegistrationClosedActivities(
-                    ActivityStatus.REGISTERING.getCode(),      // 当前状态：报名中
-                    ActivityStatus.REGISTRATION_CLOSED.getCode(), // 新状态：报名结束
-                    currentDateTime,                            // 当前时间
-                    DeletedFlag.NOT_DELETED.getCode()           // 未删除
-            );
+            try {
+                communityActivityService.cancelExpiredRegistrations(registrationIds);
+            } catch (Exception e) {
+                // 失败的报名仍为待支付状态，由兜底扫描再次处理
+                log.error("取消支付超时报名失败: batch={}, error={}", registrationIds.size(), e.getMessage(), e);
+            }
+        }
+    }
 
-            log.info("定时任务成功更新 {} 个活动的状态为\"报名结束\"", updatedCount);
+    /**
+     * 取消支付超时的报名（兜底全量扫描）
+     * 每5分钟执行一次
+     */
+    @Scheduled(fixedDelay = 300000)
+    public void handleExpiredRegistrations() {
+        try {
+            int cancelled = communityActivityService.handleExpiredRegistrations();
+            if (cancelled > 0) {
+                log.info("兜底取消支付超时报名 {} 条", cancelled);
+            }
+        } catch (Exception e) {
+            log.error("兜底取消支付超时报名时发生错误", e);
+        }
+    }
 
+    /**
+     * 活动参与人数对账
+     * 每5分钟执行一次：按有效报名数修正当前参与人数（兜底修正异常中断等带来的偏差）
+     */
+    @Scheduled(fixedDelay = 300000)
+    public void reconcileParticipants() {
+        try {
+            int fixed = communityActivityService.reconcileParticipants();
+            if (fixed > 0) {
+                log.info("活动参与人数对账完成，修正 {} 个活动", fixed);
+            }
         } catch (Exception e) {
-            log.error("定时任务检查活动报名截止时间时发生错误", e);
+            log.error("活动参与人数对账时发生错误", e);
         }
     }
 
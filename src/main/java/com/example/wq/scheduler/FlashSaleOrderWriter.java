@@ -0,0 +1,54 @@
+package com.example.wq.scheduler;
+
+import com.example.wq.service.FlashSaleService;
+import com.example.wq.service.MallOrderService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 秒杀订单落库任务
+ * 从秒杀队列中批量取出已抢到令牌的订单，按批写入订单/明细/预占记录
+ */
+@Component
+public class FlashSaleOrderWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(FlashSaleOrderWriter.class);
+
+    // 每批落库的订单数
+    private static final int WRITE_BATCH_SIZE = 200;
+
+    // 每轮最多处理的批次数，队列积压时分多轮消化，避免长时间占用调度线程
+    private static final int MAX_BATCHES_PER_RUN = 20;
+
+    @Autowired
+    private FlashSaleService flashSaleService;
+
+    @Autowired
+    private MallOrderService mallOrderService;
+
+    /**
+     * 批量落库秒杀订单
+     * 每50毫秒执行一次
+     */
+    @Scheduled(fixedDelay = 50)
+    public void writeFlashOrders() {
+        for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+            List<FlashSaleService.FlashOrder> flashOrders = flashSaleService.drain(WRITE_BATCH_SIZE);
+            if (flashOrders.isEmpty()) {
+                return;
+            }
+
+            try {
+                int persisted = mallOrderService.persistFlashOrders(flashOrders);
+                log.debug("秒杀订单落库: batch={}, persisted={}", flashOrders.size(), persisted);
+            } catch (Exception e) {
+                log.error("秒杀订单落库失败: batch={}, error={}", flashOrders.size(), e.getMessage(), e);
+            }
+        }
+    }
+}
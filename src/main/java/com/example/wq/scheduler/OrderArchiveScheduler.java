@@ -0,0 +1,34 @@
+package com.example.wq.scheduler;
+
+import com.example.wq.service.OrderArchiveService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 订单归档定时任务
+ * 凌晨低峰期将已完成/已取消的历史订单移入归档表
+ */
+@Component
+public class OrderArchiveScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderArchiveScheduler.class);
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    /**
+     * 归档历史订单
+     * cron表达式: "0 0 1-5 * * ?" - 每天凌晨1点到5点每小时执行一次（每轮数量有上限，积压时分多轮消化）
+     */
+    @Scheduled(cron = "0 0 1-5 * * ?")
+    public void archiveOrders() {
+        try {
+            orderArchiveService.archive();
+        } catch (Exception e) {
+            log.error("订单归档失败: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.wq.scheduler;
+
+import com.example.wq.service.OrderOutboxService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * 订单事件分发定时任务
+ * 每200毫秒按批分发订单事件外发表中的待分发事件，并定期删除已分发的历史事件
+ */
+@Component
+public class OrderOutboxDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderOutboxDispatcher.class);
+
+    // 每批分发的事件数
+    private static final int DISPATCH_BATCH_SIZE = 200;
+
+    // 每轮最多分发的批次数，避免积压时长时间占用调度线程
+    private static final int MAX_BATCHES_PER_RUN = 10;
+
+    // 已分发事件的保留天数
+    private static final int RETENTION_DAYS = 7;
+
+    // 每批删除的事件数 / 每轮最多删除的批次数
+    private static final int PURGE_CHUNK_SIZE = 1000;
+    private static final int PURGE_MAX_CHUNKS = 20;
+
+    @Autowired
+    private OrderOutboxService orderOutboxService;
+
+    /**
+     * 分发待分发事件
+     * 每200毫秒执行一次
+     */
+    @Scheduled(fixedDelay = 200)
+    public void dispatch() {
+        for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+            try {
+                if (orderOutboxService.dispatchBatch(DISPATCH_BATCH_SIZE) < DISPATCH_BATCH_SIZE) {
+                    return;
+                }
+            } catch (Exception e) {
+                // 本批事务已回滚，事件仍为待分发状态，下一轮重试
+                log.error("订单事件分发失败: {}", e.getMessage(), e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 删除已分发的历史事件
+     * 每小时执行一次
+     */
+    @Scheduled(fixedDelay = 3600000)
+    public void purgeDispatched() {
+        try {
+            int deleted = orderOutboxService.purgeDispatched(LocalDateTime.now().minusDays(RETENTION_DAYS),
+                    PURGE_CHUNK_SIZE, PURGE_MAX_CHUNKS);
+            if (deleted > 0) {
+                log.info("删除已分发订单事件: {}", deleted);
+            }
+        } catch (Exception e) {
+            log.error("删除已分发订单事件失败: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -1,31 +1,68 @@
 package com.example.wq.scheduler;
 
+import com.example.wq.service.InventoryLockHousekeepingService;
 import com.example.wq.service.MallOrderService;
+import com.example.wq.service.OrderExpiryQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * 订单超时处理定时任务
- * 每分钟检查一次超时未支付的订单，自动取消并释放库存
+ * 每秒从超时队列中取出已到期的订单，按批集合式取消并释放库存，
+ * 另保留低频全量扫描作为兜底（如其他节点创建的订单、重建失败等）
  */
 @Component
 public class OrderTimeoutScheduler {
 
     private static final Logger log = LoggerFactory.getLogger(OrderTimeoutScheduler.class);
 
+    // 每批取消的订单数
+    private static final int EXPIRY_BATCH_SIZE = 100;
+
+    // 每轮最多处理的批次数，避免积压时长时间占用调度线程
+    private static final int MAX_BATCHES_PER_RUN = 10;
+
     @Autowired
     private MallOrderService mallOrderService;
 
+    @Autowired
+    private OrderExpiryQueue orderExpiryQueue;
+
+    @Autowired
+    private InventoryLockHousekeepingService inventoryLockHousekeepingService;
+
     /**
-     * 处理超时订单
-     * 每1分钟执行一次
+     * 取消已到期的订单
+     * 每1秒执行一次
      */
-    @Scheduled(fixedRate = 60000) // 60秒
+    @Scheduled(fixedDelay = 1000)
+    public void fireExpiredOrders() {
+        for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+            List<String> orderIds = orderExpiryQueue.pollExpired(EXPIRY_BATCH_SIZE);
+            if (orderIds.isEmpty()) {
+                return;
+            }
+
+            try {
+                mallOrderService.cancelExpiredOrders(orderIds);
+            } catch (Exception e) {
+                // 失败的订单仍为待支付状态，由兜底扫描再次处理
+                log.error("取消超时订单失败: batch={}, error={}", orderIds.size(), e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 处理超时订单（兜底全量扫描）
+     * 每5分钟执行一次
+     */
+    @Scheduled(fixedRate = 300000) // 300秒 = 5分钟
     public void handleExpiredOrders() {
         try {
             Map<String, Object> result = mallOrderService.handleExpiredOrders();
@@ -42,17 +79,15 @@ public class OrderTimeoutScheduler {
     }
 
     /**
-     * 清理过期的库存预占记录
+     * 清理库存预占记录（过期预占兜底释放、已释放预占归档、过期归档删除）
      * 每5分钟执行一次
      */
-    @Scheduled(fixedRate = 300000) // 300秒 = 5分钟
+    @Scheduled(fixedDelay = 300000) // 300秒 = 5分钟
     public void cleanExpiredLocks() {
         try {
-            // 这里可以添加清理过期库存预占记录的逻辑
-            // 实际的预占释放已在取消订单时完成
-            log.debug("库存预占清理检查完成");
+            inventoryLockHousekeepingService.run();
         } catch (Exception e) {
-            log.error("清理过期库存预占失败: {}", e.getMessage(), e);
+            log.error("清理库存预占失败: {}", e.getMessage(), e);
         }
     }
 }
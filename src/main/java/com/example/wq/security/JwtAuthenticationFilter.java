@@ -30,12 +30,17 @@ import java.util.Collections;
  * 职责：
  * 1. 从请求头中提取 JWT Token
  * 2. 验证 Token 有效性
- * 3. 加载用户信息并设置到 SecurityContext（支持 WqUser 和 AdminUser）
+ * 3. 加载用户信息并设置到 SecurityContext（支持 WqUser 和 AdminUser，管理端 Token 授予 ADMIN 角色）
  */
 @Slf4j
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
+    /**
+     * 管理端 Token 的角色（运维接口按此角色授权）
+     */
+    public static final String ADMIN_ROLE = "ADMIN";
+
     private final JwtTokenUtil jwtTokenUtil;
     private final WqUserRepository wqUserRepository;
     private final AdminUserRepository adminUserRepository;
@@ -119,7 +124,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                     .map(admin -> org.springframework.security.core.userdetails.User.builder()
                             .username(admin.get_id())
                             .password("")
-                            .authorities(Collections.emptyList())
+                            .roles(ADMIN_ROLE)
                             .accountLocked(false)
                             .disabled(false)
                             .credentialsExpired(false)
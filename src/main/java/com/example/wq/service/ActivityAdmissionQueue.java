@@ -0,0 +1,275 @@
+package com.example.wq.service;
+
+import com.example.wq.repository.CommunityActivityRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 活动报名排队
+ *
+ * 按活动开启排队模式后，该活动的报名请求进入活动专属的有界队列，由单个写入线程按批处理：
+ * 每批一个事务，锁定活动行一次、按剩余名额录取、报名记录批量写入、参与人数一次更新，
+ * 事务提交后逐个通知等待中的请求。N 个报名之间的 N 次行锁交接变为每批一次。
+ *
+ * - 同一活动任意时刻只有一个写入线程（draining 标记），写入期间到达的请求自然组成下一批
+ * - 队列满时直接拒绝；请求等待超时只表示结果未知，报名仍可能成功
+ * - 关闭排队模式后，已入队的请求照常处理，新请求恢复普通报名
+ *
+ * 基于内存的实现（适用于单机），排队状态不跨节点共享，多节点时各节点各自排队，仍由活动行锁保证不超报
+ */
+@Slf4j
+@Service
+public class ActivityAdmissionQueue {
+
+    // 每个活动的排队容量
+    private static final int QUEUE_CAPACITY = 5_000;
+
+    // 每批处理的报名数
+    private static final int BATCH_SIZE = 200;
+
+    // 请求方等待结果的最长时间（秒）
+    private static final long WAIT_SECONDS = 10;
+
+    private final CommunityActivityService communityActivityService;
+    private final CommunityActivityRepository activityRepository;
+    private final ActivitySeatAllocator seatAllocator;
+
+    private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    // 写入线程（每个有积压的活动最多占用一个）
+    private final ExecutorService writers = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger sequence = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "activity-admission-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public ActivityAdmissionQueue(CommunityActivityService communityActivityService,
+                                  CommunityActivityRepository activityRepository,
+                                  ActivitySeatAllocator seatAllocator) {
+        this.communityActivityService = communityActivityService;
+        this.activityRepository = activityRepository;
+        this.seatAllocator = seatAllocator;
+    }
+
+    /**
+     * 开启活动报名排队模式
+     */
+    public Map<String, Object> enable(String activityId) {
+        if (!activityRepository.existsById(activityId)) {
+            throw new RuntimeException("活动不存在: " + activityId);
+        }
+        if (lanes.putIfAbsent(activityId, new Lane()) != null) {
+            throw new RuntimeException("活动已处于排队模式");
+        }
+
+        log.info("开启报名排队: activityId={}", activityId);
+        return lanes.get(activityId).toStats(activityId);
+    }
+
+    /**
+     * 关闭活动报名排队模式（已入队的请求照常处理）
+     */
+    public Map<String, Object> disable(String activityId) {
+        Lane lane = lanes.remove(activityId);
+        if (lane == null) {
+            throw new RuntimeException("活动未开启排队模式");
+        }
+
+        log.info("关闭报名排队: activityId={}, queued={}", activityId, lane.queue.size());
+        return lane.toStats(activityId);
+    }
+
+    /**
+     * 活动是否处于排队模式
+     */
+    public boolean isEnabled(String activityId) {
+        return lanes.containsKey(activityId);
+    }
+
+    /**
+     * 排队报名，等待所在批次提交后返回结果
+     *
+     * @return 报名结果（与普通报名相同）
+     */
+    public Map<String, Object> register(String activityId, String userId,
+                                        String userName, String userPhone, String remarks) {
+        Lane lane = lanes.get(activityId);
+        if (lane == null) {
+            // 排队模式已关闭
+            return communityActivityService.registerActivity(activityId, userId, userName, userPhone, remarks);
+        }
+
+        Admission admission = new Admission(userId, userName, userPhone, remarks);
+        if (!lane.queue.offer(admission)) {
+            lane.rejected.incrementAndGet();
+            throw new RuntimeException("报名人数过多，请稍后再试");
+        }
+        schedule(activityId, lane);
+
+        try {
+            return admission.future.get(WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException("报名失败，请稍后重试");
+        } catch (TimeoutException e) {
+            throw new RuntimeException("报名处理中，请稍后查看报名结果");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("报名处理中，请稍后查看报名结果");
+        }
+    }
+
+    /**
+     * 获取排队统计
+     */
+    public Map<String, Object> getStats() {
+        List<Map<String, Object>> activities = new ArrayList<>();
+        lanes.forEach((activityId, lane) -> activities.add(lane.toStats(activityId)));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activities", activities);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writers.shutdown();
+    }
+
+    /**
+     * 获取写入权后启动写入线程（已有写入线程时由其继续处理）
+     */
+    private void schedule(String activityId, Lane lane) {
+        if (lane.draining.compareAndSet(false, true)) {
+            writers.execute(() -> drain(activityId, lane));
+        }
+    }
+
+    private void drain(String activityId, Lane lane) {
+        try {
+            List<Admission> batch = new ArrayList<>(BATCH_SIZE);
+            while (lane.queue.drainTo(batch, BATCH_SIZE) > 0) {
+                write(activityId, lane, batch);
+                batch.clear();
+            }
+        } finally {
+            lane.draining.set(false);
+        }
+        // 释放写入权与最后一次检查之间可能有新请求入队
+        if (!lane.queue.isEmpty()) {
+            schedule(activityId, lane);
+        }
+    }
+
+    private void write(String activityId, Lane lane, List<Admission> batch) {
+        try {
+            communityActivityService.registerBatch(activityId, batch);
+        } catch (Exception e) {
+            log.error("批量报名失败: activityId={}, batch={}, error={}", activityId, batch.size(), e.getMessage(), e);
+            // 业务检查失败（活动已截止等）返回原因，其他异常返回通用提示
+            String message = e.getClass() == RuntimeException.class ? e.getMessage() : "报名失败，请稍后重试";
+            batch.forEach(admission -> admission.reject(message));
+        }
+        lane.batches.incrementAndGet();
+
+        // 排队录取绕过了内存名额计数，丢弃计数以便普通报名重新加载
+        seatAllocator.invalidate(activityId);
+        for (Admission admission : batch) {
+            if (admission.error == null) {
+                lane.admitted.incrementAndGet();
+                admission.future.complete(admission.result);
+            } else {
+                lane.rejected.incrementAndGet();
+                admission.future.completeExceptionally(new RuntimeException(admission.error));
+            }
+        }
+    }
+
+    /**
+     * 排队中的报名请求
+     */
+    public static class Admission {
+        private final String userId;
+        private final String userName;
+        private final String userPhone;
+        private final String remarks;
+        private final CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+        private Map<String, Object> result;
+        private String error;
+
+        Admission(String userId, String userName, String userPhone, String remarks) {
+            this.userId = userId;
+            this.userName = userName;
+            this.userPhone = userPhone;
+            this.remarks = remarks;
+        }
+
+        public String getUserId() { return userId; }
+        public String getUserName() { return userName; }
+        public String getUserPhone() { return userPhone; }
+        public String getRemarks() { return remarks; }
+
+        /**
+         * 录取（事务提交后返回给请求方）
+         */
+        public void accept(Map<String, Object> result) {
+            this.result = result;
+            this.error = null;
+        }
+
+        /**
+         * 拒绝
+         */
+        public void reject(String error) {
+            this.result = null;
+            this.error = error;
+        }
+    }
+
+    /**
+     * 活动报名队列
+     */
+    private static final class Lane {
+        private final BlockingQueue<Admission> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+
+        Map<String, Object> toStats(String activityId) {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("activityId", activityId);
+            stats.put("queued", queue.size());
+            stats.put("admitted", admitted.get());
+            stats.put("rejected", rejected.get());
+            stats.put("batches", batches.get());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package com.example.wq.service;
+
+import com.example.wq.repository.ActivityRegistrationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 活动报名成员索引（用户是否已报名的快速判断）
+ *
+ * 按活动在内存中维护已有报名记录的用户（含已取消，报名表按活动+用户唯一，取消后不能再次报名）：
+ * - 报名人数不超过阈值的活动保存精确集合，已报名/未报名都直接由内存回答
+ * - 超过阈值的活动保存布隆过滤器，"未报名"直接返回，可能已报名时再查数据库确认
+ * - 首次查询某活动时从 activity_registration 加载（内存中活动数已达上限时不加载，直接按用户查询数据库）；报名记录写入后由实体监听器在事务提交后追加，
+ *   删除后丢弃该活动的索引待下次查询重新加载；报名取消不删除记录，结果不变
+ * - 每10秒按创建时间增量同步其他节点写入的报名，加载与并发提交之间的遗漏也由同步补齐；
+ *   30分钟未访问的活动移出内存
+ *
+ * 基于内存的实现，多节点时各节点各自维护，其他节点的报名最多延迟一个同步周期可见
+ */
+@Slf4j
+@Service
+public class ActivityMembershipIndex {
+
+    // 精确集合的最大用户数，超过后改用布隆过滤器
+    private static final int EXACT_THRESHOLD = 1_000;
+
+    // 布隆过滤器每个元素的位数与哈希函数个数（误判率约 1%）
+    private static final int BITS_PER_ELEMENT = 10;
+    private static final int HASH_FUNCTIONS = 7;
+
+    // 内存中最多保存的活动数（达到后不再加载，未加载的活动直接按用户查数据库）
+    private static final int MAX_ACTIVITIES = 20_000;
+
+    // 增量同步的回看时间（秒），覆盖创建时间早于提交时间的报名
+    private static final long SYNC_OVERLAP_SECONDS = 60;
+
+    // 活动索引闲置多久后移出内存（毫秒）
+    private static final long IDLE_EVICT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final ActivityRegistrationRepository registrationRepository;
+
+    private final ConcurrentHashMap<String, Membership> memberships = new ConcurrentHashMap<>();
+
+    private volatile LocalDateTime lastSyncTime = LocalDateTime.now();
+
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder databaseChecks = new LongAdder();
+
+    public ActivityMembershipIndex(ActivityRegistrationRepository registrationRepository) {
+        this.registrationRepository = registrationRepository;
+    }
+
+    /**
+     * 检查用户是否已有某活动的报名记录
+     *
+     * @param activityId 活动ID
+     * @param userId     用户ID
+     * @return 是否已报名
+     */
+    public boolean isRegistered(String activityId, String userId) {
+        Membership membership = memberships.get(activityId);
+        if (membership == null) {
+            membership = load(List.of(activityId)).get(activityId);
+        }
+        Boolean answer = membership != null ? membership.contains(userId) : null;
+        if (answer != null) {
+            memoryHits.increment();
+            return answer;
+        }
+        databaseChecks.increment();
+        return registrationRepository.existsByActivityIdAndUserId(activityId, userId);
+    }
+
+    /**
+     * 批量检查用户是否已有多个活动的报名记录（未加载的活动一次加载，需确认或无法加载的活动一次查询）
+     *
+     * @param activityIds 活动ID列表
+     * @param userId      用户ID
+     * @return 活动ID -> 是否已报名（按传入顺序）
+     */
+    public Map<String, Boolean> areRegistered(Collection<String> activityIds, String userId) {
+        Set<String> ids = new LinkedHashSet<>(activityIds);
+        Map<String, Membership> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String activityId : ids) {
+            Membership membership = memberships.get(activityId);
+            if (membership != null) {
+                found.put(activityId, membership);
+            } else {
+                missing.add(activityId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            found.putAll(load(missing));
+        }
+
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        List<String> uncertain = new ArrayList<>();
+        for (String activityId : ids) {
+            Membership membership = found.get(activityId);
+            Boolean answer = membership != null ? membership.contains(userId) : null;
+            result.put(activityId, answer);
+            if (answer == null) {
+                uncertain.add(activityId);
+            } else {
+                memoryHits.increment();
+            }
+        }
+        if (!uncertain.isEmpty()) {
+            databaseChecks.add(uncertain.size());
+            Set<String> registered = new HashSet<>(
+                    registrationRepository.findActivityIdsByUserIdAndActivityIdIn(userId, uncertain));
+            uncertain.forEach(activityId -> result.put(activityId, registered.contains(activityId)));
+        }
+        return result;
+    }
+
+    /**
+     * 报名记录写入后追加用户（仅更新已加载的活动），在事务中调用时提交后才生效
+     */
+    public void onRegistered(String activityId, String userId) {
+        if (activityId == null || userId == null) {
+            return;
+        }
+        afterCommit(() -> add(activityId, userId));
+    }
+
+    /**
+     * 报名记录删除后丢弃该活动的索引（布隆过滤器不支持删除），下次查询重新加载，在事务中调用时提交后才生效
+     */
+    public void onRemoved(String activityId) {
+        if (activityId == null) {
+            return;
+        }
+        afterCommit(() -> memberships.remove(activityId));
+    }
+
+    /**
+     * 增量同步最近创建的报名（其他节点写入的报名），并移出闲置的活动
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void sync() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            if (!memberships.isEmpty()) {
+                for (Object[] row : registrationRepository.findActivityUserPairsCreatedSince(
+                        lastSyncTime.minusSeconds(SYNC_OVERLAP_SECONDS))) {
+                    add((String) row[0], (String) row[1]);
+                }
+            }
+            lastSyncTime = now;
+
+            long idleBefore = System.currentTimeMillis() - IDLE_EVICT_MILLIS;
+            memberships.values().removeIf(membership -> membership.lastAccessTime < idleBefore);
+        } catch (Exception e) {
+            log.error("同步活动报名成员索引失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 获取索引统计（监控用）
+     */
+    public Map<String, Object> getStats() {
+        int exact = 0;
+        int filtered = 0;
+        for (Membership membership : memberships.values()) {
+            if (membership.users != null) {
+                exact++;
+            } else {
+                filtered++;
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activities", memberships.size());
+        stats.put("exactActivities", exact);
+        stats.put("bloomActivities", filtered);
+        stats.put("memoryHits", memoryHits.sum());
+        stats.put("databaseChecks", databaseChecks.sum());
+        return stats;
+    }
+
+    /**
+     * 从数据库加载活动的报名用户（一次查询），只加载内存剩余容量内的活动；
+     * 已达上限时不查询，未加载的活动由调用方按用户查询（单条查询比加载整个活动的报名列表更轻）
+     */
+    private Map<String, Membership> load(List<String> activityIds) {
+        int room = MAX_ACTIVITIES - memberships.size();
+        if (room <= 0) {
+            return Map.of();
+        }
+        List<String> loadable = activityIds.size() <= room ? activityIds : activityIds.subList(0, room);
+        Map<String, List<String>> users = new HashMap<>();
+        loadable.forEach(activityId -> users.put(activityId, new ArrayList<>()));
+        for (Object[] row : registrationRepository.findActivityUserPairsByActivityIdIn(loadable)) {
+            users.get((String) row[0]).add((String) row[1]);
+        }
+
+        Map<String, Membership> loaded = new HashMap<>();
+        users.forEach((activityId, userIds) -> {
+            Membership membership = Membership.of(userIds);
+            Membership existing = memberships.putIfAbsent(activityId, membership);
+            loaded.put(activityId, existing != null ? existing : membership);
+        });
+        return loaded;
+    }
+
+    private void add(String activityId, String userId) {
+        // 精确集合超过阈值或布隆过滤器超过容量时丢弃，下次查询按新的规模重新加载
+        memberships.computeIfPresent(activityId, (id, membership) -> membership.add(userId) ? membership : null);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 单个活动的报名用户（精确集合或布隆过滤器二选一）
+     */
+    private static final class Membership {
+        private final Set<String> users;
+        private final BloomFilter filter;
+        private volatile long lastAccessTime = System.currentTimeMillis();
+
+        private Membership(Set<String> users, BloomFilter filter) {
+            this.users = users;
+            this.filter = filter;
+        }
+
+        static Membership of(Collection<String> userIds) {
+            if (userIds.size() <= EXACT_THRESHOLD) {
+                Set<String> users = ConcurrentHashMap.newKeySet();
+                users.addAll(userIds);
+                return new Membership(users, null);
+            }
+            BloomFilter filter = new BloomFilter(userIds.size() * 2);
+            userIds.forEach(filter::put);
+            return new Membership(null, filter);
+        }
+
+        /**
+         * @return 已报名/未报名，需查数据库确认时返回 null
+         */
+        Boolean contains(String userId) {
+            lastAccessTime = System.currentTimeMillis();
+            if (users != null) {
+                return users.contains(userId);
+            }
+            return filter.mightContain(userId) ? null : Boolean.FALSE;
+        }
+
+        /**
+         * @return 是否仍可继续使用（false 表示规模已超出，需要重新加载）
+         */
+        boolean add(String userId) {
+            if (users != null) {
+                users.add(userId);
+                return users.size() <= EXACT_THRESHOLD;
+            }
+            filter.put(userId);
+            return filter.count.get() <= filter.capacity;
+        }
+    }
+
+    /**
+     * 布隆过滤器（双重哈希生成 k 个位置，位数组用 AtomicLongArray 支持并发写入）
+     */
+    private static final class BloomFilter {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int capacity;
+        private final AtomicInteger count = new AtomicInteger();
+
+        BloomFilter(int capacity) {
+            this.capacity = capacity;
+            int words = (int) Math.max(1, ((long) capacity * BITS_PER_ELEMENT + 63) / 64);
+            this.bits = new AtomicLongArray(words);
+            this.bitCount = (long) words * 64;
+        }
+
+        void put(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            boolean changed = false;
+            for (int i = 1; i <= HASH_FUNCTIONS; i++) {
+                long index = Math.floorMod(h1 + (long) i * h2, bitCount);
+                long mask = 1L << (index & 63);
+                int word = (int) (index >>> 6);
+                long current;
+                do {
+                    current = bits.get(word);
+                    if ((current & mask) != 0) {
+                        break;
+                    }
+                } while (!bits.compareAndSet(word, current, current | mask));
+                changed |= (current & mask) == 0;
+            }
+            // 重复写入（增量同步的回看区间）不计数
+            if (changed) {
+                count.incrementAndGet();
+            }
+        }
+
+        boolean mightContain(String value) {
+            long hash = hash(value);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= HASH_FUNCTIONS; i++) {
+                long index = Math.floorMod(h1 + (long) i * h2, bitCount);
+                if ((bits.get((int) (index >>> 6)) & (1L << (index & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 64 位 FNV-1a 哈希，再做一次混淆使高低 32 位相互独立
+         */
+        private static long hash(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.CommunityActivity;
+import com.example.wq.repository.CommunityActivityRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 活动名额分配器
+ *
+ * 每个活动在内存中维护一个剩余名额计数，报名先对计数做 CAS 扣减，抢到名额的请求才去数据库做条件 +1，
+ * 名额已满的请求直接拒绝，不再排队等待活动行锁：
+ * - 计数按需从数据库加载（最大人数 - 当前人数），报名事务回滚时名额自动归还
+ * - 取消报名在事务提交后归还名额
+ * - 计数只是准入闸门，数据库条件更新（当前人数 < 最大人数）才是最终依据；
+ *   计数与数据库不一致（如活动最大人数被修改、其他节点取消报名）时，名额不足会按需重载，并定时整体重载
+ *
+ * 基于内存的实现（适用于单机，多节点时各节点闸门各自放行，仍由数据库条件更新保证不超报），
+ * 集群部署时计数可改用 Redis（DECR / Redisson RAtomicLong），需先在 pom.xml 中启用 Redisson 依赖
+ */
+@Slf4j
+@Service
+public class ActivitySeatAllocator {
+
+    // 名额不足时，计数加载超过该时长才从数据库重载（避免满员活动的每次请求都查库）
+    private static final long RELOAD_INTERVAL_MILLIS = 5_000;
+
+    private final CommunityActivityRepository activityRepository;
+
+    private final ConcurrentHashMap<String, Seats> seats = new ConcurrentHashMap<>();
+
+    public ActivitySeatAllocator(CommunityActivityRepository activityRepository) {
+        this.activityRepository = activityRepository;
+    }
+
+    /**
+     * 尝试占用一个名额（需在报名事务中调用，事务回滚时自动归还）
+     *
+     * @param activity 活动（用于首次加载计数）
+     * @return true-占用成功，false-名额已满
+     */
+    public boolean tryAcquire(CommunityActivity activity) {
+        String activityId = activity.get_id();
+        Seats current = seats.computeIfAbsent(activityId, id -> Seats.of(activity));
+        if (!current.tryAcquire()) {
+            if (System.currentTimeMillis() - current.loadedAt < RELOAD_INTERVAL_MILLIS) {
+                return false;
+            }
+            current = reload(activityId, current);
+            if (current == null || !current.tryAcquire()) {
+                return false;
+            }
+        }
+
+        Seats acquired = current;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        acquired.release(1);
+                    }
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * 数据库名额扣减失败（计数比数据库乐观），丢弃计数，下次报名时重新加载
+     */
+    public void invalidate(String activityId) {
+        seats.remove(activityId);
+    }
+
+    /**
+     * 归还一个名额（取消报名后调用；在事务中调用时于提交后归还）
+     */
+    public void release(String activityId) {
+        release(activityId, 1);
+    }
+
+    /**
+     * 归还多个名额（批量取消报名后调用；在事务中调用时于提交后归还）
+     */
+    public void release(String activityId, int count) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    releaseNow(activityId, count);
+                }
+            });
+        } else {
+            releaseNow(activityId, count);
+        }
+    }
+
+    /**
+     * 定时整体重载
+     * 每分钟执行一次：丢弃全部计数，按需从数据库重新加载，修正活动最大人数变更、其他节点取消等带来的偏差
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void resync() {
+        seats.clear();
+    }
+
+    /**
+     * 获取本节点的名额计数（监控用）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> remaining = new HashMap<>();
+        seats.forEach((activityId, value) -> remaining.put(activityId, value.remaining.get()));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activities", seats.size());
+        stats.put("remaining", remaining);
+        return stats;
+    }
+
+    private void releaseNow(String activityId, int count) {
+        Seats current = seats.get(activityId);
+        if (current != null) {
+            current.release(count);
+        }
+    }
+
+    private Seats reload(String activityId, Seats stale) {
+        CommunityActivity latest = activityRepository.findById(activityId).orElse(null);
+        if (latest == null) {
+            seats.remove(activityId, stale);
+            return null;
+        }
+        Seats fresh = Seats.of(latest);
+        // 并发重载时以先替换成功的为准
+        return seats.replace(activityId, stale, fresh) ? fresh : seats.getOrDefault(activityId, fresh);
+    }
+
+    /**
+     * 活动剩余名额计数
+     */
+    private static final class Seats {
+        private final AtomicInteger remaining;
+        private final int capacity;
+        private final long loadedAt = System.currentTimeMillis();
+
+        private Seats(int remaining, int capacity) {
+            this.remaining = new AtomicInteger(remaining);
+            this.capacity = capacity;
+        }
+
+        static Seats of(CommunityActivity activity) {
+            int max = activity.getMaxParticipants() != null ? activity.getMaxParticipants() : 0;
+            int current = activity.getCurrentParticipants() != null ? activity.getCurrentParticipants() : 0;
+            return new Seats(Math.max(max - current, 0), max);
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int current = remaining.get();
+                if (current <= 0) {
+                    return false;
+                }
+                if (remaining.compareAndSet(current, current - 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release(int count) {
+            remaining.updateAndGet(current -> Math.min(current + count, capacity));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.CommunityActivity;
+import org.springframework.beans.BeanUtils;
+
+import java.util.ArrayList;
+
+/**
+ * 活动快照（内存索引保存、直接返回给前端的活动副本）
+ *
+ * 快照与持久化上下文中的实体互不共享（集合字段也复制），放入索引后不再修改；
+ * 参与人数变化时生成新的快照替换
+ */
+final class ActivitySnapshots {
+
+    private ActivitySnapshots() {
+    }
+
+    /**
+     * 复制活动
+     */
+    static CommunityActivity copyOf(CommunityActivity source) {
+        CommunityActivity copy = new CommunityActivity();
+        BeanUtils.copyProperties(source, copy);
+        copy.setCoverImage(source.getCoverImage() != null ? new ArrayList<>(source.getCoverImage()) : null);
+        copy.setImages(source.getImages() != null ? new ArrayList<>(source.getImages()) : null);
+        copy.setTags(source.getTags() != null ? new ArrayList<>(source.getTags()) : null);
+        return copy;
+    }
+
+    /**
+     * 按相对变化量调整参与人数后的新快照（不小于0，不超过最大人数）
+     */
+    static CommunityActivity withParticipantsDelta(CommunityActivity source, int delta) {
+        CommunityActivity copy = copyOf(source);
+        int current = source.getCurrentParticipants() != null ? source.getCurrentParticipants() : 0;
+        int adjusted = Math.max(0, current + delta);
+        if (source.getMaxParticipants() != null) {
+            adjusted = Math.min(adjusted, source.getMaxParticipants());
+        }
+        copy.setCurrentParticipants(adjusted);
+        return copy;
+    }
+}
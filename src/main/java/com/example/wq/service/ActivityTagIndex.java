@@ -0,0 +1,435 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.CommunityActivity;
+import com.example.wq.entity.PageResult;
+import com.example.wq.enums.ActivityStatus;
+import com.example.wq.enums.DeletedFlag;
+import com.example.wq.repository.CommunityActivityRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 活动标签/分类倒排索引
+ *
+ * 在内存中维护未删除、未结束的活动快照（与持久化上下文分离），每个活动分配一个序号，按标签、分类、状态各维护一个位图（BitSet）：
+ * - 启动时从数据库重建，每5分钟整体重建一次（兜底修正遗漏的变化）
+ * - 活动新增、修改、删除后由实体监听器在事务提交后增量更新；状态流转引擎批量更新状态后按ID刷新；
+ *   报名/取消以批量 UPDATE 修改参与人数，提交后按变化量替换快照
+ * - 查询时对位图做交集/并集（标签全部包含为 AND，任一包含为 OR），再按活动开始时间过滤、排序、分页，
+ *   并统计各标签、分类、状态上的数量（分面），只读内存，不访问数据库；
+ *   分类/状态分面不应用自身的筛选条件（选中某个分类后仍能看到其他分类的数量）
+ *
+ * 基于内存的实现（适用于单机），多节点时各节点各自维护
+ */
+@Slf4j
+@Service
+public class ActivityTagIndex {
+
+    // 默认/最大每页条数
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+
+    // 分面中最多返回的标签数（按数量由多到少）
+    private static final int MAX_TAG_FACETS = 50;
+
+    private static final Comparator<CommunityActivity> BY_START_TIME = Comparator
+            .comparing(CommunityActivity::getActivityStartTime, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(CommunityActivity::get_id);
+
+    private final CommunityActivityRepository activityRepository;
+
+    private volatile Index index = new Index();
+
+    public ActivityTagIndex(CommunityActivityRepository activityRepository) {
+        this.activityRepository = activityRepository;
+    }
+
+    /**
+     * 从数据库整体重建（启动时，以及每5分钟一次）
+     * 重建期间的增量更新可能被新索引覆盖，由下一次重建修正
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelay = 300000, initialDelay = 300000)
+    public void rebuild() {
+        try {
+            Index rebuilt = new Index();
+            for (CommunityActivity activity : activityRepository.findLiveActivities(
+                    ActivityStatus.ACTIVITY_ENDED.getCode(), DeletedFlag.NOT_DELETED.getCode())) {
+                rebuilt.put(ActivitySnapshots.copyOf(activity));
+            }
+            index = rebuilt;
+            log.info("活动标签索引重建完成: activities={}, tags={}", rebuilt.size(), rebuilt.tagCount());
+        } catch (Exception e) {
+            log.error("活动标签索引重建失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 活动新增或修改后更新索引（已删除或已结束的活动移出索引），在事务中调用时提交后才生效
+     */
+    public void indexActivity(CommunityActivity activity) {
+        String activityId = activity.get_id();
+        if (activityId == null) {
+            return;
+        }
+        CommunityActivity snapshot = isIndexable(activity) ? ActivitySnapshots.copyOf(activity) : null;
+        afterCommit(() -> {
+            if (snapshot != null) {
+                index.put(snapshot);
+            } else {
+                index.remove(activityId);
+            }
+        });
+    }
+
+    /**
+     * 活动删除后移出索引，在事务中调用时提交后才生效
+     */
+    public void removeActivity(String activityId) {
+        afterCommit(() -> index.remove(activityId));
+    }
+
+    /**
+     * 按数据库最新状态刷新活动（批量 UPDATE 不经过实体监听器，更新状态后调用）
+     */
+    public void refreshActivities(Collection<String> activityIds) {
+        if (activityIds.isEmpty()) {
+            return;
+        }
+        try {
+            Set<String> missing = new HashSet<>(activityIds);
+            for (CommunityActivity activity : activityRepository.findAllById(activityIds)) {
+                missing.remove(activity.get_id());
+                if (isIndexable(activity)) {
+                    index.put(ActivitySnapshots.copyOf(activity));
+                } else {
+                    index.remove(activity.get_id());
+                }
+            }
+            missing.forEach(index::remove);
+        } catch (Exception e) {
+            log.error("刷新活动标签索引失败，等待下次重建修正: activities={}, error={}",
+                    activityIds.size(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 报名/取消后按变化量更新活动快照的参与人数（批量 UPDATE 不经过实体监听器），在事务中调用时提交后才生效
+     */
+    public void adjustParticipants(String activityId, int delta) {
+        afterCommit(() -> index.adjustParticipants(activityId, delta));
+    }
+
+    /**
+     * 按标签、分类、状态、开始时间筛选活动（按活动开始时间升序分页），并返回分面统计
+     *
+     * @param allTags    必须全部包含的标签（AND）
+     * @param anyTags    至少包含其一的标签（OR）
+     * @param statuses   活动状态（不传则返回全部未结束的活动）
+     * @param categories 活动分类（不传则不限）
+     * @param startFrom  活动开始时间下限（含）
+     * @param startTo    活动开始时间上限（含）
+     * @param page       页码（从0开始）
+     * @param size       每页条数，不传默认20，最大100
+     * @return {page: 分页结果, facets: {tags, categories, statuses}}
+     */
+    public Map<String, Object> search(Collection<String> allTags, Collection<String> anyTags,
+                                      Collection<Integer> statuses, Collection<Integer> categories,
+                                      LocalDateTime startFrom, LocalDateTime startTo,
+                                      Integer page, Integer size) {
+        int pageNumber = page == null || page < 0 ? 0 : page;
+        int pageSize = size == null || size <= 0 ? DEFAULT_PAGE_SIZE : Math.min(size, MAX_PAGE_SIZE);
+        if (startFrom != null && startTo != null && startFrom.isAfter(startTo)) {
+            throw new RuntimeException("开始时间范围不合法");
+        }
+
+        Index current = index;
+        current.lock.readLock().lock();
+        try {
+            // 标签与开始时间条件对所有分面生效，分类/状态条件只对其他维度的分面生效
+            BitSet base = current.matchTags(normalize(allTags), normalize(anyTags));
+            if (startFrom != null || startTo != null) {
+                for (int ordinal = base.nextSetBit(0); ordinal >= 0; ordinal = base.nextSetBit(ordinal + 1)) {
+                    LocalDateTime startTime = current.slots.get(ordinal).getActivityStartTime();
+                    if (startTime == null || (startFrom != null && startTime.isBefore(startFrom))
+                            || (startTo != null && startTime.isAfter(startTo))) {
+                        base.clear(ordinal);
+                    }
+                }
+            }
+            BitSet byStatus = intersect(base, current.filter(current.statuses, statuses));
+            BitSet byCategory = intersect(base, current.filter(current.categories, categories));
+            BitSet matched = intersect(byStatus, current.filter(current.categories, categories));
+
+            List<CommunityActivity> activities = new ArrayList<>(matched.cardinality());
+            for (int ordinal = matched.nextSetBit(0); ordinal >= 0; ordinal = matched.nextSetBit(ordinal + 1)) {
+                activities.add(current.slots.get(ordinal));
+            }
+            activities.sort(BY_START_TIME);
+
+            int from = (int) Math.min((long) pageNumber * pageSize, activities.size());
+            int to = Math.min(from + pageSize, activities.size());
+            PageResult<CommunityActivity> pageResult = PageResult.of(new PageImpl<>(
+                    new ArrayList<>(activities.subList(from, to)),
+                    PageRequest.of(pageNumber, pageSize), activities.size()));
+
+            Map<String, Object> facets = new HashMap<>();
+            facets.put("tags", topFacets(current.facets(current.tags, matched)));
+            facets.put("categories", current.facets(current.categories, byStatus));
+            facets.put("statuses", current.facets(current.statuses, byCategory));
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("page", pageResult);
+            result.put("facets", facets);
+            return result;
+        } finally {
+            current.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取索引统计（监控用）
+     */
+    public Map<String, Object> getStats() {
+        Index current = index;
+        current.lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("activities", current.size());
+            stats.put("tags", current.tagCount());
+            stats.put("categories", current.categories.size());
+            stats.put("slots", current.slots.size());
+            return stats;
+        } finally {
+            current.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 位图与筛选条件的交集（返回新的位图，未传筛选条件时为副本）
+     */
+    private static BitSet intersect(BitSet bits, BitSet filter) {
+        BitSet result = (BitSet) bits.clone();
+        if (filter != null) {
+            result.and(filter);
+        }
+        return result;
+    }
+
+    private static Map<String, Integer> topFacets(Map<String, Integer> counts) {
+        Map<String, Integer> top = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(MAX_TAG_FACETS)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return top;
+    }
+
+    private static Set<String> normalize(Collection<String> tags) {
+        Set<String> normalized = new LinkedHashSet<>();
+        if (tags != null) {
+            for (String tag : tags) {
+                if (tag != null && !tag.isBlank()) {
+                    normalized.add(tag.trim());
+                }
+            }
+        }
+        return normalized;
+    }
+
+    private static boolean isIndexable(CommunityActivity activity) {
+        return DeletedFlag.NOT_DELETED.getCode().equals(activity.getDeleted())
+                && !ActivityStatus.ACTIVITY_ENDED.getCode().equals(activity.getStatus());
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 倒排索引（维度值 -> 活动序号位图），写少读多，用读写锁保护
+     * 活动移出后序号回收复用，位图长度不随历史活动数增长
+     */
+    private static final class Index {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, Integer> ordinals = new HashMap<>();
+        private final List<CommunityActivity> slots = new ArrayList<>();
+        private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+        private final BitSet live = new BitSet();
+        private final Map<String, BitSet> tags = new HashMap<>();
+        private final Map<Integer, BitSet> categories = new HashMap<>();
+        private final Map<Integer, BitSet> statuses = new HashMap<>();
+
+        void put(CommunityActivity activity) {
+            lock.writeLock().lock();
+            try {
+                unlink(activity.get_id());
+                int ordinal;
+                if (freeOrdinals.isEmpty()) {
+                    ordinal = slots.size();
+                    slots.add(activity);
+                } else {
+                    ordinal = freeOrdinals.pop();
+                    slots.set(ordinal, activity);
+                }
+                ordinals.put(activity.get_id(), ordinal);
+                live.set(ordinal);
+                for (String tag : normalize(activity.getTags())) {
+                    tags.computeIfAbsent(tag, key -> new BitSet()).set(ordinal);
+                }
+                if (activity.getCategory() != null) {
+                    categories.computeIfAbsent(activity.getCategory(), key -> new BitSet()).set(ordinal);
+                }
+                if (activity.getStatus() != null) {
+                    statuses.computeIfAbsent(activity.getStatus(), key -> new BitSet()).set(ordinal);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void adjustParticipants(String activityId, int delta) {
+            lock.writeLock().lock();
+            try {
+                Integer ordinal = ordinals.get(activityId);
+                if (ordinal != null) {
+                    // 参与人数不参与筛选，只替换快照，位图不变
+                    slots.set(ordinal, ActivitySnapshots.withParticipantsDelta(slots.get(ordinal), delta));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void remove(String activityId) {
+            lock.writeLock().lock();
+            try {
+                unlink(activityId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void unlink(String activityId) {
+            Integer ordinal = ordinals.remove(activityId);
+            if (ordinal == null) {
+                return;
+            }
+            CommunityActivity previous = slots.set(ordinal, null);
+            live.clear(ordinal);
+            for (String tag : normalize(previous.getTags())) {
+                clear(tags, tag, ordinal);
+            }
+            clear(categories, previous.getCategory(), ordinal);
+            clear(statuses, previous.getStatus(), ordinal);
+            freeOrdinals.push(ordinal);
+        }
+
+        private static <K> void clear(Map<K, BitSet> bitmaps, K key, int ordinal) {
+            BitSet bitmap = key != null ? bitmaps.get(key) : null;
+            if (bitmap == null) {
+                return;
+            }
+            bitmap.clear(ordinal);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        }
+
+        /**
+         * 计算满足标签条件的活动序号（调用方持有读锁），返回新的位图，不影响索引
+         */
+        BitSet matchTags(Set<String> allTags, Set<String> anyTags) {
+            BitSet matched = (BitSet) live.clone();
+            for (String tag : allTags) {
+                BitSet bitmap = tags.get(tag);
+                if (bitmap == null) {
+                    return new BitSet();
+                }
+                matched.and(bitmap);
+            }
+            if (!anyTags.isEmpty()) {
+                matched.and(union(tags, anyTags));
+            }
+            return matched;
+        }
+
+        /**
+         * 满足分类/状态筛选条件的活动序号（调用方持有读锁），未传筛选条件时返回 null
+         */
+        BitSet filter(Map<Integer, BitSet> bitmaps, Collection<Integer> values) {
+            return values == null || values.isEmpty() ? null : union(bitmaps, values);
+        }
+
+        private static <K> BitSet union(Map<K, BitSet> bitmaps, Collection<K> keys) {
+            BitSet union = new BitSet();
+            for (K key : keys) {
+                BitSet bitmap = bitmaps.get(key);
+                if (bitmap != null) {
+                    union.or(bitmap);
+                }
+            }
+            return union;
+        }
+
+        /**
+         * 统计结果集在各维度值上的数量（调用方持有读锁）
+         */
+        <K> Map<K, Integer> facets(Map<K, BitSet> bitmaps, BitSet matched) {
+            Map<K, Integer> counts = new HashMap<>();
+            if (matched.isEmpty()) {
+                return counts;
+            }
+            for (Map.Entry<K, BitSet> entry : bitmaps.entrySet()) {
+                if (!entry.getValue().intersects(matched)) {
+                    continue;
+                }
+                BitSet intersection = (BitSet) entry.getValue().clone();
+                intersection.and(matched);
+                counts.put(entry.getKey(), intersection.cardinality());
+            }
+            return counts;
+        }
+
+        int size() {
+            return ordinals.size();
+        }
+
+        int tagCount() {
+            return tags.size();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.CommunityActivity;
+import com.example.wq.enums.ActivityStatus;
+import com.example.wq.enums.DeletedFlag;
+import com.example.wq.repository.CommunityActivityRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 活动状态流转引擎
+ *
+ * 按活动自身的时间点登记下一次状态变更，到点后批量 UPDATE，状态精确到秒，无需按天全表扫描：
+ * - 报名截止时间或活动开始时间（取较早者）：报名中/已满员 -> 报名结束
+ * - 活动结束时间：-> 活动结束
+ *
+ * 启动时从数据库中未结束的活动重建；活动新增或修改后由实体监听器重新登记。
+ * 批量 UPDATE 不经过实体监听器，状态变更后按ID刷新附近活动索引和标签索引。
+ * 时间被修改后旧的条目仍会到点出队，批量 UPDATE 带时间条件，过期条目不会误改状态。
+ * 批量 UPDATE 失败时本批变更重新入队，按失败次数退避（1秒起，每次翻倍，最长1分钟）后重试
+ */
+@Slf4j
+@Service
+public class ActivityTransitionEngine {
+
+    private final CommunityActivityRepository activityRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final GeoIndexService geoIndexService;
+    private final ActivityTagIndex activityTagIndex;
+
+    // 执行失败后的重试间隔（毫秒）：首次1秒，每次翻倍，最长1分钟
+    private static final long RETRY_BASE_MILLIS = 1000;
+    private static final long RETRY_MAX_MILLIS = 60000;
+
+    private final DelayQueue<Transition> queue = new DelayQueue<>();
+
+    // 已登记的变更（活动ID:目标状态:时间点），避免活动反复保存时重复入队
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet();
+
+    public ActivityTransitionEngine(CommunityActivityRepository activityRepository,
+                                    TransactionTemplate transactionTemplate,
+                                    GeoIndexService geoIndexService,
+                                    ActivityTagIndex activityTagIndex) {
+        this.activityRepository = activityRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.geoIndexService = geoIndexService;
+        this.activityTagIndex = activityTagIndex;
+    }
+
+    /**
+     * 启动时从数据库重建（已过时间点的变更在首轮直接执行）
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            List<Object[]> rows = activityRepository.findTransitionCandidates(
+                    ActivityStatus.ACTIVITY_ENDED.getCode(), DeletedFlag.NOT_DELETED.getCode());
+            for (Object[] row : rows) {
+                register((String) row[0], (Integer) row[1], (LocalDateTime) row[2],
+                        (LocalDateTime) row[3], (LocalDateTime) row[4]);
+            }
+            log.info("活动状态流转队列重建完成: activities={}, transitions={}", rows.size(), scheduled.size());
+        } catch (Exception e) {
+            log.error("活动状态流转队列重建失败，状态将由兜底任务更新: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 登记活动的状态变更时间点，在事务中调用时提交后才入队
+     */
+    public void schedule(CommunityActivity activity) {
+        String activityId = activity.get_id();
+        Integer status = activity.getStatus();
+        LocalDateTime deadline = activity.getRegistrationDeadlineTime();
+        LocalDateTime start = activity.getActivityStartTime();
+        LocalDateTime end = activity.getActivityEndTime();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    register(activityId, status, deadline, start, end);
+                }
+            });
+        } else {
+            register(activityId, status, deadline, start, end);
+        }
+    }
+
+    /**
+     * 执行已到点的状态变更（按目标状态各一条批量 UPDATE）
+     *
+     * @param maxBatch 本批最多处理的变更数
+     * @return 出队的变更数（0 表示没有到点的变更）
+     * @throws RuntimeException 批量 UPDATE 失败（本批变更已重新入队，退避后重试）
+     */
+    public int applyDue(int maxBatch) {
+        List<Transition> due = new ArrayList<>();
+        queue.drainTo(due, maxBatch);
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> closeIds = new LinkedHashSet<>();
+        Set<String> endIds = new LinkedHashSet<>();
+        for (Transition transition : due) {
+            scheduled.remove(transition.key());
+            if (ActivityStatus.ACTIVITY_ENDED.getCode().equals(transition.targetStatus)) {
+                endIds.add(transition.activityId);
+            } else {
+                closeIds.add(transition.activityId);
+            }
+        }
+
+        Map<String, Integer> updated = new HashMap<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                if (!closeIds.isEmpty()) {
+                    updated.put("closed", activityRepository.closeRegistrationByIds(closeIds,
+                            ActivityStatus.REGISTRATION_CLOSED.getCode(), now));
+                }
+                if (!endIds.isEmpty()) {
+                    updated.put("ended", activityRepository.endActivitiesByIds(endIds,
+                            ActivityStatus.ACTIVITY_ENDED.getCode(), now));
+                }
+            });
+        } catch (RuntimeException e) {
+            due.forEach(this::retry);
+            throw e;
+        }
+
+        Set<String> changedIds = new LinkedHashSet<>(closeIds);
+        changedIds.addAll(endIds);
+        geoIndexService.refreshActivities(changedIds);
+        activityTagIndex.refreshActivities(changedIds);
+
+        log.info("活动状态流转: due={}, updated={}", due.size(), updated);
+        return due.size();
+    }
+
+    /**
+     * 当前已登记的变更数
+     */
+    public int size() {
+        return scheduled.size();
+    }
+
+    private void register(String activityId, Integer status, LocalDateTime deadline,
+                          LocalDateTime start, LocalDateTime end) {
+        if (activityId == null || status == null || ActivityStatus.ACTIVITY_ENDED.getCode().equals(status)) {
+            return;
+        }
+
+        // 报名中/已满员：到截止时间或活动开始时间（取较早者）关闭报名
+        if (ActivityStatus.REGISTERING.getCode().equals(status) || ActivityStatus.FULL.getCode().equals(status)) {
+            LocalDateTime closeAt = deadline == null || (start != null && start.isBefore(deadline)) ? start : deadline;
+            if (closeAt != null) {
+                enqueue(activityId, ActivityStatus.REGISTRATION_CLOSED.getCode(), closeAt);
+            }
+        }
+        if (end != null) {
+            enqueue(activityId, ActivityStatus.ACTIVITY_ENDED.getCode(), end);
+        }
+    }
+
+    private void enqueue(String activityId, int targetStatus, LocalDateTime time) {
+        long fireAtMillis = time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        Transition transition = new Transition(activityId, targetStatus, fireAtMillis, fireAtMillis, 0);
+        if (scheduled.add(transition.key())) {
+            queue.offer(transition);
+        }
+    }
+
+    /**
+     * 执行失败的变更退避后重新入队（期间已重新登记的相同变更不重复入队）
+     */
+    private void retry(Transition transition) {
+        int attempts = transition.attempts + 1;
+        long backoff = Math.min(RETRY_BASE_MILLIS << Math.min(attempts - 1, 16), RETRY_MAX_MILLIS);
+        Transition retried = new Transition(transition.activityId, transition.targetStatus,
+                transition.fireAtMillis, System.currentTimeMillis() + backoff, attempts);
+        if (scheduled.add(retried.key())) {
+            queue.offer(retried);
+        }
+    }
+
+    /**
+     * 状态变更任务
+     */
+    private static class Transition implements Delayed {
+        private final String activityId;
+        private final int targetStatus;
+        // 登记的时间点（去重用）
+        private final long fireAtMillis;
+        // 出队时间（首次为登记的时间点，失败重试时为退避后的时间）
+        private final long dueAtMillis;
+        // 已失败的次数
+        private final int attempts;
+
+        Transition(String activityId, int targetStatus, long fireAtMillis, long dueAtMillis, int attempts) {
+            this.activityId = activityId;
+            this.targetStatus = targetStatus;
+            this.fireAtMillis = fireAtMillis;
+            this.dueAtMillis = dueAtMillis;
+            this.attempts = attempts;
+        }
+
+        String key() {
+            return activityId + ":" + targetStatus + ":" + fireAtMillis;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAtMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueAtMillis, ((Transition) other).dueAtMillis);
+        }
+    }
+}
@@ -2,21 +2,32 @@ package com.example.wq.service;
 
 import com.example.wq.entity.ActivityRegistration;
 import com.example.wq.entity.CommunityActivity;
+import com.example.wq.enums.ActivityStatus;
 import com.example.wq.enums.DeletedFlag;
 import com.example.wq.enums.PaymentStatus;
 import com.example.wq.enums.RegistrationStatus;
 import com.example.wq.repository.ActivityRegistrationRepository;
 import com.example.wq.repository.CommunityActivityRepository;
+import com.example.wq.util.SnowflakeIdGenerator;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.Optional;
-import java.util.UUID;
 
 /**
  * 社区活动服务
@@ -27,27 +38,66 @@ public class CommunityActivityService {
 
     private final CommunityActivityRepository activityRepository;
     private final ActivityRegistrationRepository registrationRepository;
+    private final ActivitySeatAllocator seatAllocator;
+    private final RegistrationExpiryQueue registrationExpiryQueue;
+    private final TransactionTemplate transactionTemplate;
+    private final ActivityMembershipIndex membershipIndex;
+    private final GeoIndexService geoIndexService;
+    private final ActivityTagIndex tagIndex;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // 兜底扫描每批取消的报名数
+    private static final int EXPIRY_SCAN_BATCH_SIZE = 200;
+
+    // 兜底扫描每轮最多处理的批次数
+    private static final int EXPIRY_SCAN_MAX_BATCHES = 20;
 
     public CommunityActivityService(CommunityActivityRepository activityRepository,
-                                    ActivityRegistrationRepository registrationRepository) {
+                                    ActivityRegistrationRepository registrationRepository,
+                                    ActivitySeatAllocator seatAllocator,
+                                    RegistrationExpiryQueue registrationExpiryQueue,
+                                    TransactionTemplate transactionTemplate,
+                                    ActivityMembershipIndex membershipIndex,
+                                    GeoIndexService geoIndexService,
+                                    ActivityTagIndex tagIndex) {
         this.activityRepository = activityRepository;
         this.registrationRepository = registrationRepository;
+        this.seatAllocator = seatAllocator;
+        this.registrationExpiryQueue = registrationExpiryQueue;
+        this.transactionTemplate = transactionTemplate;
+        this.membershipIndex = membershipIndex;
+        this.geoIndexService = geoIndexService;
+        this.tagIndex = tagIndex;
     }
 
  
     /**
      * 检查用户是否已报名（简单版，仅返回布尔值）
+     * 由报名成员索引回答，"未报名"不访问数据库
      *
      * @param activityId 活动ID
      * @param userId     用户ID
      * @return 是否已报名
      */
     public boolean isUserRegistered(String activityId, String userId) {
-        return registrationRepository.existsByActivityIdAndUserId(activityId, userId);
+        return membershipIndex.isRegistered(activityId, userId);
+    }
+
+    /**
+     * 批量检查用户是否已报名多个活动（活动列表页一次调用）
+     *
+     * @param activityIds 活动ID列表
+     * @param userId      用户ID
+     * @return 活动ID -> 是否已报名
+     */
+    public Map<String, Boolean> isUserRegistered(List<String> activityIds, String userId) {
+        return membershipIndex.areRegistered(activityIds, userId);
     }
 
     /**
-     * 用户报名参加活动（优化版：事务控制 + 行锁 + 原子扣减）
+     * 用户报名参加活动（内存名额闸门 + 数据库条件更新，不持有活动行锁）
      *
      * @param activityId 活动ID
      * @param userId     用户ID
@@ -61,105 +111,186 @@ public class CommunityActivityService {
                                                   String userName, String userPhone, String remarks) {
         log.info("用户开始报名: activityId={}, userId={}, userName={}", activityId, userId, userName);
 
-        // 第一步：使用行锁查询活动（阻塞其他并发请求）
-        CommunityActivity activity = activityRepository.findByIdWithLock(activityId)
-                .orElseThrow(() -> new RuntimeException("活动不存在"));
+        // 第一步：查询活动（不加行锁，名额由第三步的条件更新保证）
+        CommunityActivity activity = activityRepository.findById(activityId).orElse(null);
 
         // 第二步：业务检查
-        // 2.1 检查活动是否已删除
-        if (!activity.getDeleted().equals(DeletedFlag.NOT_DELETED.getCode())) {
-            throw new RuntimeException("活动不存在");
+        // 2.1 检查活动是否存在、是否在报名中、报名是否截止
+        checkRegistrable(activity);
+
+        // 2.2 检查报名人数是否已满
+        if (activity.getCurrentParticipants() >= activity.getMaxParticipants()) {
+            throw new RuntimeException("活动报名人数已满");
         }
 
-        // 2.2 检查活动状态是否允许报名（0=报名中）
-        if (activity.getStatus() != 0) {
-            throw new RuntimeException("活动不在报名中");
+        // 2.3 检查用户是否已经报名过（排除已取消的报名）
+        if (registrationRepository.existsValidRegistrationByActivityIdAndUserId(activityId, userId)) {
+            throw new RuntimeException("您已经报名过该活动");
         }
 
-        // 2.3 检查报名是否截止
-        if (activity.getRegistrationDeadlineTime() != null &&
-                activity.getRegistrationDeadlineTime().isBefore(LocalDateTime.now())) {
-            throw new RuntimeException("报名已截止");
+        // 第三步：占用名额
+        // 3.1 内存名额闸门：名额已满直接拒绝，不访问数据库（事务回滚时名额自动归还）
+        if (!seatAllocator.tryAcquire(activity)) {
+            throw new RuntimeException("活动报名人数已满");
         }
 
-        // 2.4 检查报名人数是否已满
-        if (activity.getCurrentParticipants() >= activity.getMaxParticipants()) {
+        // 3.2 数据库条件更新（当前人数 < 最大人数）
+        if (activityRepository.incrementParticipants(activityId) == 0) {
+            // 内存计数比数据库乐观（如其他节点已报满），丢弃计数以便重新加载
+            seatAllocator.invalidate(activityId);
             throw new RuntimeException("活动报名人数已满");
         }
+        participantsChanged(activityId, 1);
 
-        // 2.5 检查用户是否已经报名过（排除已取消的报名）
-        if (registrationRepository.existsValidRegistrationByActivityIdAndUserId(activityId, userId)) {
-            throw new RuntimeException("您已经报名过该活动");
+        // 第四步：创建报名记录
+        ActivityRegistration savedRegistration = registrationRepository.save(
+                newRegistration(activity, userId, userName, userPhone, remarks));
+        // 付费活动：登记支付超时，到期未支付自动取消并归还名额
+        registrationExpiryQueue.schedule(savedRegistration.get_id(), savedRegistration.getPaymentExpireTime());
+
+        // 第五步：构造返回结果
+        log.info("用户报名成功: registrationId={}, activityId={}, userId={}, isFree={}",
+                savedRegistration.get_id(), activityId, userId, isFree(activity));
+
+        return toRegisterResult(savedRegistration, activity);
+    }
+
+    /**
+     * 批量报名（报名排队模式下由 ActivityAdmissionQueue 的写入线程调用）
+     *
+     * 一个事务处理一批报名：锁定活动行一次，按剩余名额依次录取，报名记录批量写入，参与人数一次更新；
+     * 每个报名的结果（报名信息或拒绝原因）写回 Admission，由调用方在事务提交后通知请求方。
+     * 活动不可报名时抛出异常，整批拒绝
+     *
+     * @param activityId 活动ID
+     * @param admissions 同一活动的一批报名请求
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void registerBatch(String activityId, List<ActivityAdmissionQueue.Admission> admissions) {
+        CommunityActivity activity = entityManager.find(CommunityActivity.class, activityId, LockModeType.PESSIMISTIC_WRITE);
+        checkRegistrable(activity);
+
+        // 已有报名记录的用户（含已取消，报名表按活动+用户唯一）
+        Set<String> registeredUsers = new HashSet<>(registrationRepository.findUserIdsByActivityIdAndUserIdIn(
+                activityId, admissions.stream().map(ActivityAdmissionQueue.Admission::getUserId).distinct().toList()));
+
+        int remaining = activity.getMaxParticipants() - activity.getCurrentParticipants();
+        List<ActivityRegistration> registrations = new ArrayList<>();
+        List<ActivityAdmissionQueue.Admission> admitted = new ArrayList<>();
+        for (ActivityAdmissionQueue.Admission admission : admissions) {
+            if (!registeredUsers.add(admission.getUserId())) {
+                admission.reject("您已经报名过该活动");
+            } else if (remaining <= 0) {
+                admission.reject("活动报名人数已满");
+            } else {
+                registrations.add(newRegistration(activity, admission.getUserId(), admission.getUserName(),
+                        admission.getUserPhone(), admission.getRemarks()));
+                admitted.add(admission);
+                remaining--;
+            }
+        }
+        if (registrations.isEmpty()) {
+            return;
         }
 
-        // 第三步：原子扣减名额（使用 CAS 机制）
-        int updatedRows = activityRepository.incrementParticipantsAtomically(
-                activityId,
-                activity.getCurrentParticipants(),
-                activity.getMaxParticipants()
-        );
+        activity.setCurrentParticipants(activity.getCurrentParticipants() + registrations.size());
+        // 配合 hibernate.jdbc.batch_size 在提交时批量 INSERT
+        registrationRepository.saveAll(registrations);
+        for (int i = 0; i < admitted.size(); i++) {
+            ActivityRegistration registration = registrations.get(i);
+            registrationExpiryQueue.schedule(registration.get_id(), registration.getPaymentExpireTime());
+            admitted.get(i).accept(toRegisterResult(registration, activity));
+        }
 
-        if (updatedRows == 0) {
-            // 名额在检查和更新之间被抢光了
-            throw new RuntimeException("活动名额已满，请稍后再试");
+        log.info("批量报名成功: activityId={}, batch={}, admitted={}", activityId, admissions.size(), registrations.size());
+    }
+
+    /**
+     * 检查活动是否可以报名
+     */
+    private void checkRegistrable(CommunityActivity activity) {
+        // 检查活动是否存在、是否已删除
+        if (activity == null || !activity.getDeleted().equals(DeletedFlag.NOT_DELETED.getCode())) {
+            throw new RuntimeException("活动不存在");
         }
 
-        // 第四步：创建报名记录
+        // 检查活动状态是否允许报名（0=报名中）
+        if (activity.getStatus() != 0) {
+            throw new RuntimeException("活动不在报名中");
+        }
+
+        // 检查报名是否截止
+        if (activity.getRegistrationDeadlineTime() != null &&
+                activity.getRegistrationDeadlineTime().isBefore(LocalDateTime.now())) {
+            throw new RuntimeException("报名已截止");
+        }
+    }
+
+    /**
+     * 创建报名记录（免费活动直接标记为已支付，付费活动待支付）
+     */
+    private ActivityRegistration newRegistration(CommunityActivity activity, String userId,
+                                                 String userName, String userPhone, String remarks) {
         ActivityRegistration registration = new ActivityRegistration();
-        registration.setActivityId(activityId);
+        registration.setActivityId(activity.get_id());
         registration.setUserId(userId);
         registration.setUserName(userName);
         registration.setUserPhone(userPhone);
         registration.setRemarks(remarks);
         registration.setStatus(RegistrationStatus.REGISTERED.getCode());
 
-        // 判断是免费还是付费活动
-        boolean isFreeActivity = activity.getPrice() == null || activity.getPrice().compareTo(BigDecimal.ZERO) <= 0;
-        String orderNo = generateOrderNo();
-
-        if (isFreeActivity) {
+        if (isFree(activity)) {
             // 免费活动：直接标记为已支付
             registration.setPaymentStatus(PaymentStatus.PAID.getCode());
             registration.setPaymentAmount(BigDecimal.ZERO);
             registration.setPaymentTime(LocalDateTime.now());
-            log.info("免费活动报名成功，直接标记为已支付");
         } else {
             // 付费活动：状态为未支付，设置过期时间
             registration.setPaymentStatus(PaymentStatus.UNPAID.getCode());
             registration.setPaymentAmount(activity.getPrice());
             // 支付过期时间：15分钟
             registration.setPaymentExpireTime(LocalDateTime.now().plusMinutes(15));
-            log.info("付费活动报名成功，待支付，金额: {}", activity.getPrice());
         }
 
-        // 存储订单号（需要在实体中添加此字段）
-        registration.setOrderNo(orderNo);
-
-        ActivityRegistration savedRegistration = registrationRepository.save(registration);
+        registration.setOrderNo(generateOrderNo());
+        return registration;
+    }
 
-        // 第五步：构造返回结果
+    /**
+     * 构造报名返回结果
+     */
+    private Map<String, Object> toRegisterResult(ActivityRegistration registration, CommunityActivity activity) {
+        boolean isFreeActivity = isFree(activity);
         Map<String, Object> result = new HashMap<>();
-        result.put("registrationId", savedRegistration.get_id());
-        result.put("orderNo", orderNo);
+        result.put("registrationId", registration.get_id());
+        result.put("orderNo", registration.getOrderNo());
         result.put("isFree", isFreeActivity);
         result.put("needPayment", !isFreeActivity);
         result.put("paymentAmount", activity.getPrice());
+        return result;
+    }
 
-        log.info("用户报名成功: registrationId={}, activityId={}, userId={}, isFree={}",
-                savedRegistration.get_id(), activityId, userId, isFreeActivity);
+    /**
+     * 批量 UPDATE 修改参与人数不经过实体监听器，同步内存索引中的活动快照（提交后生效）
+     */
+    private void participantsChanged(String activityId, int delta) {
+        geoIndexService.adjustParticipants(activityId, delta);
+        tagIndex.adjustParticipants(activityId, delta);
+    }
 
-        return result;
+    private boolean isFree(CommunityActivity activity) {
+        return activity.getPrice() == null || activity.getPrice().compareTo(BigDecimal.ZERO) <= 0;
     }
 
     /**
      * 生成唯一订单号
      */
     private String generateOrderNo() {
-        return "ACT" + System.currentTimeMillis() + UUID.randomUUID().toString().replace("-", "").substring(0, 8).toUpperCase();
+        return "ACT" + SnowflakeIdGenerator.nextIdString();
     }
 
     /**
-     * 取消报名（优化版：使用原子操作避免N+1查询）
+     * 取消报名（条件更新报名状态 + 相对释放名额，并发取消不会失败也不会重复释放）
      *
      * @param activityId 活动ID
      * @param userId     用户ID
@@ -169,37 +300,146 @@ public class CommunityActivityService {
     public void cancelRegistration(String activityId, String userId, String cancelReason) {
         log.info("用户取消报名: activityId={}, userId={}", activityId, userId);
 
-        // 第一步：查询活动（获取当前人数用于CAS操作）
-        CommunityActivity activity = activityRepository.findById(activityId)
-                .orElseThrow(() -> new RuntimeException("活动不存在"));
-
-        // 第二步：查找报名记录
+        // 第一步：查找报名记录
         ActivityRegistration registration = registrationRepository.findByActivityIdAndUserId(activityId, userId)
                 .orElseThrow(() -> new RuntimeException("未找到报名记录"));
 
-        // 第三步：检查报名状态（只有已报名状态才能取消）
+        // 第二步：检查报名状态（只有已报名状态才能取消）
         if (registration.getStatus() != 0) {
             throw new RuntimeException("当前状态不能取消报名");
         }
 
-        // 第四步：原子减少活动参与人数（使用 CAS 机制避免并发问题）
-        int updatedRows = activityRepository.decrementParticipantsAtomically(
-                activityId,
-                activity.getCurrentParticipants()
-        );
-
-        if (updatedRows == 0) {
-            // CAS失败，人数在检查和更新之间发生了变化
-            throw new RuntimeException("取消失败，活动信息已变更，请刷新后重试");
+        // 第三步：条件更新报名状态（并发重复取消时只有一次成功）
+        int cancelled = registrationRepository.cancelIfRegistered(
+                registration.get_id(), LocalDateTime.now(), cancelReason);
+        if (cancelled == 0) {
+            throw new RuntimeException("当前状态不能取消报名");
         }
 
-        // 第五步：更新报名状态
-        registration.setStatus(1); // 1=已取消
-        registration.setCancelTime(java.time.LocalDateTime.now());
-        registration.setCancelReason(cancelReason);
-        registrationRepository.save(registration);
+        // 第四步：相对释放名额（与并发报名/取消可交换，不依赖事先读取的人数）
+        if (activityRepository.decrementParticipants(activityId) == 0) {
+            log.warn("释放活动名额时人数已为0，等待对账修正: activityId={}", activityId);
+        } else {
+            participantsChanged(activityId, -1);
+        }
+        seatAllocator.release(activityId);
+        registrationExpiryQueue.remove(registration.get_id());
 
         log.info("取消报名成功: activityId={}, userId={}", activityId, userId);
     }
 
+    /**
+     * 取消支付超时的报名（支付超时队列到期后调用）
+     *
+     * @param registrationIds 已到期的报名记录ID
+     * @return 取消的报名数
+     */
+    public int cancelExpiredRegistrations(List<String> registrationIds) {
+        if (registrationIds.isEmpty()) {
+            return 0;
+        }
+        Integer cancelled = transactionTemplate.execute(status -> cancelExpired(registrationIds));
+        return cancelled != null ? cancelled : 0;
+    }
+
+    /**
+     * 兜底扫描：分批取消支付已过期的报名（其他节点创建的报名、队列重建失败等）
+     *
+     * @return 取消的报名数
+     */
+    public int handleExpiredRegistrations() {
+        int total = 0;
+        for (int batch = 0; batch < EXPIRY_SCAN_MAX_BATCHES; batch++) {
+            List<String> registrationIds = registrationRepository.findExpiredUnpaidIds(
+                    LocalDateTime.now(), PageRequest.of(0, EXPIRY_SCAN_BATCH_SIZE));
+            if (registrationIds.isEmpty()) {
+                break;
+            }
+            int cancelled = cancelExpiredRegistrations(registrationIds);
+            total += cancelled;
+            if (cancelled == 0) {
+                // 本批均已被并发处理（支付/取消），留到下一轮
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 锁定仍待支付且已过期的报名后批量取消，按活动汇总后每个活动一次释放名额
+     */
+    private int cancelExpired(List<String> registrationIds) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = registrationRepository.lockExpiredUnpaid(registrationIds, now);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        List<String> ids = new ArrayList<>(rows.size());
+        // 按活动ID顺序更新人数，并发批次对活动行的加锁顺序一致
+        Map<String, Integer> released = new TreeMap<>();
+        for (Object[] row : rows) {
+            ids.add((String) row[0]);
+            released.merge((String) row[1], 1, Integer::sum);
+        }
+
+        registrationRepository.cancelByIds(ids, now, "支付超时，订单自动取消");
+        released.forEach((activityId, count) -> {
+            activityRepository.decrementParticipantsBy(activityId, count);
+            participantsChanged(activityId, -count);
+            seatAllocator.release(activityId, count);
+        });
+        ids.forEach(registrationExpiryQueue::remove);
+
+        log.info("取消支付超时报名: registrations={}, activities={}", ids.size(), released.size());
+        return ids.size();
+    }
+
+    /**
+     * 参与人数对账：按有效报名数（未取消）重算报名中/报名结束活动的当前参与人数
+     *
+     * 先无锁找出人数不一致的活动，再逐个在短事务中锁定活动行后重新统计：
+     * 报名/取消都在修改人数时持有活动行锁直到提交，锁定后统计到的报名数与人数处于同一时刻，修正不会覆盖进行中的变更
+     *
+     * @return 修正的活动数
+     */
+    public int reconcileParticipants() {
+        List<String> activityIds = activityRepository.findParticipantDriftIds(
+                List.of(ActivityStatus.REGISTERING.getCode(), ActivityStatus.REGISTRATION_CLOSED.getCode(),
+                        ActivityStatus.FULL.getCode()),
+                DeletedFlag.NOT_DELETED.getCode());
+
+        int fixed = 0;
+        for (String activityId : activityIds) {
+            try {
+                Boolean changed = transactionTemplate.execute(status -> reconcileActivity(activityId));
+                if (Boolean.TRUE.equals(changed)) {
+                    seatAllocator.invalidate(activityId);
+                    fixed++;
+                }
+            } catch (Exception e) {
+                log.error("活动参与人数对账失败: activityId={}, error={}", activityId, e.getMessage(), e);
+            }
+        }
+        return fixed;
+    }
+
+    private boolean reconcileActivity(String activityId) {
+        // 先加锁再统计（InnoDB 一致性读快照在首次普通查询时建立，统计能看到锁定前已提交的报名）
+        CommunityActivity activity = entityManager.find(CommunityActivity.class, activityId, LockModeType.PESSIMISTIC_WRITE);
+        if (activity == null) {
+            return false;
+        }
+
+        int occupied = (int) registrationRepository.countOccupiedByActivityId(activityId);
+        if (activity.getCurrentParticipants() != null && activity.getCurrentParticipants() == occupied) {
+            return false;
+        }
+
+        log.warn("修正活动参与人数: activityId={}, currentParticipants={}, registrations={}",
+                activityId, activity.getCurrentParticipants(), occupied);
+        activity.setCurrentParticipants(occupied);
+        return true;
+    }
+
 }
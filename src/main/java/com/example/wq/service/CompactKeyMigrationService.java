@@ -0,0 +1,340 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.CompactKeyType;
+import com.example.wq.util.SnowflakeIdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑主键迁移（订单、明细、预占、事件外发及其归档表）
+ *
+ * 这些表的实体标记了 @CompactKey，开启 wq.compact-key.enabled 后主键与订单外键以 BIGINT 映射（默认关闭，varchar）。
+ * 已有的 varchar 表结构由运维在停机窗口内（映射仍关闭时）手动触发一次性迁移（POST /admin/compact-key/migrate），
+ * 需先配置 wq.compact-key.migration.enabled=true，默认关闭，启动时不会自动执行：
+ * 1. 非数字格式的历史ID（如 1703123456789_1234）按创建时间顺序分配新的 Snowflake ID，
+ *    同一事务内同步更新引用订单ID的外键（明细、预占、评价、事件外发及归档表的 order_id）。
+ *    历史订单的ID会变化（订单号不变），外部系统按订单ID保存的引用需改用订单号
+ * 2. 临时移除涉及这些列的外键约束，将列改为 BIGINT，再恢复约束
+ * 迁移完成后配置 wq.compact-key.enabled=true 并重启；开启映射时启动会校验这些列，仍为字符串类型则启动失败，
+ * 避免以 BIGINT 读取 varchar 历史ID导致订单接口全部报错。
+ *
+ * 通过 MySQL 命名锁（GET_LOCK）保证同一时刻只有一个节点执行迁移。
+ * 每批独立提交，中断后再次触发会从剩余的历史ID继续；列已是 BIGINT 时直接跳过。
+ * 仅支持 MySQL，其他数据库（如测试用 H2）由 ddl 直接建出 BIGINT 列，无需迁移。
+ */
+@Service
+public class CompactKeyMigrationService implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(CompactKeyMigrationService.class);
+
+    // 每批重新分配ID的行数
+    private static final int REMAP_CHUNK_SIZE = 500;
+
+    // 纯数字ID（Snowflake 19位定长形式）无需重新分配
+    private static final String NUMERIC_ID_PATTERN = "^[0-9]{1,19}$";
+
+    // 跨节点互斥的 MySQL 命名锁
+    private static final String MIGRATION_LOCK_NAME = "wq_compact_key_migration";
+
+    // 订单表（在线/归档），重新分配主键时同步更新引用订单ID的列
+    private static final String[] ORDER_TABLES = {"wqorder", "wqorder_archive"};
+
+    // 其他主键需要重新分配的表（不被其他表引用）
+    private static final String[] KEY_TABLES = {
+            "order_item", "inventory_lock", "order_outbox", "order_item_archive", "inventory_lock_archive"
+    };
+
+    // 订单ID被这些列引用（订单可能已归档，在线/归档订单的重新分配都需同步更新）
+    private static final String[][] ORDER_REFERENCES = {
+            {"order_item", "order_id"},
+            {"inventory_lock", "order_id"},
+            {"review", "order_id"},
+            {"order_outbox", "order_id"},
+            {"order_item_archive", "order_id"},
+            {"inventory_lock_archive", "order_id"}
+    };
+
+    // 迁移为 BIGINT 的列
+    private static final String[][] COMPACT_COLUMNS = {
+            {"wqorder", "_id"},
+            {"order_item", "_id"},
+            {"order_item", "order_id"},
+            {"inventory_lock", "_id"},
+            {"inventory_lock", "order_id"},
+            {"review", "order_id"},
+            {"order_outbox", "_id"},
+            {"order_outbox", "order_id"},
+            {"wqorder_archive", "_id"},
+            {"order_item_archive", "_id"},
+            {"order_item_archive", "order_id"},
+            {"inventory_lock_archive", "_id"},
+            {"inventory_lock_archive", "order_id"}
+    };
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${wq.compact-key.migration.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * 开启 BIGINT 映射时校验列类型：仍有字符串类型的列说明尚未迁移，启动失败并提示先迁移
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!CompactKeyType.isEnabled()) {
+            return;
+        }
+        List<String> pendingColumns = jdbcTemplate.execute((ConnectionCallback<List<String>>) connection ->
+                isMySql(connection) ? new ArrayList<>(findStringColumns(connection).keySet()) : List.of());
+        if (pendingColumns != null && !pendingColumns.isEmpty()) {
+            throw new IllegalStateException("已开启 wq.compact-key.enabled，但以下列仍为字符串类型: " + pendingColumns +
+                    "。请先关闭 wq.compact-key.enabled，开启 wq.compact-key.migration.enabled 后调用 " +
+                    "POST /admin/compact-key/migrate 完成迁移，再开启 wq.compact-key.enabled 并重启");
+        }
+    }
+
+    /**
+     * 查询仍为字符串类型的待迁移列
+     *
+     * @return {pendingColumns: [表名.列名]}
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("mappingEnabled", CompactKeyType.isEnabled());
+        status.put("pendingColumns", jdbcTemplate.execute((ConnectionCallback<List<String>>) connection ->
+                isMySql(connection) ? new ArrayList<>(findStringColumns(connection).keySet()) : List.of()));
+        return status;
+    }
+
+    /**
+     * 执行一次迁移（运维手动触发）
+     *
+     * @return 迁移的列
+     */
+    public Map<String, Object> migrate() {
+        if (!enabled) {
+            throw new RuntimeException("紧凑主键迁移未开启，请配置 wq.compact-key.migration.enabled=true");
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("migratedColumns", jdbcTemplate.execute((ConnectionCallback<List<String>>) connection -> {
+            if (!isMySql(connection)) {
+                return List.of();
+            }
+            if (!acquireLock(connection)) {
+                throw new RuntimeException("其他节点正在执行紧凑主键迁移");
+            }
+            try {
+                return migrate(connection);
+            } finally {
+                releaseLock(connection);
+            }
+        }));
+        return result;
+    }
+
+    private boolean isMySql(Connection connection) throws SQLException {
+        return "MySQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName());
+    }
+
+    private boolean acquireLock(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            ps.setString(1, MIGRATION_LOCK_NAME);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void releaseLock(Connection connection) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, MIGRATION_LOCK_NAME);
+            ps.executeQuery().close();
+        }
+    }
+
+    private List<String> migrate(Connection connection) throws SQLException {
+        Map<String, String> pendingColumns = findStringColumns(connection);
+        if (pendingColumns.isEmpty()) {
+            return List.of();
+        }
+        log.info("开始紧凑主键迁移: columns={}", pendingColumns.keySet());
+
+        boolean autoCommit = connection.getAutoCommit();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET FOREIGN_KEY_CHECKS = 0");
+            connection.setAutoCommit(false);
+
+            List<String[]> references = new ArrayList<>();
+            for (String[] reference : ORDER_REFERENCES) {
+                if (pendingColumns.containsKey(reference[0] + "." + reference[1])) {
+                    references.add(reference);
+                }
+            }
+            for (String table : ORDER_TABLES) {
+                if (pendingColumns.containsKey(table + "._id")) {
+                    remapIds(connection, table, references);
+                }
+            }
+            for (String table : KEY_TABLES) {
+                if (pendingColumns.containsKey(table + "._id")) {
+                    remapIds(connection, table, List.of());
+                }
+            }
+
+            connection.setAutoCommit(true);
+            alterColumns(connection, statement, pendingColumns);
+        } finally {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET FOREIGN_KEY_CHECKS = 1");
+            }
+            connection.setAutoCommit(autoCommit);
+        }
+        log.info("紧凑主键迁移完成");
+        return new ArrayList<>(pendingColumns.keySet());
+    }
+
+    /**
+     * 查询仍为字符串类型的待迁移列，key 为 表名.列名，value 为 NULL/NOT NULL
+     */
+    private Map<String, String> findStringColumns(Connection connection) throws SQLException {
+        Map<String, String> columns = new LinkedHashMap<>();
+        String sql = "SELECT DATA_TYPE, IS_NULLABLE FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (String[] column : COMPACT_COLUMNS) {
+                ps.setString(1, column[0]);
+                ps.setString(2, column[1]);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next() && rs.getString(1).toLowerCase().contains("char")) {
+                        columns.put(column[0] + "." + column[1],
+                                "YES".equalsIgnoreCase(rs.getString(2)) ? "NULL" : "NOT NULL");
+                    }
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * 为非数字格式的历史ID分配新ID，每批一个事务
+     */
+    private void remapIds(Connection connection, String table, List<String[]> references) throws SQLException {
+        String selectSql = "SELECT _id FROM " + table + " WHERE _id NOT REGEXP '" + NUMERIC_ID_PATTERN + "' " +
+                "ORDER BY create_time, _id LIMIT " + REMAP_CHUNK_SIZE;
+
+        int total = 0;
+        while (true) {
+            List<String> oldIds = new ArrayList<>(REMAP_CHUNK_SIZE);
+            try (PreparedStatement ps = connection.prepareStatement(selectSql);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    oldIds.add(rs.getString(1));
+                }
+            }
+            if (oldIds.isEmpty()) {
+                break;
+            }
+
+            List<String> newIds = new ArrayList<>(oldIds.size());
+            for (int i = 0; i < oldIds.size(); i++) {
+                newIds.add(SnowflakeIdGenerator.nextIdString());
+            }
+
+            try {
+                batchReplace(connection, table, "_id", oldIds, newIds);
+                for (String[] reference : references) {
+                    batchReplace(connection, reference[0], reference[1], oldIds, newIds);
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+
+            total += oldIds.size();
+            log.info("紧凑主键迁移: table={}, remapped={}", table, total);
+        }
+    }
+
+    private void batchReplace(Connection connection, String table, String column,
+                              List<String> oldIds, List<String> newIds) throws SQLException {
+        String sql = "UPDATE " + table + " SET " + column + " = ? WHERE " + column + " = ?";
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (int i = 0; i < oldIds.size(); i++) {
+                ps.setString(1, newIds.get(i));
+                ps.setString(2, oldIds.get(i));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * 将列改为 BIGINT，期间移除涉及这些列的外键约束，完成后恢复
+     */
+    private void alterColumns(Connection connection, Statement statement,
+                              Map<String, String> pendingColumns) throws SQLException {
+        List<String[]> foreignKeys = findForeignKeys(connection);
+        for (String[] fk : foreignKeys) {
+            statement.execute("ALTER TABLE " + fk[0] + " DROP FOREIGN KEY " + fk[1]);
+        }
+
+        for (Map.Entry<String, String> column : pendingColumns.entrySet()) {
+            String[] parts = column.getKey().split("\\.");
+            statement.execute("ALTER TABLE " + parts[0] + " MODIFY " + parts[1] + " BIGINT " + column.getValue());
+            log.info("紧凑主键迁移: {} -> BIGINT", column.getKey());
+        }
+
+        for (String[] fk : foreignKeys) {
+            statement.execute("ALTER TABLE " + fk[0] + " ADD CONSTRAINT " + fk[1] +
+                    " FOREIGN KEY (" + fk[2] + ") REFERENCES " + fk[3] + " (" + fk[4] + ")");
+        }
+    }
+
+    /**
+     * 查询涉及待迁移列的外键：[表名, 约束名, 列名, 被引用表, 被引用列]
+     */
+    private List<String[]> findForeignKeys(Connection connection) throws SQLException {
+        List<String[]> foreignKeys = new ArrayList<>();
+        String sql = "SELECT TABLE_NAME, CONSTRAINT_NAME, COLUMN_NAME, REFERENCED_TABLE_NAME, REFERENCED_COLUMN_NAME " +
+                "FROM information_schema.KEY_COLUMN_USAGE " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND REFERENCED_TABLE_NAME IS NOT NULL";
+        try (PreparedStatement ps = connection.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String[] fk = {rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5)};
+                if (isCompactColumn(fk[0], fk[2]) || isCompactColumn(fk[3], fk[4])) {
+                    foreignKeys.add(fk);
+                }
+            }
+        }
+        return foreignKeys;
+    }
+
+    private boolean isCompactColumn(String table, String column) {
+        for (String[] compactColumn : COMPACT_COLUMNS) {
+            if (compactColumn[0].equalsIgnoreCase(table) && compactColumn[1].equalsIgnoreCase(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
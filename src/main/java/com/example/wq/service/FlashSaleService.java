@@ -0,0 +1,302 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.InventoryLock;
+import com.example.wq.entity.Order;
+import com.example.wq.entity.Product;
+import com.example.wq.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 秒杀服务
+ *
+ * 按商品开启秒杀模式后，可售库存预先装入内存令牌池：
+ * - 下单时只做令牌 CAS 扣减，抢到令牌的订单进入有界队列，由 FlashSaleOrderWriter 批量落库
+ * - 令牌耗尽直接返回售罄，不访问数据库
+ * - 秒杀订单取消/超时后令牌归还，可再次售出；只有经令牌池下单的订单才归还（按订单ID登记），
+ *   开启秒杀前下的普通订单取消不会让令牌数超过投放量；支付成功或关闭秒杀后登记移除
+ *
+ * 基于内存的实现（适用于单机），集群部署时令牌池可改用 Redis（DECRBY / Redisson RSemaphore），
+ * 需先在 pom.xml 中启用 Redisson 依赖
+ */
+@Service
+public class FlashSaleService {
+
+    private static final Logger log = LoggerFactory.getLogger(FlashSaleService.class);
+
+    // 待落库队列容量，队列满时拒绝下单并归还令牌
+    private static final int QUEUE_CAPACITY = 10_000;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private InventoryLedgerService inventoryLedgerService;
+
+    private final ConcurrentHashMap<String, FlashSaleItem> items = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<FlashOrder> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    // 已抢到令牌、尚未落库的数量（按商品），重新开启秒杀时从可售库存中扣除
+    private final ConcurrentHashMap<String, AtomicInteger> pendingQuantities = new ConcurrentHashMap<>();
+
+    // 经令牌池下单、尚未支付的订单（订单ID -> 令牌），取消/超时时据此归还
+    private final ConcurrentHashMap<String, Admission> admissions = new ConcurrentHashMap<>();
+
+    /**
+     * 开启商品秒杀模式
+     *
+     * @param productId     商品ID
+     * @param tokens        投放数量，为空时投放全部可用库存
+     * @param limitPerOrder 每单限购数量
+     */
+    public Map<String, Object> enable(String productId, Integer tokens, int limitPerOrder) {
+        if (limitPerOrder <= 0) {
+            throw new RuntimeException("每单限购数量必须大于0");
+        }
+        if (items.containsKey(productId)) {
+            throw new RuntimeException("商品已处于秒杀模式，请先关闭");
+        }
+
+        Product product = productRepository.findById(productId).orElse(null);
+        if (product == null) {
+            throw new RuntimeException("商品不存在: " + productId);
+        }
+
+        int available = inventoryLedgerService.getAvailable(productId) - pendingQuantity(productId).get();
+        int allocated = tokens != null ? Math.min(tokens, available) : available;
+        if (allocated <= 0) {
+            throw new RuntimeException("商品可用库存不足: " + product.getName());
+        }
+
+        FlashSaleItem item = new FlashSaleItem(productId, product.getName(), product.getPrice(),
+                limitPerOrder, allocated);
+        if (items.putIfAbsent(productId, item) != null) {
+            throw new RuntimeException("商品已处于秒杀模式，请先关闭");
+        }
+
+        log.info("开启秒杀: productId={}, tokens={}, limitPerOrder={}", productId, allocated, limitPerOrder);
+        return item.toStats();
+    }
+
+    /**
+     * 关闭商品秒杀模式，剩余令牌作废（库存仍在账本中，恢复普通下单）
+     * 已进入队列的订单照常落库
+     */
+    public Map<String, Object> disable(String productId) {
+        FlashSaleItem item = items.remove(productId);
+        if (item == null) {
+            throw new RuntimeException("商品未开启秒杀模式");
+        }
+        // 令牌池已作废，其订单取消后不再归还
+        admissions.values().removeIf(admission -> admission.item() == item);
+
+        log.info("关闭秒杀: productId={}, remainingTokens={}", productId, item.tokens.get());
+        return item.toStats();
+    }
+
+    /**
+     * 查找订单中的秒杀商品
+     */
+    public FlashSaleItem find(Collection<String> productIds) {
+        if (items.isEmpty()) {
+            return null;
+        }
+        for (String productId : productIds) {
+            FlashSaleItem item = items.get(productId);
+            if (item != null) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 尝试获取令牌，抢到后按订单ID登记
+     *
+     * @return true-抢到，false-已售罄
+     */
+    public boolean tryAcquire(FlashSaleItem item, String orderId, int quantity) {
+        while (true) {
+            int current = item.tokens.get();
+            if (current < quantity) {
+                item.rejected.incrementAndGet();
+                return false;
+            }
+            if (item.tokens.compareAndSet(current, current - quantity)) {
+                item.accepted.incrementAndGet();
+                admissions.put(orderId, new Admission(item, quantity));
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 订单进入待落库队列
+     *
+     * @return false-队列已满（调用方需归还令牌）
+     */
+    public boolean enqueue(FlashOrder flashOrder) {
+        AtomicInteger pending = pendingQuantity(flashOrder.productId());
+        pending.addAndGet(flashOrder.quantity());
+        if (!queue.offer(flashOrder)) {
+            pending.addAndGet(-flashOrder.quantity());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 取出待落库订单（最多 maxBatch 个）
+     */
+    public List<FlashOrder> drain(int maxBatch) {
+        List<FlashOrder> batch = new ArrayList<>();
+        queue.drainTo(batch, maxBatch);
+        return batch;
+    }
+
+    /**
+     * 订单已落库（或落库失败），不再计入待落库数量
+     */
+    public void completed(FlashOrder flashOrder) {
+        pendingQuantity(flashOrder.productId()).addAndGet(-flashOrder.quantity());
+    }
+
+    /**
+     * 归还令牌（秒杀订单落库失败/取消/超时）
+     * 在事务中调用时，事务提交后才归还；未经令牌池下单的订单直接忽略，同一订单只归还一次
+     */
+    public void returnTokens(String orderId) {
+        Admission admission = admissions.get(orderId);
+        if (admission == null) {
+            return;
+        }
+        afterCommit(() -> {
+            if (admissions.remove(orderId, admission)) {
+                admission.item().tokens.addAndGet(admission.quantity());
+            }
+        });
+    }
+
+    /**
+     * 秒杀订单已支付，移除登记（令牌不再归还），在事务中调用时提交后才生效
+     */
+    public void settle(String orderId) {
+        if (!admissions.containsKey(orderId)) {
+            return;
+        }
+        afterCommit(() -> admissions.remove(orderId));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * 秒杀统计
+     */
+    public Map<String, Object> getStats() {
+        List<Map<String, Object>> products = new ArrayList<>();
+        items.values().forEach(item -> products.add(item.toStats()));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("products", products);
+        stats.put("queueSize", queue.size());
+        stats.put("queueCapacity", QUEUE_CAPACITY);
+        stats.put("unpaidOrders", admissions.size());
+        return stats;
+    }
+
+    private AtomicInteger pendingQuantity(String productId) {
+        return pendingQuantities.computeIfAbsent(productId, k -> new AtomicInteger());
+    }
+
+    /**
+     * 秒杀商品（令牌池 + 商品快照，下单时无需查询商品表）
+     */
+    public static class FlashSaleItem {
+        private final String productId;
+        private final String productName;
+        private final BigDecimal price;
+        private final int limitPerOrder;
+        private final int totalTokens;
+        private final AtomicInteger tokens;
+        private final AtomicLong accepted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        FlashSaleItem(String productId, String productName, BigDecimal price, int limitPerOrder, int tokens) {
+            this.productId = productId;
+            this.productName = productName;
+            this.price = price;
+            this.limitPerOrder = limitPerOrder;
+            this.totalTokens = tokens;
+            this.tokens = new AtomicInteger(tokens);
+        }
+
+        public String getProductId() { return productId; }
+        public String getProductName() { return productName; }
+        public BigDecimal getPrice() { return price; }
+        public int getLimitPerOrder() { return limitPerOrder; }
+
+        Map<String, Object> toStats() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("productId", productId);
+            stats.put("productName", productName);
+            stats.put("price", price);
+            stats.put("limitPerOrder", limitPerOrder);
+            stats.put("totalTokens", totalTokens);
+            stats.put("remainingTokens", tokens.get());
+            stats.put("accepted", accepted.get());
+            stats.put("rejected", rejected.get());
+            return stats;
+        }
+    }
+
+    /**
+     * 经令牌池下单的订单所占令牌
+     */
+    private record Admission(FlashSaleItem item, int quantity) {
+    }
+
+    /**
+     * 待落库的秒杀订单（订单实体含明细，ID 已预先分配）
+     *
+     * @param order          订单
+     * @param lock           库存预占记录
+     * @param expireMillis   过期时间（毫秒时间戳）
+     */
+    public record FlashOrder(Order order, InventoryLock lock, long expireMillis) {
+        public String productId() {
+            return lock.getProductId();
+        }
+
+        public int quantity() {
+            return lock.getQuantity();
+        }
+    }
+}
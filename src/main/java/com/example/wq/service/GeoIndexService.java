@@ -0,0 +1,542 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.Community;
+import com.example.wq.entity.CommunityActivity;
+import com.example.wq.enums.ActivityStatus;
+import com.example.wq.enums.DeletedFlag;
+import com.example.wq.repository.CommunityActivityRepository;
+import com.example.wq.repository.CommunityRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * 附近活动/社区空间索引
+ *
+ * 按经纬度 0.01°（约 1.1 公里）划分网格，在内存中维护未删除、未结束且有坐标的活动，以及未删除且有坐标的社区：
+ * - 启动时从数据库重建，每天凌晨状态兜底任务之后整体重建一次；重建期间被增量更新的活动/社区记录ID，
+ *   新索引替换后按数据库最新状态重新刷新，不会被重建时读到的旧数据覆盖
+ * - 活动/社区新增、修改、删除后由实体监听器在事务提交后增量更新；状态流转引擎批量更新状态后按ID刷新；
+ *   报名/取消以批量 UPDATE 修改参与人数，提交后按变化量更新快照
+ * - 每个点保存活动/社区的只读快照（与持久化上下文分离），查询结果直接返回快照
+ * - 查询从所在网格逐圈向外扫描，按球面距离过滤半径并保留最近的 N 个，
+ *   下一圈的最近可能距离已超过半径（或已有 N 个更近的结果）时停止，只读内存，不访问数据库
+ *
+ * 基于内存的实现（适用于单机），多节点时各节点各自维护；集群部署时可改用 Redis GEO（GEOADD / GEOSEARCH）
+ */
+@Slf4j
+@Service
+public class GeoIndexService {
+
+    // 网格边长（度）
+    private static final double CELL_DEGREES = 0.01;
+    private static final int LAT_CELLS = (int) Math.round(180 / CELL_DEGREES);
+    private static final int LNG_CELLS = (int) Math.round(360 / CELL_DEGREES);
+
+    // 地球平均半径（米）
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+    private static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180;
+
+    // 默认/最大查询半径（米）
+    private static final int DEFAULT_RADIUS_METERS = 5_000;
+    private static final int MAX_RADIUS_METERS = 50_000;
+
+    // 逐点扫描一个点的开销约为查找一个网格的倍数（索引点数乘以该倍数仍少于要扫描的网格数时改为逐点扫描）
+    private static final int LINEAR_SCAN_COST = 8;
+
+    // 默认/最大返回条数
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+
+    private final CommunityActivityRepository activityRepository;
+    private final CommunityRepository communityRepository;
+
+    private volatile Grid activities = new Grid();
+    private volatile Grid communities = new Grid();
+
+    // 重建期间被增量更新的活动/社区ID（重建完成后重新刷新）
+    private volatile boolean rebuilding;
+    private final Set<String> touchedActivities = ConcurrentHashMap.newKeySet();
+    private final Set<String> touchedCommunities = ConcurrentHashMap.newKeySet();
+
+    public GeoIndexService(CommunityActivityRepository activityRepository,
+                           CommunityRepository communityRepository) {
+        this.activityRepository = activityRepository;
+        this.communityRepository = communityRepository;
+    }
+
+    /**
+     * 从数据库整体重建（启动时，以及每天凌晨2点5分吸收兜底任务批量更新的状态）
+     * 重建期间的增量更新在新索引替换后按ID重新刷新
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 5 2 * * ?")
+    public synchronized void rebuild() {
+        touchedActivities.clear();
+        touchedCommunities.clear();
+        rebuilding = true;
+        try {
+            Grid activityGrid = new Grid();
+            for (CommunityActivity activity : activityRepository.findGeoCandidates(
+                    ActivityStatus.ACTIVITY_ENDED.getCode(), DeletedFlag.NOT_DELETED.getCode())) {
+                if (isIndexable(activity)) {
+                    activityGrid.put(activityPoint(activity));
+                }
+            }
+            Grid communityGrid = new Grid();
+            for (Community community : communityRepository.findGeoCandidates(DeletedFlag.NOT_DELETED.getCode())) {
+                if (isIndexable(community)) {
+                    communityGrid.put(communityPoint(community));
+                }
+            }
+
+            activities = activityGrid;
+            communities = communityGrid;
+            log.info("附近索引重建完成: activities={}, communities={}",
+                    activityGrid.points.size(), communityGrid.points.size());
+        } catch (Exception e) {
+            log.error("附近索引重建失败: {}", e.getMessage(), e);
+        } finally {
+            rebuilding = false;
+        }
+        replayTouched();
+    }
+
+    /**
+     * 活动新增或修改后更新索引（已删除、已结束或无坐标的活动移出索引），在事务中调用时提交后才生效
+     */
+    public void indexActivity(CommunityActivity activity) {
+        String activityId = activity.get_id();
+        if (activityId == null) {
+            return;
+        }
+        Point point = isIndexable(activity) ? activityPoint(activity) : null;
+        afterCommit(() -> {
+            touchActivity(activityId);
+            if (point != null) {
+                activities.put(point);
+            } else {
+                activities.remove(activityId);
+            }
+        });
+    }
+
+    /**
+     * 活动删除后移出索引，在事务中调用时提交后才生效
+     */
+    public void removeActivity(String activityId) {
+        afterCommit(() -> {
+            touchActivity(activityId);
+            activities.remove(activityId);
+        });
+    }
+
+    /**
+     * 社区新增或修改后更新索引（已删除或无坐标的社区移出索引），在事务中调用时提交后才生效
+     */
+    public void indexCommunity(Community community) {
+        String communityId = community.get_id();
+        if (communityId == null) {
+            return;
+        }
+        Point point = isIndexable(community) ? communityPoint(community) : null;
+        afterCommit(() -> {
+            touchCommunity(communityId);
+            if (point != null) {
+                communities.put(point);
+            } else {
+                communities.remove(communityId);
+            }
+        });
+    }
+
+    /**
+     * 社区删除后移出索引，在事务中调用时提交后才生效
+     */
+    public void removeCommunity(String communityId) {
+        afterCommit(() -> {
+            touchCommunity(communityId);
+            communities.remove(communityId);
+        });
+    }
+
+    /**
+     * 按数据库最新状态刷新活动（批量 UPDATE 不经过实体监听器，更新状态后调用）
+     */
+    public void refreshActivities(Collection<String> activityIds) {
+        if (activityIds.isEmpty()) {
+            return;
+        }
+        activityIds.forEach(this::touchActivity);
+        try {
+            Set<String> missing = new HashSet<>(activityIds);
+            for (CommunityActivity activity : activityRepository.findAllById(activityIds)) {
+                missing.remove(activity.get_id());
+                if (isIndexable(activity)) {
+                    activities.put(activityPoint(activity));
+                } else {
+                    activities.remove(activity.get_id());
+                }
+            }
+            missing.forEach(activities::remove);
+        } catch (Exception e) {
+            log.error("刷新附近活动索引失败，等待下次重建修正: activities={}, error={}",
+                    activityIds.size(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 报名/取消后按变化量更新活动快照的参与人数（批量 UPDATE 不经过实体监听器），在事务中调用时提交后才生效
+     */
+    public void adjustParticipants(String activityId, int delta) {
+        afterCommit(() -> {
+            touchActivity(activityId);
+            activities.points.computeIfPresent(activityId, (id, point) -> point.withView(
+                    ActivitySnapshots.withParticipantsDelta((CommunityActivity) point.view, delta)));
+        });
+    }
+
+    /**
+     * 查询附近的活动（按距离由近到远）
+     *
+     * @param latitude  纬度
+     * @param longitude 经度
+     * @param radius    查询半径（米），不传默认5公里，最大50公里
+     * @param limit     返回条数，不传默认20，最大100
+     * @param statuses  活动状态（不传则返回全部未结束的活动）
+     * @param category  活动分类（不传则不限）
+     * @return [{activity, distance(米)}]
+     */
+    public List<Map<String, Object>> findNearbyActivities(Double latitude, Double longitude, Integer radius,
+                                                          Integer limit, Collection<Integer> statuses,
+                                                          Integer category) {
+        Predicate<Point> filter = point -> (statuses == null || statuses.isEmpty() || statuses.contains(point.status))
+                && (category == null || category.equals(point.category));
+        return toResult(search(activities, latitude, longitude, radius, limit, filter), "activity");
+    }
+
+    /**
+     * 查询附近的社区（按距离由近到远）
+     *
+     * @param latitude  纬度
+     * @param longitude 经度
+     * @param radius    查询半径（米），不传默认5公里，最大50公里
+     * @param limit     返回条数，不传默认20，最大100
+     * @return [{community, distance(米)}]
+     */
+    public List<Map<String, Object>> findNearbyCommunities(Double latitude, Double longitude,
+                                                           Integer radius, Integer limit) {
+        return toResult(search(communities, latitude, longitude, radius, limit, point -> true), "community");
+    }
+
+    /**
+     * 获取索引统计（监控用）
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activities", activities.points.size());
+        stats.put("activityCells", activities.cells.size());
+        stats.put("communities", communities.points.size());
+        stats.put("communityCells", communities.cells.size());
+        return stats;
+    }
+
+    private List<Hit> search(Grid grid, Double latitude, Double longitude, Integer radius, Integer limit,
+                             Predicate<Point> filter) {
+        if (!isValidCoordinate(latitude, longitude)) {
+            throw new RuntimeException("经纬度不合法");
+        }
+        double radiusMeters = radius == null || radius <= 0 ? DEFAULT_RADIUS_METERS : Math.min(radius, MAX_RADIUS_METERS);
+        int size = limit == null || limit <= 0 ? DEFAULT_LIMIT : Math.min(limit, MAX_LIMIT);
+
+        // 大顶堆，堆顶为当前第 N 近的结果
+        PriorityQueue<Hit> nearest = new PriorityQueue<>(Comparator.comparingDouble(Hit::distance).reversed());
+        // 半径内需要扫描的圈数（下一圈的最近可能距离已超过半径）
+        int maxRing = 0;
+        while (maxRing < LAT_CELLS / 2 && 2 * maxRing + 3 <= LNG_CELLS
+                && ringLowerBound(latitude, maxRing + 1) <= radiusMeters) {
+            maxRing++;
+        }
+
+        long cellsToScan = (2L * maxRing + 1) * (2L * maxRing + 1);
+        if ((long) grid.points.size() * LINEAR_SCAN_COST < cellsToScan) {
+            // 索引稀疏时直接逐点计算距离，避免大半径查询扫描大量空网格
+            for (Point point : grid.points.values()) {
+                offer(point, latitude, longitude, radiusMeters, size, filter, nearest);
+            }
+        } else {
+            int centerLat = latIndex(latitude);
+            int centerLng = lngIndex(longitude);
+            for (int ring = 0; ring <= maxRing; ring++) {
+                if (nearest.size() >= size && ringLowerBound(latitude, ring) > nearest.peek().distance()) {
+                    break;
+                }
+                for (int dLat = -ring; dLat <= ring; dLat++) {
+                    // 上下两行整行扫描，中间各行只扫描左右两端
+                    int step = dLat == -ring || dLat == ring ? 1 : Math.max(2 * ring, 1);
+                    for (int dLng = -ring; dLng <= ring; dLng += step) {
+                        scanCell(grid, centerLat + dLat, centerLng + dLng, latitude, longitude,
+                                radiusMeters, size, filter, nearest);
+                    }
+                }
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(nearest);
+        hits.sort(Comparator.comparingDouble(Hit::distance));
+        return hits;
+    }
+
+    private static void scanCell(Grid grid, int latIndex, int lngIndex, double latitude, double longitude,
+                          double radiusMeters, int size, Predicate<Point> filter, PriorityQueue<Hit> nearest) {
+        if (latIndex < 0 || latIndex >= LAT_CELLS) {
+            return;
+        }
+        long cell = cellKey(latIndex, Math.floorMod(lngIndex, LNG_CELLS));
+        Set<String> ids = grid.cells.get(cell);
+        if (ids == null) {
+            return;
+        }
+        for (String id : ids) {
+            Point point = grid.points.get(id);
+            // 坐标修改过程中旧网格可能仍有残留，以当前所在网格为准
+            if (point != null && point.cell == cell) {
+                offer(point, latitude, longitude, radiusMeters, size, filter, nearest);
+            }
+        }
+    }
+
+    private static void offer(Point point, double latitude, double longitude, double radiusMeters, int size,
+                              Predicate<Point> filter, PriorityQueue<Hit> nearest) {
+        // 纬度差对应的距离是球面距离的下界，先用它排除超出半径或不比第 N 近更近的点，省去三角函数计算
+        double bound = nearest.size() >= size ? nearest.peek().distance() : radiusMeters;
+        if (Math.abs(point.latitude - latitude) * METERS_PER_DEGREE > bound || !filter.test(point)) {
+            return;
+        }
+        double distance = distance(latitude, longitude, point.latitude, point.longitude);
+        if (distance > bound) {
+            return;
+        }
+        if (nearest.size() < size) {
+            nearest.offer(new Hit(point.view, distance));
+        } else if (distance < nearest.peek().distance()) {
+            nearest.poll();
+            nearest.offer(new Hit(point.view, distance));
+        }
+    }
+
+    private void touchActivity(String activityId) {
+        if (rebuilding) {
+            touchedActivities.add(activityId);
+        }
+    }
+
+    private void touchCommunity(String communityId) {
+        if (rebuilding) {
+            touchedCommunities.add(communityId);
+        }
+    }
+
+    /**
+     * 按数据库最新状态刷新重建期间被增量更新的活动/社区
+     */
+    private void replayTouched() {
+        Set<String> activityIds = new HashSet<>(touchedActivities);
+        Set<String> communityIds = new HashSet<>(touchedCommunities);
+        touchedActivities.clear();
+        touchedCommunities.clear();
+        refreshActivities(activityIds);
+        if (communityIds.isEmpty()) {
+            return;
+        }
+        try {
+            Set<String> missing = new HashSet<>(communityIds);
+            for (Community community : communityRepository.findAllById(communityIds)) {
+                missing.remove(community.get_id());
+                if (isIndexable(community)) {
+                    communities.put(communityPoint(community));
+                } else {
+                    communities.remove(community.get_id());
+                }
+            }
+            missing.forEach(communities::remove);
+        } catch (Exception e) {
+            log.error("刷新附近社区索引失败，等待下次重建修正: communities={}, error={}",
+                    communityIds.size(), e.getMessage(), e);
+        }
+    }
+
+    private static List<Map<String, Object>> toResult(List<Hit> hits, String key) {
+        List<Map<String, Object>> result = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            Map<String, Object> item = new HashMap<>();
+            item.put(key, hit.view());
+            item.put("distance", Math.round(hit.distance()));
+            result.add(item);
+        }
+        return result;
+    }
+
+    private static Point activityPoint(CommunityActivity activity) {
+        return new Point(activity.get_id(), activity.getLatitude(), activity.getLongitude(),
+                activity.getStatus(), activity.getCategory(), ActivitySnapshots.copyOf(activity));
+    }
+
+    private static Point communityPoint(Community community) {
+        Community copy = new Community();
+        BeanUtils.copyProperties(community, copy);
+        return new Point(community.get_id(), community.getLatitude(), community.getLongitude(), null, null, copy);
+    }
+
+    private static boolean isIndexable(Community community) {
+        return DeletedFlag.NOT_DELETED.getCode().equals(community.getDeleted())
+                && isValidCoordinate(community.getLatitude(), community.getLongitude());
+    }
+
+    private static boolean isIndexable(CommunityActivity activity) {
+        return DeletedFlag.NOT_DELETED.getCode().equals(activity.getDeleted())
+                && !ActivityStatus.ACTIVITY_ENDED.getCode().equals(activity.getStatus())
+                && isValidCoordinate(activity.getLatitude(), activity.getLongitude());
+    }
+
+    private static boolean isValidCoordinate(Double latitude, Double longitude) {
+        return latitude != null && longitude != null
+                && latitude >= -90 && latitude <= 90 && longitude >= -180 && longitude <= 180;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static int latIndex(double latitude) {
+        return Math.min((int) Math.floor((latitude + 90) / CELL_DEGREES), LAT_CELLS - 1);
+    }
+
+    private static int lngIndex(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180) / CELL_DEGREES), LNG_CELLS);
+    }
+
+    private static long cellKey(int latIndex, int lngIndex) {
+        return ((long) latIndex << 32) | lngIndex;
+    }
+
+    /**
+     * 第 ring 圈网格中的点与查询点的最近可能距离（米）
+     * 查询点可位于中心网格任意位置，按经线方向（较短）的网格宽度估算
+     */
+    private static double ringLowerBound(double latitude, int ring) {
+        if (ring <= 1) {
+            return 0;
+        }
+        double farthestLat = Math.min(Math.abs(latitude) + ring * CELL_DEGREES, 89.9);
+        return (ring - 1) * CELL_DEGREES * METERS_PER_DEGREE * Math.cos(Math.toRadians(farthestLat));
+    }
+
+    /**
+     * 球面距离（米，haversine）
+     */
+    private static double distance(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * 查询命中
+     */
+    private record Hit(Object view, double distance) {
+    }
+
+    /**
+     * 索引中的点
+     */
+    private static final class Point {
+        private final String id;
+        private final double latitude;
+        private final double longitude;
+        private final Integer status;
+        private final Integer category;
+        private final long cell;
+        // 活动/社区只读快照（查询结果直接返回）
+        private final Object view;
+
+        Point(String id, double latitude, double longitude, Integer status, Integer category, Object view) {
+            this.id = id;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.status = status;
+            this.category = category;
+            this.cell = cellKey(latIndex(latitude), lngIndex(longitude));
+            this.view = view;
+        }
+
+        Point withView(Object view) {
+            return new Point(id, latitude, longitude, status, category, view);
+        }
+    }
+
+    /**
+     * 网格索引（网格 -> 点ID）
+     */
+    private static final class Grid {
+        private final ConcurrentHashMap<String, Point> points = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Long, Set<String>> cells = new ConcurrentHashMap<>();
+
+        void put(Point point) {
+            points.compute(point.id, (id, previous) -> {
+                if (previous != null && previous.cell != point.cell) {
+                    unlink(previous);
+                }
+                cells.compute(point.cell, (cell, ids) -> {
+                    Set<String> current = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                    current.add(id);
+                    return current;
+                });
+                return point;
+            });
+        }
+
+        void remove(String id) {
+            points.computeIfPresent(id, (key, previous) -> {
+                unlink(previous);
+                return null;
+            });
+        }
+
+        private void unlink(Point point) {
+            cells.computeIfPresent(point.cell, (cell, ids) -> {
+                ids.remove(point.id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.wq.service;
+
+import com.example.wq.repository.InventoryLockRepository;
+import com.example.wq.repository.ProductRepository;
+import com.example.wq.repository.ProductStockBucketRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 可用库存账本（进程内）
+ *
+ * 为每个商品维护「总库存 / 已预占数量」，在预占、支付、取消、超时时增量更新，
+ * 下单时的可用库存检查为 O(1)，不再对 inventory_lock 做 SUM 聚合。
+ *
+ * - 启动时由 product.stock + inventory_lock（status=1）重建，已分桶商品的总库存取分桶合计
+ * - 定时与数据库对账，修正后台改库存等账本之外的变更
+ * - 预占在事务回滚时自动撤销，支付/释放在事务提交后才生效
+ */
+@Service
+public class InventoryLedgerService {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryLedgerService.class);
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private InventoryLockRepository inventoryLockRepository;
+
+    @Autowired
+    private ProductStockBucketRepository productStockBucketRepository;
+
+    private final ConcurrentHashMap<String, StockEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 启动时重建账本
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            Map<String, Integer> stocks = loadStocks();
+            Map<String, Integer> locked = loadLockedQuantities();
+
+            entries.clear();
+            stocks.forEach((productId, stock) ->
+                    entries.put(productId, new StockEntry(stock, locked.getOrDefault(productId, 0))));
+
+            log.info("库存账本重建完成: products={}", entries.size());
+        } catch (Exception e) {
+            log.error("库存账本重建失败，将按需从数据库加载: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 定时与数据库对账
+     * 每5分钟执行一次，跳过对账期间有变动或有未完成事务的商品
+     */
+    @Scheduled(fixedDelay = 300000, initialDelay = 300000)
+    public void reconcile() {
+        try {
+            Map<String, Long> versions = new HashMap<>();
+            entries.forEach((productId, entry) -> versions.put(productId, entry.version.get()));
+
+            Map<String, Integer> stocks = loadStocks();
+            Map<String, Integer> locked = loadLockedQuantities();
+
+            int corrected = 0;
+            for (Map.Entry<String, Integer> stock : stocks.entrySet()) {
+                String productId = stock.getKey();
+                Snapshot expected = new Snapshot(stock.getValue(), locked.getOrDefault(productId, 0));
+
+                StockEntry entry = entries.get(productId);
+                if (entry == null) {
+                    entries.putIfAbsent(productId, new StockEntry(expected.stock, expected.locked));
+                    continue;
+                }
+                Long version = versions.get(productId);
+                if (version == null || entry.inFlight.get() > 0 || entry.version.get() != version) {
+                    continue;
+                }
+                Snapshot current = entry.state.get();
+                if (!current.equals(expected) && entry.state.compareAndSet(current, expected)) {
+                    corrected++;
+                    log.warn("库存账本对账修正: productId={}, ledger={}, db={}", productId, current, expected);
+                }
+            }
+            entries.keySet().retainAll(stocks.keySet());
+
+            if (corrected > 0) {
+                log.info("库存账本对账完成: corrected={}", corrected);
+            }
+        } catch (Exception e) {
+            log.error("库存账本对账失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 获取可用库存（总库存 - 已预占库存）
+     */
+    public int getAvailable(String productId) {
+        StockEntry entry = getEntry(productId);
+        return entry != null ? entry.state.get().available() : 0;
+    }
+
+    /**
+     * 尝试预占库存
+     * 在事务中调用时，事务回滚会自动撤销本次预占
+     *
+     * @return true-预占成功，false-可用库存不足
+     */
+    public boolean tryReserve(String productId, int quantity) {
+        StockEntry entry = getEntry(productId);
+        if (entry == null || !entry.reserve(quantity)) {
+            return false;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            entry.inFlight.incrementAndGet();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    entry.complete(quantity, status == STATUS_COMMITTED);
+                }
+            });
+        }
+        return true;
+    }
+
+    /**
+     * 在事务外预占库存（下单准入阶段，不持有数据库连接）
+     * 预占成功后调用方必须调用 {@link #completeDetachedReservation}，期间对账会跳过该商品
+     *
+     * @return true-预占成功，false-可用库存不足
+     */
+    public boolean tryReserveDetached(String productId, int quantity) {
+        StockEntry entry = getEntry(productId);
+        if (entry == null || !entry.reserve(quantity)) {
+            return false;
+        }
+        entry.inFlight.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 结束事务外预占
+     *
+     * @param persisted true-预占记录已落库（保留预占），false-撤销预占
+     */
+    public void completeDetachedReservation(String productId, int quantity, boolean persisted) {
+        StockEntry entry = entries.get(productId);
+        if (entry != null) {
+            entry.complete(quantity, persisted);
+        }
+    }
+
+    /**
+     * 释放预占（取消/超时），事务提交后生效
+     */
+    public void release(String productId, int quantity) {
+        afterCommit(productId, 0, -quantity);
+    }
+
+    /**
+     * 支付确认：扣减总库存并释放预占，事务提交后生效
+     */
+    public void confirmPaid(String productId, int quantity) {
+        afterCommit(productId, -quantity, -quantity);
+    }
+
+    /**
+     * 移除商品账本，下次访问时重新从数据库加载
+     */
+    public void evict(String productId) {
+        entries.remove(productId);
+    }
+
+    private void afterCommit(String productId, int stockDelta, int lockedDelta) {
+        StockEntry entry = entries.get(productId);
+        if (entry == null) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            entry.inFlight.incrementAndGet();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        entry.update(stockDelta, lockedDelta);
+                    }
+                    entry.version.incrementAndGet();
+                    entry.inFlight.decrementAndGet();
+                }
+            });
+        } else {
+            entry.update(stockDelta, lockedDelta);
+            entry.version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 获取商品账本，不存在时从数据库加载（如启动后新增的商品）
+     */
+    private StockEntry getEntry(String productId) {
+        StockEntry entry = entries.get(productId);
+        if (entry != null) {
+            return entry;
+        }
+
+        Integer stock = productRepository.findStockById(productId);
+        if (stock == null) {
+            return null;
+        }
+        Integer bucketStock = productStockBucketRepository.sumStockByProductId(productId);
+        if (bucketStock != null) {
+            stock = bucketStock;
+        }
+        Integer locked = inventoryLockRepository.sumActiveLockedQuantity(productId);
+
+        StockEntry loaded = new StockEntry(stock, locked != null ? locked : 0);
+        StockEntry existing = entries.putIfAbsent(productId, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    private Map<String, Integer> loadStocks() {
+        Map<String, Integer> stocks = new HashMap<>();
+        List<Object[]> rows = productRepository.findAllStocks();
+        for (Object[] row : rows) {
+            stocks.put((String) row[0], row[1] != null ? ((Number) row[1]).intValue() : 0);
+        }
+        // 已分桶商品：商品表 stock 为定时汇总值，以分桶合计为准
+        for (Object[] row : productStockBucketRepository.sumStockGroupByProduct()) {
+            stocks.computeIfPresent((String) row[0], (productId, stock) -> ((Number) row[1]).intValue());
+        }
+        return stocks;
+    }
+
+    private Map<String, Integer> loadLockedQuantities() {
+        Map<String, Integer> locked = new HashMap<>();
+        List<Object[]> rows = inventoryLockRepository.sumActiveLockedQuantityGroupByProduct();
+        for (Object[] row : rows) {
+            locked.put((String) row[0], row[1] != null ? ((Number) row[1]).intValue() : 0);
+        }
+        return locked;
+    }
+
+    /**
+     * 库存快照（不可变，整体 CAS 替换）
+     */
+    private record Snapshot(int stock, int locked) {
+        int available() {
+            return stock - locked;
+        }
+    }
+
+    /**
+     * 单个商品的账本条目
+     */
+    private static class StockEntry {
+        private final AtomicReference<Snapshot> state;
+        private final AtomicLong version = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        StockEntry(int stock, int locked) {
+            this.state = new AtomicReference<>(new Snapshot(stock, locked));
+        }
+
+        void update(int stockDelta, int lockedDelta) {
+            state.updateAndGet(s -> new Snapshot(s.stock + stockDelta, Math.max(0, s.locked + lockedDelta)));
+        }
+
+        /**
+         * CAS 预占，可用库存不足时返回 false
+         */
+        boolean reserve(int quantity) {
+            while (true) {
+                Snapshot current = state.get();
+                if (current.available() < quantity) {
+                    return false;
+                }
+                if (state.compareAndSet(current, new Snapshot(current.stock, current.locked + quantity))) {
+                    version.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * 结束进行中的预占：未落库则撤销
+         */
+        void complete(int quantity, boolean kept) {
+            if (!kept) {
+                update(0, -quantity);
+            }
+            version.incrementAndGet();
+            inFlight.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.InventoryLock;
+import com.example.wq.repository.InventoryLockArchiveRepository;
+import com.example.wq.repository.InventoryLockRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 库存预占表清理服务
+ *
+ * inventory_lock 只增不减会拖慢按商品汇总预占数量的查询，定时任务每轮依次：
+ * 1. 过期仍锁定的预占：取消其待支付订单；订单已支付/已取消/不存在的（遗留预占）直接释放
+ * 2. 已释放超过 archive-after-hours 的预占（按释放语句写入的 update_time 计算）：移入 inventory_lock_archive 后从原表删除
+ * 3. 归档超过 archive-retention-days 的记录：从归档表删除
+ *
+ * 每批一个短事务（INSERT ... SELECT / 按ID删除，不载入实体），批次之间暂停，
+ * 每轮批次数有上限，积压时分多轮消化，不会长时间占用连接和行锁
+ */
+@Service
+public class InventoryLockHousekeepingService {
+
+    private static final Logger log = LoggerFactory.getLogger(InventoryLockHousekeepingService.class);
+
+    // 每批处理的记录数
+    private static final int CHUNK_SIZE = 500;
+
+    // 每个步骤每轮最多处理的批次数
+    private static final int MAX_CHUNKS_PER_STEP = 20;
+
+    // 批次之间的暂停时间（毫秒），限制清理对线上写入的影响
+    private static final long PAUSE_MILLIS = 200;
+
+    // 过期超过该秒数仍未释放才处理（到期取消由超时队列负责，这里只做兜底）
+    private static final long EXPIRED_GRACE_SECONDS = 60;
+
+    @Autowired
+    private InventoryLockRepository inventoryLockRepository;
+
+    @Autowired
+    private InventoryLockArchiveRepository inventoryLockArchiveRepository;
+
+    @Autowired
+    private MallOrderService mallOrderService;
+
+    @Autowired
+    private InventoryLedgerService inventoryLedgerService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${wq.inventory-lock.archive-after-hours:24}")
+    private long archiveAfterHours;
+
+    @Value("${wq.inventory-lock.archive-retention-days:90}")
+    private long archiveRetentionDays;
+
+    // 最近一次执行的统计
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    /**
+     * 执行一轮清理
+     *
+     * @return 本轮统计：过期订单取消数、遗留预占释放数、归档数、删除的归档数
+     */
+    public Map<String, Object> run() {
+        long start = System.currentTimeMillis();
+
+        int[] expired = releaseExpired();
+        int archived = archiveReleased();
+        int purged = purgeArchive();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("cancelledOrders", expired[0]);
+        stats.put("releasedOrphanLocks", expired[1]);
+        stats.put("archivedLocks", archived);
+        stats.put("purgedArchives", purged);
+        stats.put("finishedAt", LocalDateTime.now());
+        stats.put("durationMs", System.currentTimeMillis() - start);
+        lastRun = stats;
+
+        if (expired[0] + expired[1] + archived + purged > 0) {
+            log.info("库存预占清理完成: {}", stats);
+        }
+        return stats;
+    }
+
+    /**
+     * 最近一次清理的统计
+     */
+    public Map<String, Object> getLastRun() {
+        return lastRun;
+    }
+
+    /**
+     * 处理过期仍锁定的预占
+     *
+     * @return [取消的订单数, 释放的遗留预占数]
+     */
+    private int[] releaseExpired() {
+        long expireBefore = System.currentTimeMillis() / 1000 - EXPIRED_GRACE_SECONDS;
+        int cancelled = 0;
+        int orphans = 0;
+
+        for (int chunk = 0; chunk < MAX_CHUNKS_PER_STEP; chunk++) {
+            List<InventoryLock> locks = inventoryLockRepository.findExpiredLocks(expireBefore,
+                    PageRequest.of(0, CHUNK_SIZE));
+            if (locks.isEmpty()) {
+                break;
+            }
+
+            Set<String> orderIds = new LinkedHashSet<>();
+            locks.forEach(lock -> orderIds.add(lock.getOrderId()));
+            List<String> orderIdList = new ArrayList<>(orderIds);
+
+            Map<String, Object> result = mallOrderService.cancelExpiredOrders(orderIdList);
+            cancelled += (Integer) result.get("cancelledCount");
+
+            Integer released = transactionTemplate.execute(status -> {
+                List<Object[]> lockedRows = inventoryLockRepository.sumOrphanLockedQuantity(orderIdList);
+                int count = inventoryLockRepository.releaseOrphanLocks(orderIdList);
+                for (Object[] row : lockedRows) {
+                    inventoryLedgerService.release((String) row[0], ((Number) row[1]).intValue());
+                }
+                return count;
+            });
+            orphans += released != null ? released : 0;
+
+            if (locks.size() < CHUNK_SIZE || !pause()) {
+                break;
+            }
+        }
+        return new int[]{cancelled, orphans};
+    }
+
+    /**
+     * 已释放的预占移入归档表
+     */
+    private int archiveReleased() {
+        LocalDateTime before = LocalDateTime.now().minusHours(archiveAfterHours);
+        int total = 0;
+
+        for (int chunk = 0; chunk < MAX_CHUNKS_PER_STEP; chunk++) {
+            Integer archived = transactionTemplate.execute(status -> {
+                List<String> ids = inventoryLockRepository.findReleasedIdsBefore(before,
+                        PageRequest.of(0, CHUNK_SIZE));
+                if (ids.isEmpty()) {
+                    return 0;
+                }
+                inventoryLockArchiveRepository.archiveByIds(ids, LocalDateTime.now());
+                return inventoryLockRepository.deleteReleasedByIds(ids);
+            });
+            if (archived == null || archived == 0) {
+                break;
+            }
+            total += archived;
+
+            if (archived < CHUNK_SIZE || !pause()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 删除超过保留期的归档记录
+     */
+    private int purgeArchive() {
+        LocalDateTime before = LocalDateTime.now().minusDays(archiveRetentionDays);
+        int total = 0;
+
+        for (int chunk = 0; chunk < MAX_CHUNKS_PER_STEP; chunk++) {
+            Integer purged = transactionTemplate.execute(status -> {
+                List<String> ids = inventoryLockArchiveRepository.findIdsArchivedBefore(before,
+                        PageRequest.of(0, CHUNK_SIZE));
+                return ids.isEmpty() ? 0 : inventoryLockArchiveRepository.deleteByIds(ids);
+            });
+            if (purged == null || purged == 0) {
+                break;
+            }
+            total += purged;
+
+            if (purged < CHUNK_SIZE || !pause()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 批次间暂停
+     *
+     * @return false-线程被中断（应用关闭），停止本轮清理
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(PAUSE_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
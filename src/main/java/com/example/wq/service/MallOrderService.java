@@ -2,20 +2,26 @@ package com.example.wq.service;
 
 import com.example.wq.config.WeChatPayConfig;
 import com.example.wq.entity.*;
+import com.example.wq.enums.OrderEventType;
 import com.example.wq.enums.OrderStatus;
 import com.example.wq.repository.InventoryLockRepository;
 import com.example.wq.repository.OrderRepository;
 import com.example.wq.repository.ProductRepository;
 import com.example.wq.util.OrderSignatureUtil;
+import com.example.wq.util.SnowflakeIdGenerator;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
@@ -30,7 +36,14 @@ public class MallOrderService {
     private static final Logger log = LoggerFactory.getLogger(MallOrderService.class);
 
     // 订单超时时间（分钟）
-    private static final int ORDER_TIMEOUT_MINUTES = 15;
+    public static final int ORDER_TIMEOUT_MINUTES = 15;
+
+    // 用户订单列表每页最大条数
+    private static final int MAX_ORDER_PAGE_SIZE = 100;
+
+    // 超时订单批量取消：每批订单数 / 单次最多批次数
+    private static final int EXPIRE_CHUNK_SIZE = 500;
+    private static final int EXPIRE_MAX_CHUNKS = 1000;
 
     @Autowired
     private OrderRepository orderRepository;
@@ -50,19 +63,52 @@ public class MallOrderService {
     @Autowired
     private RateLimiterService rateLimiterService;
 
+    @Autowired
+    private InventoryLedgerService inventoryLedgerService;
+
+    @Autowired
+    private OrderExpiryQueue orderExpiryQueue;
+
+    @Autowired
+    private FlashSaleService flashSaleService;
+
+    @Autowired
+    private OrderDetailCache orderDetailCache;
+
+    @Autowired
+    private StockBucketService stockBucketService;
+
+    @Autowired
+    private OrderOutboxService orderOutboxService;
+
+    @Autowired
+    private OrderArchiveService orderArchiveService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @PersistenceContext
     private EntityManager entityManager;
 
     /**
      * 提交订单（核心接口）
      * 包含：库存预占 + 订单创建 + 微信支付参数生成
+     *
+     * 分阶段执行，数据库连接只在落库的短事务内占用：
+     * 1. 校验、限流、账本预占（内存 CAS），不持有连接
+     * 2. 订单/明细/预占记录在短事务中批量写入
+     * 3. 签名与支付参数（后续为微信预支付远程调用）在事务提交后生成
+     * 秒杀商品走令牌池 + 异步落库，不开启数据库事务
      */
-    @Transactional(rollbackFor = Exception.class)
     public SubmitOrderResult submitOrder(SubmitOrderRequest request) {
         log.info("开始提交订单: userId={}, items={}", request.getUserId(), request.getItems().size());
 
         SubmitOrderResult result = new SubmitOrderResult();
 
+        // 已在账本中预占的数量，订单未落库成功时撤销
+        Map<String, Integer> reserved = new LinkedHashMap<>();
+        boolean persisted = false;
+
         try {
             // ========== 第一步：参数校验 ==========
             validateRequest(request);
@@ -75,61 +121,95 @@ public class MallOrderService {
                 throw new RuntimeException("操作过于频繁，请稍后再试");
             }
 
-            // ========== 第三步：生成订单编号 ==========
+            // ========== 第三步：合并明细 ==========
+            Map<String, Integer> quantities = new LinkedHashMap<>();
+            for (SubmitOrderRequest.OrderItemRequest itemRequest : request.getItems()) {
+                Integer quantity = itemRequest.getQuantity();
+                if (quantity == null || quantity <= 0 || quantity > 999) {
+                    throw new RuntimeException("购买数量不合法: " + quantity);
+                }
+                quantities.merge(itemRequest.getProductId(), quantity, Integer::sum);
+            }
+
+            // ========== 秒杀商品：令牌池准入 ==========
+            FlashSaleService.FlashSaleItem flashItem = flashSaleService.find(quantities.keySet());
+            if (flashItem != null) {
+                if (quantities.size() > 1) {
+                    throw new RuntimeException("秒杀商品需单独下单: " + flashItem.getProductName());
+                }
+                return submitFlashOrder(request, flashItem, quantities.get(flashItem.getProductId()));
+            }
+
+            // ========== 第四步：生成订单编号和订单ID + 一次性加载商品 ==========
             String orderNo = generateOrderNo();
-            String orderId = null; // 稍后生成
+            // 提前生成订单ID，预占记录插入时即可关联订单，无需事后回填
+            String orderId = AbstractHibernateBean.generateId();
+
+            Map<String, Product> products = new HashMap<>();
+            for (Product product : productRepository.findAllById(quantities.keySet())) {
+                products.put(product.get_id(), product);
+            }
 
-            // ========== 第四步：处理订单明细 + 库存预占 + 金额计算 ==========
+            // ========== 第五步：库存预占 + 金额计算（账本内存操作，不持有连接）==========
             List<OrderItem> items = new ArrayList<>();
+            List<InventoryLock> locks = new ArrayList<>();
             BigDecimal totalAmount = BigDecimal.ZERO;
             long expireTime = System.currentTimeMillis() / 1000 + TimeUnit.MINUTES.toSeconds(ORDER_TIMEOUT_MINUTES);
 
-            for (SubmitOrderRequest.OrderItemRequest itemRequest : request.getItems()) {
+            for (Map.Entry<String, Integer> entry : quantities.entrySet()) {
+                String productId = entry.getKey();
+                int quantity = entry.getValue();
+
                 // 1. 获取商品信息
-                Product product = productRepository.findById(itemRequest.getProductId())
-                        .orElseThrow(() -> new RuntimeException("商品不存在: " + itemRequest.getProductId()));
+                Product product = products.get(productId);
+                if (product == null) {
+                    throw new RuntimeException("商品不存在: " + productId);
+                }
 
                 // 2. 检查商品状态
                 if (product.getStock() == null || product.getStock() <= 0) {
                     throw new RuntimeException("商品已下架或库存不足: " + product.getName());
                 }
 
-                // 3. 检查库存（包含预占的库存）
-                int availableStock = getAvailableStock(product.get_id());
-                if (availableStock < itemRequest.getQuantity()) {
-                    throw new RuntimeException("商品库存不足: " + product.getName() + "（可用: " + availableStock + "）");
+                // 3. 验证合并后的数量
+                if (quantity > 999) {
+                    throw new RuntimeException("购买数量不合法: " + quantity);
                 }
 
-                // 4. 验证数量
-                if (itemRequest.getQuantity() <= 0 || itemRequest.getQuantity() > 999) {
-                    throw new RuntimeException("购买数量不合法: " + itemRequest.getQuantity());
+                // 4. 检查并预占账本库存（落库失败时在 finally 中撤销）
+                if (!inventoryLedgerService.tryReserveDetached(productId, quantity)) {
+                    throw new RuntimeException("商品库存不足: " + product.getName() + "（可用: " + getAvailableStock(productId) + "）");
                 }
+                reserved.put(productId, quantity);
 
                 // 5. 后端计算金额（防止前端篡改价格）
-                BigDecimal itemSubtotal = product.getPrice().multiply(new BigDecimal(itemRequest.getQuantity()));
+                BigDecimal itemSubtotal = product.getPrice().multiply(new BigDecimal(quantity));
 
                 // 6. 创建订单明细
                 OrderItem item = new OrderItem();
-                item.setProductId(product.get_id());
+                item.setOrderId(orderId);
+                item.setProductId(productId);
                 item.setProductName(product.getName());
                 item.setProductPrice(product.getPrice());
-                item.setQuantity(itemRequest.getQuantity());
+                item.setQuantity(quantity);
                 item.setSubtotal(itemSubtotal);
                 items.add(item);
 
-                // 7. 预占库存
+                // 7. 预占记录（直接关联订单ID）
                 InventoryLock lock = new InventoryLock();
-                lock.setProductId(product.get_id());
-                lock.setQuantity(itemRequest.getQuantity());
+                lock.setProductId(productId);
+                lock.setOrderId(orderId);
+                lock.setQuantity(quantity);
                 lock.setExpireTime(expireTime);
                 lock.setStatus(1); // 已锁定
-                inventoryLockRepository.save(lock);
+                locks.add(lock);
 
                 totalAmount = totalAmount.add(itemSubtotal);
             }
 
-            // ========== 第五步：创建订单 ==========
+            // ========== 第六步：短事务写入订单 + 批量写入明细和预占记录 ==========
             Order order = new Order();
+            order.set_id(orderId);
             order.setOrderNo(orderNo);
             order.setUserId(request.getUserId());
             order.setReceiverName(request.getReceiverName());
@@ -139,19 +219,21 @@ public class MallOrderService {
             order.setTotalAmount(totalAmount);
             order.setStatus(OrderStatus.PENDING.getCode());
             order.setItems(items);
-            orderRepository.save(order);
-            orderId = order.get_id();
 
-            // ========== 第六步：关联库存预占记录 ==========
-            for (OrderItem item : items) {
-                entityManager.createQuery(
-                        "UPDATE InventoryLock SET orderId = :orderId WHERE productId = :productId AND status = 1 AND orderId IS NULL"
-                )
-                        .setParameter("orderId", orderId)
-                        .setParameter("productId", item.getProductId())
-                        .setMaxResults(item.getQuantity()) // 只更新本次预占的数量
-                        .executeUpdate();
-            }
+            transactionTemplate.executeWithoutResult(status -> {
+                // ID 已预先分配，使用 persist 避免 save() 走 merge 产生额外 SELECT；
+                // 明细随订单级联写入，配合 hibernate.jdbc.batch_size 在 flush 时按表批量 INSERT
+                entityManager.persist(order);
+                for (InventoryLock lock : locks) {
+                    entityManager.persist(lock);
+                }
+                recordCreated(order);
+                entityManager.flush();
+            });
+            persisted = true;
+
+            // 按订单自身的过期时间进入超时队列
+            orderExpiryQueue.schedule(orderId, TimeUnit.SECONDS.toMillis(expireTime));
 
             // ========== 第七步：生成订单签名（防止金额篡改）==========
             long timestamp = System.currentTimeMillis();
@@ -177,13 +259,138 @@ public class MallOrderService {
             log.error("提交订单失败: {}", e.getMessage(), e);
             result.setSuccess(false);
             result.setMessage(e.getMessage());
+        } finally {
+            // 订单已落库则预占转为由预占记录承载，否则撤销账本预占
+            for (Map.Entry<String, Integer> entry : reserved.entrySet()) {
+                inventoryLedgerService.completeDetachedReservation(entry.getKey(), entry.getValue(), persisted);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 秒杀下单：令牌 CAS + 入队，不访问数据库
+     * 订单由 FlashSaleOrderWriter 批量落库，落库前查询订单详情/支付会提示订单不存在
+     */
+    private SubmitOrderResult submitFlashOrder(SubmitOrderRequest request,
+                                               FlashSaleService.FlashSaleItem flashItem, int quantity) {
+        SubmitOrderResult result = new SubmitOrderResult();
+
+        if (quantity > flashItem.getLimitPerOrder()) {
+            result.setSuccess(false);
+            result.setMessage("超过每单限购数量: " + flashItem.getLimitPerOrder());
+            return result;
+        }
+
+        String orderId = AbstractHibernateBean.generateId();
+        if (!flashSaleService.tryAcquire(flashItem, orderId, quantity)) {
+            result.setSuccess(false);
+            result.setMessage("商品已售罄: " + flashItem.getProductName());
+            return result;
+        }
+
+        String orderNo = generateOrderNo();
+        long expireTime = System.currentTimeMillis() / 1000 + TimeUnit.MINUTES.toSeconds(ORDER_TIMEOUT_MINUTES);
+        BigDecimal totalAmount = flashItem.getPrice().multiply(new BigDecimal(quantity));
+
+        OrderItem item = new OrderItem();
+        item.setOrderId(orderId);
+        item.setProductId(flashItem.getProductId());
+        item.setProductName(flashItem.getProductName());
+        item.setProductPrice(flashItem.getPrice());
+        item.setQuantity(quantity);
+        item.setSubtotal(totalAmount);
+
+        Order order = new Order();
+        order.set_id(orderId);
+        order.setOrderNo(orderNo);
+        order.setUserId(request.getUserId());
+        order.setReceiverName(request.getReceiverName());
+        order.setReceiverPhone(request.getReceiverPhone());
+        order.setReceiverAddress(request.getReceiverAddress());
+        order.setRemark(request.getRemark());
+        order.setTotalAmount(totalAmount);
+        order.setStatus(OrderStatus.PENDING.getCode());
+        order.setItems(new ArrayList<>(List.of(item)));
+
+        InventoryLock lock = new InventoryLock();
+        lock.setProductId(flashItem.getProductId());
+        lock.setOrderId(orderId);
+        lock.setQuantity(quantity);
+        lock.setExpireTime(expireTime);
+        lock.setStatus(1); // 已锁定
+
+        if (!flashSaleService.enqueue(new FlashSaleService.FlashOrder(order, lock, TimeUnit.SECONDS.toMillis(expireTime)))) {
+            flashSaleService.returnTokens(orderId);
+            result.setSuccess(false);
+            result.setMessage("抢购人数过多，请稍后再试");
+            return result;
         }
 
+        long timestamp = System.currentTimeMillis();
+        result.setSuccess(true);
+        result.setMessage("抢购成功，订单处理中");
+        result.setOrderId(orderId);
+        result.setOrderNo(orderNo);
+        result.setTotalAmount(totalAmount);
+        result.setExpireTime(expireTime);
+        result.setSignature(signatureUtil.generateSignature(orderId, totalAmount, timestamp));
+        result.setTimestamp(timestamp);
+        result.setPayParams(generateWeChatPayParams(order, totalAmount));
+
+        log.info("秒杀下单成功: orderNo={}, productId={}, quantity={}", orderNo, flashItem.getProductId(), quantity);
         return result;
     }
 
+    /**
+     * 秒杀订单批量落库
+     * 整批一个事务；整批失败时逐单重试，仍失败的订单归还令牌
+     *
+     * @return 成功落库的订单数
+     */
+    public int persistFlashOrders(List<FlashSaleService.FlashOrder> flashOrders) {
+        int persisted = 0;
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (FlashSaleService.FlashOrder flashOrder : flashOrders) {
+                    persistFlashOrder(flashOrder);
+                }
+                entityManager.flush();
+            });
+            persisted = flashOrders.size();
+        } catch (Exception e) {
+            log.warn("秒杀订单批量落库失败，逐单重试: batch={}, error={}", flashOrders.size(), e.getMessage());
+            for (FlashSaleService.FlashOrder flashOrder : flashOrders) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> persistFlashOrder(flashOrder));
+                    persisted++;
+                } catch (Exception ex) {
+                    log.error("秒杀订单落库失败: orderId={}, error={}", flashOrder.order().get_id(), ex.getMessage(), ex);
+                    flashSaleService.returnTokens(flashOrder.order().get_id());
+                }
+            }
+        } finally {
+            flashOrders.forEach(flashSaleService::completed);
+        }
+        return persisted;
+    }
+
+    private void persistFlashOrder(FlashSaleService.FlashOrder flashOrder) {
+        String orderId = flashOrder.order().get_id();
+        // 账本预占（事务回滚时自动撤销），令牌数不超过开启时的可用库存，正常情况下必然成功
+        if (!inventoryLedgerService.tryReserve(flashOrder.productId(), flashOrder.quantity())) {
+            throw new RuntimeException("商品库存不足: " + flashOrder.productId());
+        }
+        entityManager.persist(flashOrder.order());
+        entityManager.persist(flashOrder.lock());
+        recordCreated(flashOrder.order());
+        orderExpiryQueue.schedule(orderId, flashOrder.expireMillis());
+    }
+
     /**
      * 支付订单（支付回调后调用）
+     * 订单状态 CAS 流转 + 商品库存条件扣减，均为单条 UPDATE，无读-改-写竞争
      */
     @Transactional(rollbackFor = Exception.class)
     public Map<String, Object> payOrder(String orderId) {
@@ -199,35 +406,52 @@ public class MallOrderService {
                 throw new RuntimeException("订单状态不正确");
             }
 
-            // 检查是否过期
+            // 检查是否过期（超时直接取消并提交，不抛异常以免取消被回滚）
             LocalDateTime createTime = order.getCreateTime();
             LocalDateTime expireTime = createTime.plusMinutes(ORDER_TIMEOUT_MINUTES);
             if (LocalDateTime.now().isAfter(expireTime)) {
                 cancelOrder(orderId, "订单超时");
-                throw new RuntimeException("订单已超时");
+                result.put("success", false);
+                result.put("message", "订单已超时");
+                return result;
+            }
+
+            // 状态流转：待支付 -> 已支付（并发支付/取消时只有一个能成功）
+            if (orderRepository.markPaid(orderId, LocalDateTime.now()) == 0) {
+                throw new RuntimeException("订单状态已变更，请刷新后重试");
             }
 
-            // 扣减库存
-            for (OrderItem item : order.getItems()) {
-                Product product = productRepository.findById(item.getProductId()).orElse(null);
-                if (product != null) {
-                    int newStock = product.getStock() - item.getQuantity();
-                    if (newStock < 0) {
-                        throw new RuntimeException("商品库存不足: " + product.getName());
-                    }
-                    product.setStock(newStock);
-                    product.setSales(product.getSales() + item.getQuantity());
-                    productRepository.save(product);
+            // 条件扣减库存（按商品ID排序，多商品订单并发支付时加锁顺序一致，避免死锁；分桶商品扣减分桶）
+            List<OrderItem> items = new ArrayList<>(order.getItems());
+            items.sort(Comparator.comparing(OrderItem::getProductId));
+            for (OrderItem item : items) {
+                if (!stockBucketService.decreaseStock(item.getProductId(), item.getQuantity(), orderId)) {
+                    throw new RuntimeException("商品库存不足: " + item.getProductName());
                 }
             }
 
             // 释放库存预占
+            List<InventoryLock> locks = inventoryLockRepository.findByOrderIdAndStatus(orderId, 1);
             inventoryLockRepository.releaseByOrderId(orderId);
+            for (InventoryLock lock : locks) {
+                inventoryLedgerService.confirmPaid(lock.getProductId(), lock.getQuantity());
+            }
+            orderExpiryQueue.remove(orderId);
+            orderDetailCache.evict(orderId);
+            flashSaleService.settle(orderId);
 
-            // 更新订单状态和支付时间
-            order.setStatus(OrderStatus.PAID.getCode());
-            order.setPayTime(LocalDateTime.now());
-            orderRepository.save(order);
+            // 销量统计等副作用经订单事件异步处理
+            List<Map<String, Object>> paidItems = new ArrayList<>();
+            for (OrderItem item : items) {
+                Map<String, Object> paidItem = new HashMap<>();
+                paidItem.put("productId", item.getProductId());
+                paidItem.put("quantity", item.getQuantity());
+                paidItems.add(paidItem);
+            }
+            Map<String, Object> payload = new HashMap<>();
+            payload.put("totalAmount", order.getTotalAmount());
+            payload.put("items", paidItems);
+            orderOutboxService.record(OrderEventType.PAID, orderId, order.getUserId(), payload);
 
             result.put("success", true);
             result.put("message", "支付成功");
@@ -236,6 +460,8 @@ public class MallOrderService {
 
         } catch (Exception e) {
             log.error("支付订单失败: {}", e.getMessage(), e);
+            // 回滚状态流转和已扣减的库存
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             result.put("success", false);
             result.put("message", e.getMessage());
         }
@@ -245,27 +471,34 @@ public class MallOrderService {
 
     /**
      * 取消订单（释放库存预占）
+     * 状态 CAS 流转：仅待支付订单可取消，与并发支付互斥
      */
     @Transactional(rollbackFor = Exception.class)
     public Map<String, Object> cancelOrder(String orderId, String reason) {
         Map<String, Object> result = new HashMap<>();
 
         try {
-            Order order = orderRepository.findById(orderId).orElse(null);
-            if (order == null) {
-                throw new RuntimeException("订单不存在");
-            }
-
-            if (order.getStatus() != OrderStatus.PENDING.getCode()) {
+            // 状态流转：待支付 -> 已取消
+            int updated = orderRepository.updateStatus(orderId,
+                    OrderStatus.PENDING.getCode(), OrderStatus.CANCELLED.getCode());
+            if (updated == 0) {
+                if (!orderRepository.existsById(orderId)) {
+                    throw new RuntimeException("订单不存在");
+                }
                 throw new RuntimeException("只能取消待支付订单");
             }
 
             // 释放库存预占
+            List<InventoryLock> locks = inventoryLockRepository.findByOrderIdAndStatus(orderId, 1);
             int released = inventoryLockRepository.releaseByOrderId(orderId);
-
-            // 更新订单状态
-            order.setStatus(OrderStatus.CANCELLED.getCode());
-            orderRepository.save(order);
+            for (InventoryLock lock : locks) {
+                inventoryLedgerService.release(lock.getProductId(), lock.getQuantity());
+            }
+            flashSaleService.returnTokens(orderId);
+            orderExpiryQueue.remove(orderId);
+            orderDetailCache.evict(orderId);
+            orderOutboxService.record(OrderEventType.CANCELLED, orderId,
+                    orderRepository.findUserIdById(orderId), Map.of("reason", reason != null ? reason : ""));
 
             result.put("success", true);
             result.put("message", "订单已取消");
@@ -275,6 +508,7 @@ public class MallOrderService {
 
         } catch (Exception e) {
             log.error("取消订单失败: {}", e.getMessage(), e);
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             result.put("success", false);
             result.put("message", e.getMessage());
         }
@@ -283,37 +517,47 @@ public class MallOrderService {
     }
 
     /**
-     * 处理超时订单（定时任务调用）
+     * 处理超时订单（兜底扫描 / 手动触发）
+     * 按批次集合式取消，每批独立短事务，避免积压时长时间占用数据库连接
      */
-    @Transactional(rollbackFor = Exception.class)
     public Map<String, Object> handleExpiredOrders() {
         Map<String, Object> result = new HashMap<>();
 
         try {
             LocalDateTime expireTime = LocalDateTime.now().minusMinutes(ORDER_TIMEOUT_MINUTES);
-            List<Order> expiredOrders = orderRepository.findExpiredPendingOrders(expireTime);
 
             int cancelledCount = 0;
             int totalReleasedStock = 0;
+            List<Map<String, Object>> chunks = new ArrayList<>();
 
-            for (Order order : expiredOrders) {
-                try {
-                    Map<String, Object> cancelResult = cancelOrder(order.get_id(), "订单超时自动取消");
-                    if (Boolean.TRUE.equals(cancelResult.get("success"))) {
-                        cancelledCount++;
-                        totalReleasedStock += (Integer) cancelResult.getOrDefault("releasedStock", 0);
-                    }
-                } catch (Exception e) {
-                    log.error("取消超时订单失败: orderId={}, error={}", order.get_id(), e.getMessage());
+            for (int i = 0; i < EXPIRE_MAX_CHUNKS; i++) {
+                List<String> orderIds = orderRepository.findExpiredPendingOrderIds(
+                        expireTime, PageRequest.of(0, EXPIRE_CHUNK_SIZE));
+                if (orderIds.isEmpty()) {
+                    break;
+                }
+
+                Map<String, Object> chunk = cancelExpiredOrders(orderIds);
+                chunks.add(chunk);
+
+                int chunkCancelled = (Integer) chunk.get("cancelledCount");
+                cancelledCount += chunkCancelled;
+                totalReleasedStock += (Integer) chunk.get("releasedStock");
+
+                // 本批一个都没取消（已被并发支付/取消），或已取完，结束
+                if (chunkCancelled == 0 || orderIds.size() < EXPIRE_CHUNK_SIZE) {
+                    break;
                 }
             }
 
             result.put("success", true);
             result.put("cancelledCount", cancelledCount);
             result.put("totalReleasedStock", totalReleasedStock);
+            result.put("chunks", chunks);
             result.put("message", String.format("处理完成，取消订单 %d 个，释放库存 %d", cancelledCount, totalReleasedStock));
 
-            log.info("处理超时订单完成: cancelledCount={}, totalReleasedStock={}", cancelledCount, totalReleasedStock);
+            log.info("处理超时订单完成: chunks={}, cancelledCount={}, totalReleasedStock={}",
+                    chunks.size(), cancelledCount, totalReleasedStock);
 
         } catch (Exception e) {
             log.error("处理超时订单失败: {}", e.getMessage(), e);
@@ -324,8 +568,64 @@ public class MallOrderService {
         return result;
     }
 
+    /**
+     * 集合式取消一批超时订单（独立短事务）
+     * 锁定仍待支付的订单后一条 UPDATE 取消 + 一条 UPDATE 释放这些订单的库存预占，不加载订单实体
+     *
+     * @param orderIds 已到期的订单ID
+     * @return 本批统计：selectedCount / cancelledCount / releasedStock
+     */
+    public Map<String, Object> cancelExpiredOrders(List<String> orderIds) {
+        Map<String, Object> chunk = transactionTemplate.execute(status -> {
+            // 先锁定仍待支付的订单（与并发支付互斥），取消后逐单写入超时事件
+            List<Object[]> pendingOrders = orderRepository.lockPendingOrders(orderIds);
+            int cancelled = pendingOrders.isEmpty() ? 0 : orderRepository.cancelPendingOrders(orderIds);
+
+            int releasedStock = 0;
+            if (cancelled > 0) {
+                List<Object[]> lockedRows = inventoryLockRepository.sumLockedQuantityOfCancelledOrders(orderIds);
+                inventoryLockRepository.releaseByCancelledOrderIds(orderIds);
+                for (Object[] row : lockedRows) {
+                    int quantity = ((Number) row[1]).intValue();
+                    inventoryLedgerService.release((String) row[0], quantity);
+                    releasedStock += quantity;
+                }
+            }
+
+            if (cancelled > 0) {
+                orderDetailCache.evict(orderIds);
+                for (Object[] row : pendingOrders) {
+                    flashSaleService.returnTokens((String) row[0]);
+                    orderOutboxService.record(OrderEventType.EXPIRED, (String) row[0], (String) row[1], null);
+                }
+            }
+
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("selectedCount", orderIds.size());
+            stats.put("cancelledCount", cancelled);
+            stats.put("releasedStock", releasedStock);
+            return stats;
+        });
+
+        orderIds.forEach(orderExpiryQueue::remove);
+
+        log.info("批量取消超时订单: selectedCount={}, cancelledCount={}, releasedStock={}",
+                chunk.get("selectedCount"), chunk.get("cancelledCount"), chunk.get("releasedStock"));
+        return chunk;
+    }
+
     // ========== 私有方法 ==========
 
+    /**
+     * 写入订单创建事件（与订单在同一事务中）
+     */
+    private void recordCreated(Order order) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("orderNo", order.getOrderNo());
+        payload.put("totalAmount", order.getTotalAmount());
+        orderOutboxService.record(OrderEventType.CREATED, order.get_id(), order.getUserId(), payload);
+    }
+
     /**
      * 参数校验
      */
@@ -348,30 +648,17 @@ public class MallOrderService {
     }
 
     /**
-     * 生成订单编号
+     * 生成订单编号（同一毫秒内并发下单也不会冲突）
      */
     private String generateOrderNo() {
-        return "ORD" + System.currentTimeMillis();
+        return "ORD" + SnowflakeIdGenerator.nextIdString();
     }
 
     /**
-     * 获取可用库存（总库存 - 已预占库存）
+     * 获取可用库存（总库存 - 已预占库存），由进程内库存账本提供
      */
     private int getAvailableStock(String productId) {
-        Product product = productRepository.findById(productId).orElse(null);
-        if (product == null) {
-            return 0;
-        }
-
-        Integer lockedQuantity = inventoryLockRepository.sumLockedQuantity(
-                productId,
-                System.currentTimeMillis() / 1000
-        );
-
-        int totalStock = product.getStock();
-        int locked = lockedQuantity != null ? lockedQuantity : 0;
-
-        return totalStock - locked;
+        return inventoryLedgerService.getAvailable(productId);
     }
 
     /**
@@ -415,19 +702,22 @@ public class MallOrderService {
 
     /**
      * 获取订单详情
+     * 读穿透订单详情缓存，支付/取消/超时后缓存失效
      */
     public Map<String, Object> getOrderDetail(String orderId) {
         Map<String, Object> result = new HashMap<>();
 
         try {
-            Order order = orderRepository.findById(orderId).orElse(null);
-            if (order == null) {
+            Map<String, Object> data = orderDetailCache.get(orderId, () -> {
+                // 订单与明细一次抓取并转换为 Map，缓存中不持有实体；在线表没有时回查归档表
+                List<Order> orders = orderRepository.findWithItemsByIdIn(List.of(orderId));
+                Order order = orders.isEmpty() ? orderArchiveService.findOrder(orderId) : orders.get(0);
+                return order == null ? null : convertToOrderDetailMap(order);
+            });
+            if (data == null) {
                 throw new RuntimeException("订单不存在");
             }
 
-            // 转换为 Map
-            Map<String, Object> data = convertToOrderDetailMap(order);
-
             result.put("success", true);
             result.put("data", data);
 
@@ -443,22 +733,69 @@ public class MallOrderService {
     }
 
     /**
-     * 获取用户订单列表
+     * 获取用户订单列表（游标分页）
+     *
+     * 先按 (create_time, _id) 游标取一页订单ID，再一次性抓取这些订单及明细，
+     * 查询代价只与页大小有关，与用户历史订单数量无关；
+     * 归档表按同一游标取一页，与在线订单合并排序后截取，翻页跨越冷热数据时无感知
+     *
+     * @param cursor 上一页返回的 nextCursor，首页为空
+     * @param size   每页条数
+     * @param status 订单状态，为空时查询全部
      */
-    public Map<String, Object> getUserOrders(String userId) {
+    public Map<String, Object> getUserOrders(String userId, String cursor, int size, Integer status) {
         Map<String, Object> result = new HashMap<>();
 
         try {
-            List<Order> orders = orderRepository.findByUserIdOrderByCreateTimeDesc(userId);
+            int pageSize = Math.min(Math.max(size, 1), MAX_ORDER_PAGE_SIZE);
+            // 多取一条用于判断是否还有下一页
+            PageRequest page = PageRequest.of(0, pageSize + 1);
+
+            List<String> orderIds;
+            List<Order> archivedOrders;
+            if (cursor == null || cursor.isEmpty()) {
+                orderIds = orderRepository.findUserOrderIds(userId, status, page);
+                archivedOrders = orderArchiveService.findUserOrders(userId, status, null, null, pageSize + 1);
+            } else {
+                OrderCursor orderCursor = OrderCursor.decode(cursor);
+                orderIds = orderRepository.findUserOrderIdsBefore(userId, status,
+                        orderCursor.createTime(), orderCursor.orderId(), page);
+                archivedOrders = orderArchiveService.findUserOrders(userId, status,
+                        orderCursor.createTime(), orderCursor.orderId(), pageSize + 1);
+            }
 
-            List<Map<String, Object>> dataList = orders.stream()
-                    .map(this::convertToOrderDetailMap)
-                    .toList();
+            List<Order> merged = new ArrayList<>(orderIds.size() + archivedOrders.size());
+            if (!orderIds.isEmpty()) {
+                merged.addAll(orderRepository.findWithItemsByIdIn(orderIds));
+            }
+            merged.addAll(archivedOrders);
+            // 与查询排序一致：创建时间倒序，相同时按ID倒序（ID为定长数字串，字符串比较即数值比较）
+            merged.sort(Comparator.comparing(Order::getCreateTime)
+                    .thenComparing(Order::get_id)
+                    .reversed());
+
+            boolean hasMore = merged.size() > pageSize;
+            if (hasMore) {
+                merged = merged.subList(0, pageSize);
+            }
+
+            List<Map<String, Object>> dataList = new ArrayList<>(merged.size());
+            Order last = null;
+            for (Order order : merged) {
+                dataList.add(convertToOrderDetailMap(order));
+                last = order;
+            }
+
+            Map<String, Object> data = new HashMap<>();
+            data.put("list", dataList);
+            data.put("hasMore", hasMore);
+            data.put("nextCursor", hasMore && last != null
+                    ? new OrderCursor(last.getCreateTime(), last.get_id()).encode() : null);
 
             result.put("success", true);
-            result.put("data", dataList);
+            result.put("data", data);
 
-            log.info("查询用户订单列表成功: userId={}, count={}", userId, dataList.size());
+            log.info("查询用户订单列表成功: userId={}, count={}, hasMore={}", userId, dataList.size(), hasMore);
 
         } catch (Exception e) {
             log.error("查询用户订单列表失败: {}", e.getMessage(), e);
@@ -510,6 +847,27 @@ public class MallOrderService {
 
     // ========== 内部类 ==========
 
+    /**
+     * 订单列表游标：上一页最后一条订单的 (创建时间, 订单ID)，Base64 编码后返回给前端
+     */
+    private record OrderCursor(LocalDateTime createTime, String orderId) {
+
+        String encode() {
+            String raw = createTime + "," + orderId;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static OrderCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.indexOf(',');
+                return new OrderCursor(LocalDateTime.parse(raw.substring(0, separator)), raw.substring(separator + 1));
+            } catch (Exception e) {
+                throw new RuntimeException("分页游标不合法");
+            }
+        }
+    }
+
     /**
      * 提交订单请求
      */
@@ -0,0 +1,189 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.Order;
+import com.example.wq.entity.OrderArchive;
+import com.example.wq.entity.OrderItem;
+import com.example.wq.entity.OrderItemArchive;
+import com.example.wq.repository.OrderArchiveRepository;
+import com.example.wq.repository.OrderItemArchiveRepository;
+import com.example.wq.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单冷热分离（归档）服务
+ *
+ * 已完成/已取消且创建超过 wq.order-archive.after-days 天的订单，连同明细按批移入
+ * wqorder_archive / order_item_archive，在线表只保留近期订单与进行中的订单，索引常驻缓冲池。
+ * 有评价的订单（review 外键引用订单）保留在在线表。
+ *
+ * 归档订单通过 findOrder / findUserOrders 透明回查，转换为不受持久化上下文管理的 Order 实例，
+ * 调用方与在线订单一致处理（只读）
+ */
+@Service
+public class OrderArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderArchiveService.class);
+
+    // 每批归档的订单数
+    private static final int CHUNK_SIZE = 200;
+
+    // 每轮最多归档的批次数
+    private static final int MAX_CHUNKS_PER_RUN = 50;
+
+    // 批次之间的暂停时间（毫秒），限制归档对线上写入的影响
+    private static final long PAUSE_MILLIS = 200;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderArchiveRepository orderArchiveRepository;
+
+    @Autowired
+    private OrderItemArchiveRepository orderItemArchiveRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${wq.order-archive.after-days:90}")
+    private int archiveAfterDays;
+
+    /**
+     * 执行一轮归档，每批一个短事务：复制订单与明细 -> 删除在线明细与订单
+     *
+     * @return 本轮归档的订单数
+     */
+    public int archive() {
+        LocalDateTime before = LocalDateTime.now().minusDays(archiveAfterDays);
+        int total = 0;
+
+        for (int chunk = 0; chunk < MAX_CHUNKS_PER_RUN; chunk++) {
+            Integer archived = transactionTemplate.execute(status -> {
+                List<String> orderIds = orderRepository.findArchivableOrderIds(before, PageRequest.of(0, CHUNK_SIZE));
+                if (orderIds.isEmpty()) {
+                    return 0;
+                }
+
+                LocalDateTime archiveTime = LocalDateTime.now();
+                int orders = orderArchiveRepository.archiveOrders(orderIds, archiveTime);
+                orderArchiveRepository.archiveItems(orderIds, archiveTime);
+                orderRepository.deleteItemsByOrderIds(orderIds);
+                if (orderRepository.deleteArchivedOrders(orderIds) != orders) {
+                    // 期间订单状态发生变化，整批回滚，下一轮重新选择
+                    throw new IllegalStateException("归档订单数与删除订单数不一致");
+                }
+                return orders;
+            });
+            if (archived == null || archived == 0) {
+                break;
+            }
+            total += archived;
+
+            if (archived < CHUNK_SIZE || !pause()) {
+                break;
+            }
+        }
+
+        if (total > 0) {
+            log.info("订单归档完成: archived={}, before={}", total, before);
+        }
+        return total;
+    }
+
+    /**
+     * 查询归档订单（含明细）
+     *
+     * @return 订单，未归档时返回 null
+     */
+    public Order findOrder(String orderId) {
+        return orderArchiveRepository.findById(orderId)
+                .map(archive -> toOrders(List.of(archive)).get(0))
+                .orElse(null);
+    }
+
+    /**
+     * 查询用户的归档订单（含明细），排序与游标语义与在线订单列表一致
+     *
+     * @param cursorTime 游标创建时间，为空时从第一条开始
+     * @param cursorId   游标订单ID
+     * @param limit      最多返回条数
+     */
+    public List<Order> findUserOrders(String userId, Integer status,
+                                      LocalDateTime cursorTime, String cursorId, int limit) {
+        PageRequest page = PageRequest.of(0, limit);
+        List<OrderArchive> archives = cursorTime == null
+                ? orderArchiveRepository.findUserOrders(userId, status, page)
+                : orderArchiveRepository.findUserOrdersBefore(userId, status, cursorTime, cursorId, page);
+        return toOrders(archives);
+    }
+
+    /**
+     * 归档订单转换为 Order（一次查询抓取全部明细）
+     */
+    private List<Order> toOrders(List<OrderArchive> archives) {
+        if (archives.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, Order> orders = new HashMap<>();
+        List<Order> result = new ArrayList<>(archives.size());
+        for (OrderArchive archive : archives) {
+            Order order = new Order();
+            order.set_id(archive.get_id());
+            order.setOrderNo(archive.getOrderNo());
+            order.setUserId(archive.getUserId());
+            order.setTotalAmount(archive.getTotalAmount());
+            order.setStatus(archive.getStatus());
+            order.setReceiverName(archive.getReceiverName());
+            order.setReceiverPhone(archive.getReceiverPhone());
+            order.setReceiverAddress(archive.getReceiverAddress());
+            order.setRemark(archive.getRemark());
+            order.setPayTime(archive.getPayTime());
+            order.setCreateTime(archive.getCreateTime());
+            order.setUpdateTime(archive.getUpdateTime());
+            orders.put(order.get_id(), order);
+            result.add(order);
+        }
+
+        for (OrderItemArchive archive : orderItemArchiveRepository.findByOrderIdIn(orders.keySet())) {
+            OrderItem item = new OrderItem();
+            item.set_id(archive.get_id());
+            item.setOrderId(archive.getOrderId());
+            item.setProductId(archive.getProductId());
+            item.setProductName(archive.getProductName());
+            item.setProductPrice(archive.getProductPrice());
+            item.setQuantity(archive.getQuantity());
+            item.setSubtotal(archive.getSubtotal());
+            item.setCreateTime(archive.getCreateTime());
+            orders.get(archive.getOrderId()).getItems().add(item);
+        }
+        return result;
+    }
+
+    /**
+     * 批次间暂停
+     *
+     * @return false-线程被中断（应用关闭），停止本轮归档
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(PAUSE_MILLIS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
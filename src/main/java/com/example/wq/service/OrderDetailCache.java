@@ -0,0 +1,100 @@
+package com.example.wq.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * 订单详情缓存（读穿透，Caffeine orderDetailCache）
+ *
+ * 支付页轮询订单详情时直接命中内存；订单状态流转（支付/取消/超时）在事务提交后失效对应条目。
+ * 为避免「读线程读到提交前的旧状态，在失效之后才写回缓存」，按订单ID分段维护失效代数：
+ * - 失效：代数 +1 后再删除缓存
+ * - 回填：读库前记录代数，写入缓存后代数已变化则立即删除
+ */
+@Component
+public class OrderDetailCache {
+
+    public static final String CACHE_NAME = "orderDetailCache";
+
+    // 失效代数分段数（不同订单落在同一分段只会导致一次多余的未命中）
+    private static final int GENERATION_STRIPES = 1024;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    /**
+     * 读取订单详情，未命中时由 loader 加载（返回 null 不缓存）
+     */
+    public Map<String, Object> get(String orderId, Supplier<Map<String, Object>> loader) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        if (cache == null) {
+            return loader.get();
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> cached = cache.get(orderId, Map.class);
+        if (cached != null) {
+            return cached;
+        }
+
+        int stripe = stripe(orderId);
+        long generation = generations.get(stripe);
+        Map<String, Object> loaded = loader.get();
+        if (loaded != null) {
+            cache.put(orderId, loaded);
+            if (generations.get(stripe) != generation) {
+                cache.evict(orderId);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 订单状态已变更，在事务中调用时提交后才失效
+     */
+    public void evict(String orderId) {
+        evict(List.of(orderId));
+    }
+
+    /**
+     * 批量失效，在事务中调用时提交后才失效
+     */
+    public void evict(Collection<String> orderIds) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doEvict(orderIds);
+                }
+            });
+        } else {
+            doEvict(orderIds);
+        }
+    }
+
+    private void doEvict(Collection<String> orderIds) {
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        for (String orderId : orderIds) {
+            generations.incrementAndGet(stripe(orderId));
+            if (cache != null) {
+                cache.evict(orderId);
+            }
+        }
+    }
+
+    private int stripe(String orderId) {
+        return (orderId.hashCode() & 0x7fffffff) % GENERATION_STRIPES;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.OrderOutboxEvent;
+
+/**
+ * 订单事件监听器
+ *
+ * 注册为 Spring Bean 即可接收订单事件外发表中的事件（由 OrderOutboxDispatcher 分发）。
+ * 投递语义为至少一次：任一监听器失败时整条事件稍后重新分发给全部监听器，实现需幂等或可容忍重复。
+ * 监听器在分发事务内调用（一批事件共用一个事务），副作用应通过事务同步在分发结果提交后再执行：
+ * 某个事件分发失败时，只丢弃该事件期间登记的事务同步，直接写入数据库的变更不会单独回滚。
+ */
+public interface OrderEventListener {
+
+    /**
+     * 处理订单事件
+     */
+    void onOrderEvent(OrderOutboxEvent event);
+}
@@ -0,0 +1,143 @@
+package com.example.wq.service;
+
+import com.example.wq.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单超时延迟队列
+ *
+ * 下单成功后按订单自身的过期时间入队，到期后由定时任务小批量取出并取消，
+ * 不再依赖每分钟全表扫描超时订单。
+ * - 启动时从数据库中的待支付订单重建
+ * - 支付/取消后移出待处理集合，队列中残留的条目在出队时直接跳过
+ */
+@Service
+public class OrderExpiryQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderExpiryQueue.class);
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    private final DelayQueue<ExpiryTask> queue = new DelayQueue<>();
+
+    // 仍处于待支付状态、需要到期取消的订单
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 启动时从数据库重建队列
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            List<Object[]> rows = orderRepository.findPendingOrderCreateTimes();
+            for (Object[] row : rows) {
+                String orderId = (String) row[0];
+                LocalDateTime createTime = (LocalDateTime) row[1];
+                if (createTime == null) {
+                    continue;
+                }
+                LocalDateTime deadline = createTime.plusMinutes(MallOrderService.ORDER_TIMEOUT_MINUTES);
+                enqueue(orderId, deadline.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+            }
+            log.info("订单超时队列重建完成: pendingOrders={}", pending.size());
+        } catch (Exception e) {
+            log.error("订单超时队列重建失败，超时订单将由兜底扫描处理: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 登记订单的过期时间，在事务中调用时提交后才入队
+     *
+     * @param orderId        订单ID
+     * @param deadlineMillis 过期时间（毫秒时间戳）
+     */
+    public void schedule(String orderId, long deadlineMillis) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(orderId, deadlineMillis);
+                }
+            });
+        } else {
+            enqueue(orderId, deadlineMillis);
+        }
+    }
+
+    /**
+     * 订单已支付或已取消，不再需要到期处理
+     */
+    public void remove(String orderId) {
+        pending.remove(orderId);
+    }
+
+    /**
+     * 取出已到期的订单（最多 maxBatch 个）
+     */
+    public List<String> pollExpired(int maxBatch) {
+        List<ExpiryTask> tasks = new ArrayList<>();
+        queue.drainTo(tasks, maxBatch);
+
+        List<String> orderIds = new ArrayList<>(tasks.size());
+        for (ExpiryTask task : tasks) {
+            if (pending.remove(task.orderId)) {
+                orderIds.add(task.orderId);
+            }
+        }
+        return orderIds;
+    }
+
+    /**
+     * 当前待到期处理的订单数
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    private void enqueue(String orderId, long deadlineMillis) {
+        if (pending.add(orderId)) {
+            queue.offer(new ExpiryTask(orderId, deadlineMillis));
+        }
+    }
+
+    /**
+     * 延迟任务
+     */
+    private static class ExpiryTask implements Delayed {
+        private final String orderId;
+        private final long deadlineMillis;
+
+        ExpiryTask(String orderId, long deadlineMillis) {
+            this.orderId = orderId;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadlineMillis, ((ExpiryTask) other).deadlineMillis);
+        }
+    }
+}
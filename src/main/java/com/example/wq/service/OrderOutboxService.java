@@ -0,0 +1,169 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.OrderOutboxEvent;
+import com.example.wq.enums.OrderEventType;
+import com.example.wq.repository.OrderOutboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单事件外发服务（Transactional Outbox）
+ *
+ * 订单创建/支付/取消/超时时，事件与状态变更在同一事务中写入 order_outbox：
+ * 状态变更提交则事件必然存在，回滚则事件一并消失。
+ * 销量统计、通知、分析等副作用由 OrderOutboxDispatcher 异步批量分发给 OrderEventListener，
+ * 不再占用下单/支付请求的时间。
+ *
+ * 需要外发到 Redis Stream 等消息系统时，实现 OrderEventListener 写入即可（需先在 pom.xml 中启用 Redis 依赖）
+ */
+@Service
+public class OrderOutboxService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderOutboxService.class);
+
+    // 最大分发次数，超过后标记为分发失败，需人工处理
+    private static final int MAX_ATTEMPTS = 10;
+
+    // 分发失败后的重试间隔（秒）
+    private static final long RETRY_DELAY_SECONDS = 30;
+
+    @Autowired
+    private OrderOutboxRepository orderOutboxRepository;
+
+    @Autowired
+    private ObjectProvider<OrderEventListener> listeners;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * 写入订单事件（必须在订单状态变更的事务中调用）
+     *
+     * @param payload 事件内容，序列化为 JSON
+     */
+    public void record(OrderEventType type, String orderId, String userId, Map<String, Object> payload) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("订单事件必须与订单状态变更在同一事务中写入");
+        }
+
+        OrderOutboxEvent event = new OrderOutboxEvent();
+        event.setEventType(type.getCode());
+        event.setOrderId(orderId);
+        event.setUserId(userId);
+        try {
+            event.setPayload(payload != null ? objectMapper.writeValueAsString(payload) : null);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("订单事件序列化失败: " + e.getMessage(), e);
+        }
+        entityManager.persist(event);
+    }
+
+    /**
+     * 分发一批待分发事件（一个事务：锁定 -> 逐个调用监听器 -> 批量标记结果）
+     * 监听器登记的提交后操作（如销量累加）在整批提交后才执行；某个事件分发失败时，
+     * 丢弃该事件期间登记的提交后操作，其他事件不受影响，重试时不会重复计入
+     *
+     * @return 本批处理的事件数
+     */
+    public int dispatchBatch(int batchSize) {
+        Integer count = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OrderOutboxEvent> events = orderOutboxRepository.lockDispatchable(now, PageRequest.of(0, batchSize));
+            if (events.isEmpty()) {
+                return 0;
+            }
+
+            List<String> dispatched = new ArrayList<>(events.size());
+            List<String> failed = new ArrayList<>();
+            for (OrderOutboxEvent event : events) {
+                List<TransactionSynchronization> registered = TransactionSynchronizationManager.getSynchronizations();
+                if (dispatch(event)) {
+                    dispatched.add(event.get_id());
+                } else {
+                    discardSynchronizationsSince(registered);
+                    failed.add(event.get_id());
+                }
+            }
+
+            if (!dispatched.isEmpty()) {
+                orderOutboxRepository.markDispatched(dispatched, now);
+            }
+            if (!failed.isEmpty()) {
+                orderOutboxRepository.markFailed(failed, now.plusSeconds(RETRY_DELAY_SECONDS), MAX_ATTEMPTS);
+            }
+            return events.size();
+        });
+        return count != null ? count : 0;
+    }
+
+    /**
+     * 分批删除分发完成时间早于指定时间的事件
+     *
+     * @return 删除的事件数
+     */
+    public int purgeDispatched(LocalDateTime before, int chunkSize, int maxChunks) {
+        int total = 0;
+        for (int chunk = 0; chunk < maxChunks; chunk++) {
+            Integer deleted = transactionTemplate.execute(status -> {
+                List<String> ids = orderOutboxRepository.findDispatchedIdsBefore(before, PageRequest.of(0, chunkSize));
+                return ids.isEmpty() ? 0 : orderOutboxRepository.deleteByIds(ids);
+            });
+            if (deleted == null || deleted == 0) {
+                break;
+            }
+            total += deleted;
+            if (deleted < chunkSize) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 丢弃分发失败的事件登记的事务同步（只保留分发该事件前已登记的）
+     */
+    private static void discardSynchronizationsSince(List<TransactionSynchronization> registered) {
+        if (TransactionSynchronizationManager.getSynchronizations().size() == registered.size()) {
+            return;
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+        registered.forEach(TransactionSynchronizationManager::registerSynchronization);
+    }
+
+    private boolean dispatch(OrderOutboxEvent event) {
+        for (OrderEventListener listener : listeners) {
+            try {
+                listener.onOrderEvent(event);
+            } catch (Exception e) {
+                log.error("订单事件分发失败: eventId={}, type={}, orderId={}, listener={}, error={}",
+                        event.get_id(), OrderEventType.fromCode(event.getEventType()), event.getOrderId(),
+                        listener.getClass().getSimpleName(), e.getMessage(), e);
+                return false;
+            }
+        }
+        return true;
+    }
+}
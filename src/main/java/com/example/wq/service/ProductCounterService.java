@@ -0,0 +1,173 @@
+package com.example.wq.service;
+
+import com.example.wq.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 商品展示计数器（销量）
+ *
+ * 支付时只在内存中按商品累加（LongAdder，高并发下无竞争），定时批量 UPDATE 回写商品表；
+ * 热销商品的展示计数不再与库存扣减争抢同一行锁。
+ *
+ * 计数在事务提交后才累加，进程异常退出会丢失未落库的增量。开启 wq.product-counter.recover-on-startup 后
+ * 按本地状态文件判断上次是否正常退出：启动时写入 running，关闭时增量全部落库后写入 clean；
+ * 启动时读到 running（上次异常退出）才按 销量基数 + 已支付/已发货/已完成订单（在线表与归档表）的明细 重新计算销量：
+ * - 销量基数（sales_offset）保留后台设置或初始数据中不来自订单的销量；新商品写入时取初始销量，
+ *   字段新增前的商品在正常退出后启动（或首次启动）时按 当前销量 - 已计入的订单销量 初始化，未初始化的商品不校准
+ * - 支付事件尚未分发的订单不计入，分发后由 ProductSalesEventListener 累加，不会重复计入
+ * 状态文件不存在（首次启动）时不校准。
+ * 默认关闭：多节点部署时其他节点未落库的增量会被重复计入，建议改为低峰期统一校准
+ */
+@Service
+public class ProductCounterService implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductCounterService.class);
+
+    private static final String FLUSH_SALES_SQL = "UPDATE product SET sales = sales + ? WHERE _id = ?";
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private static final String STATE_RUNNING = "running";
+    private static final String STATE_CLEAN = "clean";
+
+    @Value("${wq.product-counter.recover-on-startup:false}")
+    private boolean recoverOnStartup;
+
+    @Value("${wq.product-counter.state-file:data/product-counter.state}")
+    private String stateFile;
+
+    // 商品ID -> 未落库的销量增量
+    private final ConcurrentHashMap<String, LongAdder> pendingSales = new ConcurrentHashMap<>();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!recoverOnStartup) {
+            return;
+        }
+        String previousState = readState();
+        // 先标记运行中，本次异常退出后下次启动会校准
+        writeState(STATE_RUNNING);
+        if (!STATE_RUNNING.equals(previousState)) {
+            // 上次正常退出（或首次启动），计数器已全部落库，此时初始化的销量基数与订单明细一致
+            try {
+                Integer initialized = transactionTemplate.execute(status -> productRepository.initSalesOffsets());
+                log.info("商品销量无需校准: previousState={}, initializedOffsets={}", previousState, initialized);
+            } catch (Exception e) {
+                log.error("初始化商品销量基数失败: {}", e.getMessage(), e);
+            }
+            return;
+        }
+        try {
+            Integer updated = transactionTemplate.execute(status -> productRepository.recalculateSales());
+            log.info("上次未正常退出，商品销量已按订单明细校准: products={}", updated);
+        } catch (Exception e) {
+            // 校准失败不影响启动，销量仅用于展示
+            log.error("商品销量校准失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 累加商品销量
+     * 在事务中调用时，事务提交后才计入
+     */
+    public void addSales(String productId, int quantity) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    pendingSales.computeIfAbsent(productId, k -> new LongAdder()).add(quantity);
+                }
+            });
+        } else {
+            pendingSales.computeIfAbsent(productId, k -> new LongAdder()).add(quantity);
+        }
+    }
+
+    /**
+     * 批量回写销量
+     * 每5秒执行一次，所有商品的增量在一次 JDBC 批量 UPDATE 中提交；失败时增量放回，下次重试
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void flush() {
+        List<Object[]> batch = new ArrayList<>();
+        for (Map.Entry<String, LongAdder> entry : pendingSales.entrySet()) {
+            long delta = entry.getValue().sumThenReset();
+            if (delta > 0) {
+                batch.add(new Object[]{delta, entry.getKey()});
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(FLUSH_SALES_SQL, batch));
+            log.debug("商品销量回写: products={}", batch.size());
+        } catch (Exception e) {
+            for (Object[] row : batch) {
+                pendingSales.computeIfAbsent((String) row[1], k -> new LongAdder()).add((Long) row[0]);
+            }
+            log.error("商品销量回写失败，下次重试: products={}, error={}", batch.size(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 关闭时回写剩余增量，全部落库后标记正常退出
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        if (recoverOnStartup && pendingSales.values().stream().allMatch(adder -> adder.sum() == 0)) {
+            writeState(STATE_CLEAN);
+        }
+    }
+
+    private String readState() {
+        try {
+            Path path = Path.of(stateFile);
+            return Files.exists(path) ? Files.readString(path).trim() : null;
+        } catch (IOException e) {
+            log.warn("读取商品计数器状态文件失败: file={}, error={}", stateFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeState(String state) {
+        try {
+            Path path = Path.of(stateFile);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.writeString(path, state);
+        } catch (IOException e) {
+            log.warn("写入商品计数器状态文件失败: file={}, error={}", stateFile, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.OrderOutboxEvent;
+import com.example.wq.enums.OrderEventType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 订单支付事件 -> 商品销量计数
+ * 计数在分发事务提交后才累加（ProductCounterService.addSales）；
+ * 该事件分发失败或整批事务回滚时，登记的累加随之丢弃，事件保持待分发，重试时只计入一次
+ */
+@Component
+public class ProductSalesEventListener implements OrderEventListener {
+
+    @Autowired
+    private ProductCounterService productCounterService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    public void onOrderEvent(OrderOutboxEvent event) {
+        if (!OrderEventType.PAID.getCode().equals(event.getEventType()) || event.getPayload() == null) {
+            return;
+        }
+
+        try {
+            JsonNode items = objectMapper.readTree(event.getPayload()).path("items");
+            for (JsonNode item : items) {
+                productCounterService.addSales(item.path("productId").asText(), item.path("quantity").asInt());
+            }
+        } catch (Exception e) {
+            throw new IllegalArgumentException("订单支付事件内容无法解析: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.wq.service;
+
+import com.example.wq.repository.ActivityRegistrationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 活动报名支付超时延迟队列
+ *
+ * 付费活动报名成功后按支付过期时间入队，到期后由定时任务小批量取出并取消、归还名额，
+ * 未支付的报名不再长期占用名额。
+ * - 启动时从数据库中的待支付报名重建
+ * - 取消后移出待处理集合，队列中残留的条目在出队时直接跳过；已支付的报名在取消时按条件跳过
+ */
+@Slf4j
+@Service
+public class RegistrationExpiryQueue {
+
+    private final ActivityRegistrationRepository registrationRepository;
+
+    private final DelayQueue<ExpiryTask> queue = new DelayQueue<>();
+
+    // 仍处于待支付状态、需要到期取消的报名
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    public RegistrationExpiryQueue(ActivityRegistrationRepository registrationRepository) {
+        this.registrationRepository = registrationRepository;
+    }
+
+    /**
+     * 启动时从数据库重建队列
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        try {
+            for (Object[] row : registrationRepository.findUnpaidExpireTimes()) {
+                schedule((String) row[0], (LocalDateTime) row[1]);
+            }
+            log.info("报名支付超时队列重建完成: pendingRegistrations={}", pending.size());
+        } catch (Exception e) {
+            log.error("报名支付超时队列重建失败，超时报名将由兜底扫描处理: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 登记报名的支付过期时间，在事务中调用时提交后才入队
+     *
+     * @param registrationId 报名记录ID
+     * @param expireTime     支付过期时间
+     */
+    public void schedule(String registrationId, LocalDateTime expireTime) {
+        if (expireTime == null) {
+            return;
+        }
+        long deadlineMillis = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(registrationId, deadlineMillis);
+                }
+            });
+        } else {
+            enqueue(registrationId, deadlineMillis);
+        }
+    }
+
+    /**
+     * 报名已取消，不再需要到期处理
+     */
+    public void remove(String registrationId) {
+        pending.remove(registrationId);
+    }
+
+    /**
+     * 取出已到期的报名（最多 maxBatch 个）
+     */
+    public List<String> pollExpired(int maxBatch) {
+        List<ExpiryTask> tasks = new ArrayList<>();
+        queue.drainTo(tasks, maxBatch);
+
+        List<String> registrationIds = new ArrayList<>(tasks.size());
+        for (ExpiryTask task : tasks) {
+            if (pending.remove(task.registrationId)) {
+                registrationIds.add(task.registrationId);
+            }
+        }
+        return registrationIds;
+    }
+
+    /**
+     * 当前待到期处理的报名数
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    private void enqueue(String registrationId, long deadlineMillis) {
+        if (pending.add(registrationId)) {
+            queue.offer(new ExpiryTask(registrationId, deadlineMillis));
+        }
+    }
+
+    /**
+     * 延迟任务
+     */
+    private static class ExpiryTask implements Delayed {
+        private final String registrationId;
+        private final long deadlineMillis;
+
+        ExpiryTask(String registrationId, long deadlineMillis) {
+            this.registrationId = registrationId;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadlineMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadlineMillis, ((ExpiryTask) other).deadlineMillis);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.Product;
+import com.example.wq.entity.ProductStockBucket;
+import com.example.wq.repository.ProductRepository;
+import com.example.wq.repository.ProductStockBucketRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 商品库存分桶服务
+ *
+ * 热门商品的库存拆分到 N 个分桶行，支付时从订单ID哈希对应的分桶开始，
+ * 锁定一个未被占用且库存足够的分桶扣减，没有时再锁定全部分桶跨桶扣减；
+ * 并发支付分散到 N 个行锁上，吞吐随分桶数增长，而不是受限于单行商品记录。
+ *
+ * - 商品表 stock 由定时任务按分桶汇总回写（展示与对账用），分桶为扣减的准确来源
+ * - 定时任务同时在分桶库存失衡（有分桶接近售空）时重新均分
+ * - 分桶商品的库存调整需先关闭分桶，修改后再开启
+ */
+@Service
+public class StockBucketService {
+
+    private static final Logger log = LoggerFactory.getLogger(StockBucketService.class);
+
+    // 分桶数上限
+    public static final int MAX_STRIPES = 64;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductStockBucketRepository productStockBucketRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // 已分桶商品 -> 分桶数（本节点视图，定时刷新；视图过期时扣减会自动回退到另一种路径）
+    private final ConcurrentHashMap<String, Integer> stripedProducts = new ConcurrentHashMap<>();
+
+    /**
+     * 启动时加载已分桶商品
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void refreshStripedProducts() {
+        try {
+            Map<String, Integer> latest = new HashMap<>();
+            for (Object[] row : productRepository.findStripedProducts()) {
+                latest.put((String) row[0], ((Number) row[1]).intValue());
+            }
+            stripedProducts.putAll(latest);
+            stripedProducts.keySet().retainAll(latest.keySet());
+        } catch (Exception e) {
+            log.error("加载库存分桶商品失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 开启商品库存分桶，当前库存均分到各分桶
+     */
+    public Map<String, Object> enable(String productId, int stripes) {
+        if (stripes < 2 || stripes > MAX_STRIPES) {
+            throw new RuntimeException("分桶数需在 2 ~ " + MAX_STRIPES + " 之间");
+        }
+
+        Map<String, Object> result = transactionTemplate.execute(status -> {
+            Product product = entityManager.find(Product.class, productId, LockModeType.PESSIMISTIC_WRITE);
+            if (product == null) {
+                throw new RuntimeException("商品不存在: " + productId);
+            }
+            if (product.getStockStripes() != null && product.getStockStripes() > 0) {
+                throw new RuntimeException("商品已开启库存分桶");
+            }
+
+            int stock = product.getStock() != null ? product.getStock() : 0;
+            int[] shares = split(stock, stripes);
+            for (int i = 0; i < stripes; i++) {
+                ProductStockBucket bucket = new ProductStockBucket();
+                bucket.setProductId(productId);
+                bucket.setBucketNo(i);
+                bucket.setStock(shares[i]);
+                entityManager.persist(bucket);
+            }
+            product.setStockStripes(stripes);
+
+            Map<String, Object> data = new HashMap<>();
+            data.put("productId", productId);
+            data.put("stripes", stripes);
+            data.put("stock", stock);
+            return data;
+        });
+
+        stripedProducts.put(productId, stripes);
+        log.info("开启库存分桶: productId={}, stripes={}, stock={}", productId, stripes, result.get("stock"));
+        return result;
+    }
+
+    /**
+     * 关闭商品库存分桶，分桶库存汇总回商品表
+     */
+    public Map<String, Object> disable(String productId) {
+        Map<String, Object> result = transactionTemplate.execute(status -> {
+            Product product = entityManager.find(Product.class, productId, LockModeType.PESSIMISTIC_WRITE);
+            if (product == null) {
+                throw new RuntimeException("商品不存在: " + productId);
+            }
+            if (product.getStockStripes() == null || product.getStockStripes() <= 0) {
+                throw new RuntimeException("商品未开启库存分桶");
+            }
+
+            int stock = 0;
+            for (ProductStockBucket bucket : productStockBucketRepository.findByProductIdWithLock(productId)) {
+                stock += bucket.getStock();
+            }
+            productStockBucketRepository.deleteByProductId(productId);
+
+            product.setStock(stock);
+            product.setStockStripes(0);
+
+            Map<String, Object> data = new HashMap<>();
+            data.put("productId", productId);
+            data.put("stock", stock);
+            return data;
+        });
+
+        stripedProducts.remove(productId);
+        log.info("关闭库存分桶: productId={}, stock={}", productId, result.get("stock"));
+        return result;
+    }
+
+    /**
+     * 支付扣减库存（需在事务中调用）
+     * 未分桶商品扣减商品表，分桶商品扣减分桶；本节点视图过期时自动回退到另一种路径
+     *
+     * @param orderId 订单ID，用于选择起始分桶
+     * @return true-扣减成功，false-库存不足
+     */
+    public boolean decreaseStock(String productId, int quantity, String orderId) {
+        Integer stripes = stripedProducts.get(productId);
+        if (stripes == null) {
+            if (productRepository.decreaseStock(productId, quantity) == 1) {
+                return true;
+            }
+            // 库存不足，或其他节点已开启分桶（未分桶时查不到分桶，直接返回 false）
+            return drainBuckets(productId, quantity);
+        }
+
+        if (decreaseBuckets(productId, quantity, orderId, stripes)) {
+            return true;
+        }
+        // 其他节点已关闭分桶
+        return productRepository.decreaseStock(productId, quantity) == 1;
+    }
+
+    /**
+     * 获取商品的分桶明细
+     */
+    public Map<String, Object> getBuckets(String productId) {
+        List<Map<String, Object>> buckets = new ArrayList<>();
+        int total = 0;
+        for (ProductStockBucket bucket : productStockBucketRepository.findByProductIdOrderByBucketNo(productId)) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("bucketNo", bucket.getBucketNo());
+            item.put("stock", bucket.getStock());
+            buckets.add(item);
+            total += bucket.getStock();
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("productId", productId);
+        data.put("stripes", buckets.size());
+        data.put("stock", total);
+        data.put("buckets", buckets);
+        return data;
+    }
+
+    /**
+     * 汇总回写与再平衡
+     * 每10秒执行一次：分桶合计回写商品表 stock，分桶失衡时重新均分
+     */
+    @Scheduled(fixedDelay = 10000)
+    public void foldAndRebalance() {
+        refreshStripedProducts();
+
+        for (String productId : stripedProducts.keySet()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> foldProduct(productId));
+            } catch (Exception e) {
+                log.error("库存分桶汇总失败: productId={}, error={}", productId, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void foldProduct(String productId) {
+        List<ProductStockBucket> buckets = productStockBucketRepository.findByProductIdWithLock(productId);
+        if (buckets.isEmpty()) {
+            return;
+        }
+
+        int stock = 0;
+        int minStock = Integer.MAX_VALUE;
+        for (ProductStockBucket bucket : buckets) {
+            stock += bucket.getStock();
+            minStock = Math.min(minStock, bucket.getStock());
+        }
+
+        // 有分桶低于平均值的一半（含售空）时重新均分，避免支付频繁跨桶
+        boolean rebalance = stock >= buckets.size() && minStock * 2L * buckets.size() < stock;
+        int[] shares = rebalance ? split(stock, buckets.size()) : null;
+
+        if (shares != null) {
+            for (int i = 0; i < buckets.size(); i++) {
+                buckets.get(i).setStock(shares[i]);
+            }
+        }
+        productRepository.foldBucketStock(productId, stock);
+        if (rebalance) {
+            log.info("库存分桶再平衡: productId={}, stripes={}, stock={}", productId, buckets.size(), stock);
+        }
+    }
+
+    /**
+     * 扣减分桶：从订单ID哈希对应的分桶开始，锁定一个未被占用且库存足够的分桶扣减，
+     * 没有这样的分桶时锁定全部分桶跨桶扣减
+     *
+     * 选桶时跳过已锁定的分桶而不是等待，持有分桶锁的事务不会再等待其他分桶；
+     * 跨桶扣减前本事务未持有该商品的分桶锁，且按编号顺序加锁，并发支付不会死锁
+     */
+    private boolean decreaseBuckets(String productId, int quantity, String orderId, int stripes) {
+        int start = (orderId.hashCode() & 0x7fffffff) % stripes;
+        List<ProductStockBucket> available = productStockBucketRepository.findAvailableSkipLocked(
+                productId, quantity, start, PageRequest.of(0, 1));
+        if (!available.isEmpty()) {
+            ProductStockBucket bucket = available.get(0);
+            bucket.setStock(bucket.getStock() - quantity);
+            return true;
+        }
+        return drainBuckets(productId, quantity);
+    }
+
+    /**
+     * 跨桶扣减（单个分桶库存均不足，但合计可能足够）
+     */
+    private boolean drainBuckets(String productId, int quantity) {
+        List<ProductStockBucket> buckets = productStockBucketRepository.findByProductIdWithLock(productId);
+        int total = buckets.stream().mapToInt(ProductStockBucket::getStock).sum();
+        if (buckets.isEmpty() || total < quantity) {
+            return false;
+        }
+
+        int remaining = quantity;
+        for (ProductStockBucket bucket : buckets) {
+            int taken = Math.min(bucket.getStock(), remaining);
+            if (taken > 0) {
+                bucket.setStock(bucket.getStock() - taken);
+                remaining -= taken;
+            }
+            if (remaining == 0) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 库存均分，余数分给编号靠前的分桶
+     */
+    private int[] split(int stock, int stripes) {
+        int[] shares = new int[stripes];
+        for (int i = 0; i < stripes; i++) {
+            shares[i] = stock / stripes + (i < stock % stripes ? 1 : 0);
+        }
+        return shares;
+    }
+}
@@ -23,11 +23,17 @@ public class WeChatPayService {
 
     private final ActivityRegistrationRepository registrationRepository;
     private final CommunityActivityRepository activityRepository;
+    private final ActivitySeatAllocator seatAllocator;
+    private final RegistrationExpiryQueue registrationExpiryQueue;
 
     public WeChatPayService(ActivityRegistrationRepository registrationRepository,
-                            CommunityActivityRepository activityRepository) {
+                            CommunityActivityRepository activityRepository,
+                            ActivitySeatAllocator seatAllocator,
+                            RegistrationExpiryQueue registrationExpiryQueue) {
         this.registrationRepository = registrationRepository;
         this.activityRepository = activityRepository;
+        this.seatAllocator = seatAllocator;
+        this.registrationExpiryQueue = registrationExpiryQueue;
     }
 
     /**
@@ -203,7 +209,7 @@ public class WeChatPayService {
 
     /**
      * 取消未支付的订单（释放名额）
-     * 优化版：使用原子操作避免N+1查询
+     * 条件更新报名状态 + 相对释放名额，并发时不会重复释放
      *
      * @param registrationId 报名记录ID
      * @param orderNo        订单号
@@ -220,26 +226,19 @@ public class WeChatPayService {
             throw new RuntimeException("订单状态不允许取消");
         }
 
-        // 查询活动（获取当前人数用于CAS操作）
-        CommunityActivity activity = activityRepository.findById(registration.getActivityId())
-                .orElseThrow(() -> new RuntimeException("活动不存在"));
-
-        // 原子减少活动参与人数
-        int updatedRows = activityRepository.decrementParticipantsAtomically(
-                registration.getActivityId(),
-                activity.getCurrentParticipants()
-        );
-
-        if (updatedRows == 0) {
-            // CAS失败
-            log.warn("减少活动名额失败，活动信息已变更: activityId={}", registration.getActivityId());
+        // 条件更新报名状态（与支付回调、重复取消并发时只有一方成功）
+        int cancelled = registrationRepository.cancelIfUnpaid(
+                registration.get_id(), LocalDateTime.now(), "支付超时，订单自动取消");
+        if (cancelled == 0) {
+            throw new RuntimeException("订单状态不允许取消");
         }
 
-        // 更新报名状态为已取消
-        registration.setStatus(1); // 1=已取消
-        registration.setCancelTime(LocalDateTime.now());
-        registration.setCancelReason("支付超时，订单自动取消");
-        registrationRepository.save(registration);
+        // 相对释放名额（与并发报名/取消可交换，不依赖事先读取的人数）
+        if (activityRepository.decrementParticipants(registration.getActivityId()) == 0) {
+            log.warn("释放活动名额时人数已为0，等待对账修正: activityId={}", registration.getActivityId());
+        }
+        seatAllocator.release(registration.getActivityId());
+        registrationExpiryQueue.remove(registration.get_id());
 
         log.info("订单取消成功: orderNo={}", orderNo);
     }
@@ -0,0 +1,116 @@
+package com.example.wq.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分布式ID生成器（Snowflake 风格）
+ *
+ * 64位ID结构：1位符号 | 41位毫秒时间戳（自 2024-01-01 起）| 10位节点ID | 12位序列号
+ * - 无锁：时间戳与序列号打包在一个 AtomicLong 中，CAS 推进
+ * - 单调递增：同一毫秒序列号用尽或时钟回拨时，沿用上次时间戳继续递增（借用未来毫秒）
+ * - 节点感知：节点ID 读取系统属性/环境变量 WQ_NODE_ID（0-1023），未配置时由主机名推导
+ *
+ * 字符串形式固定19位（左补0），字典序与数值序一致，varchar 主键的聚簇索引也能顺序追加
+ */
+public final class SnowflakeIdGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(SnowflakeIdGenerator.class);
+
+    // 起始时间：2024-01-01 00:00:00 UTC
+    private static final long EPOCH = 1704067200000L;
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final int TIMESTAMP_SHIFT = NODE_BITS + SEQUENCE_BITS;
+
+    private static final int ID_STRING_LENGTH = 19;
+
+    private static final long NODE_ID = resolveNodeId();
+
+    // 高位为相对时间戳，低 SEQUENCE_BITS 位为序列号
+    private static final AtomicLong STATE = new AtomicLong();
+
+    private SnowflakeIdGenerator() {
+    }
+
+    /**
+     * 生成下一个ID
+     */
+    public static long nextId() {
+        while (true) {
+            long current = STATE.get();
+            long now = System.currentTimeMillis() - EPOCH;
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+
+            long next = now > lastTimestamp ? now << SEQUENCE_BITS : current + 1;
+            if (STATE.compareAndSet(current, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return (timestamp << TIMESTAMP_SHIFT) | (NODE_ID << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    /**
+     * 生成下一个ID（19位定长字符串）
+     */
+    public static String nextIdString() {
+        return toIdString(nextId());
+    }
+
+    /**
+     * 数值ID转为19位定长字符串
+     */
+    public static String toIdString(long id) {
+        String value = Long.toString(id);
+        if (value.length() >= ID_STRING_LENGTH) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(ID_STRING_LENGTH);
+        for (int i = value.length(); i < ID_STRING_LENGTH; i++) {
+            sb.append('0');
+        }
+        return sb.append(value).toString();
+    }
+
+    /**
+     * 解析ID中的生成时间（毫秒时间戳）
+     */
+    public static long extractTimestamp(long id) {
+        return (id >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+
+    /**
+     * 当前节点ID
+     */
+    public static long getNodeId() {
+        return NODE_ID;
+    }
+
+    private static long resolveNodeId() {
+        String configured = System.getProperty("WQ_NODE_ID", System.getenv("WQ_NODE_ID"));
+        if (configured != null && !configured.isBlank()) {
+            long nodeId = Long.parseLong(configured.trim());
+            if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+                throw new IllegalStateException("WQ_NODE_ID 超出范围(0-" + MAX_NODE_ID + "): " + nodeId);
+            }
+            return nodeId;
+        }
+
+        try {
+            String hostName = InetAddress.getLocalHost().getHostName();
+            long nodeId = (hostName.hashCode() & 0x7fffffff) % (MAX_NODE_ID + 1);
+            log.warn("未配置 WQ_NODE_ID，按主机名推导节点ID: host={}, nodeId={}（多节点部署请显式配置）", hostName, nodeId);
+            return nodeId;
+        } catch (Exception e) {
+            log.warn("未配置 WQ_NODE_ID 且无法获取主机名，使用节点ID 0");
+            return 0;
+        }
+    }
+}
@@ -1,9 +1,11 @@
-package com.example;
+package com.example.wq;
 
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
 
 @SpringBootTest
+@ActiveProfiles("test")
 class WqApplicationTests {
 
 	@Test
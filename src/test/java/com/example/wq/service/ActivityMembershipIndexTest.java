@@ -0,0 +1,214 @@
+package com.example.wq.service;
+
+import com.example.wq.repository.ActivityRegistrationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 活动报名成员索引单元测试（不启动 Spring 容器，仓库为 Mock，报名数据保存在测试内的 Map 中）
+ *
+ * 校验精确集合与布隆过滤器两种形态下已报名用户不会被判为未报名（含加载后追加的用户）、
+ * 超出规模后丢弃并重新加载、活动数达到上限后改为按用户查询，以及批量检查的查询次数
+ */
+class ActivityMembershipIndexTest {
+
+    private final Map<String, Set<String>> registrations = new HashMap<>();
+
+    private ActivityRegistrationRepository registrationRepository;
+    private ActivityMembershipIndex membershipIndex;
+
+    @BeforeEach
+    void setUp() {
+        registrationRepository = mock(ActivityRegistrationRepository.class);
+        membershipIndex = new ActivityMembershipIndex(registrationRepository);
+
+        when(registrationRepository.findActivityUserPairsByActivityIdIn(anyCollection())).thenAnswer(invocation -> {
+            List<Object[]> rows = new ArrayList<>();
+            for (String activityId : invocation.<Collection<String>>getArgument(0)) {
+                registrations.getOrDefault(activityId, Set.of())
+                        .forEach(userId -> rows.add(new Object[]{activityId, userId}));
+            }
+            return rows;
+        });
+        when(registrationRepository.existsByActivityIdAndUserId(anyString(), anyString())).thenAnswer(invocation ->
+                registrations.getOrDefault(invocation.<String>getArgument(0), Set.of())
+                        .contains(invocation.<String>getArgument(1)));
+        when(registrationRepository.findActivityIdsByUserIdAndActivityIdIn(anyString(), anyCollection())).thenAnswer(invocation -> {
+            String userId = invocation.getArgument(0);
+            return invocation.<Collection<String>>getArgument(1).stream()
+                    .filter(activityId -> registrations.getOrDefault(activityId, Set.of()).contains(userId))
+                    .toList();
+        });
+    }
+
+    @Test
+    void exactSetAnswersFromMemory() {
+        register("act-1", 50);
+
+        assertTrue(membershipIndex.isRegistered("act-1", "u0"));
+        assertTrue(membershipIndex.isRegistered("act-1", "u49"));
+        assertFalse(membershipIndex.isRegistered("act-1", "u50"));
+
+        verify(registrationRepository, times(1)).findActivityUserPairsByActivityIdIn(anyCollection());
+        verify(registrationRepository, never()).existsByActivityIdAndUserId(anyString(), anyString());
+        assertEquals(1, membershipIndex.getStats().get("exactActivities"));
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegativesAfterAdd() {
+        register("act-1", 2_000);
+        assertTrue(membershipIndex.isRegistered("act-1", "u0"));
+        assertEquals(1, membershipIndex.getStats().get("bloomActivities"));
+
+        for (int i = 2_000; i < 2_500; i++) {
+            registrations.get("act-1").add("u" + i);
+            membershipIndex.onRegistered("act-1", "u" + i);
+        }
+
+        for (int i = 0; i < 2_500; i++) {
+            assertTrue(membershipIndex.isRegistered("act-1", "u" + i), "u" + i);
+        }
+        // 追加的用户仍在容量内，未触发重新加载
+        verify(registrationRepository, times(1)).findActivityUserPairsByActivityIdIn(anyCollection());
+        assertEquals(1, membershipIndex.getStats().get("bloomActivities"));
+    }
+
+    @Test
+    void bloomFilterAnswersMostNonMembersFromMemory() {
+        register("act-1", 2_000);
+        membershipIndex.isRegistered("act-1", "u0");
+        long checksBefore = (Long) membershipIndex.getStats().get("databaseChecks");
+
+        int nonMembers = 10_000;
+        for (int i = 0; i < nonMembers; i++) {
+            assertFalse(membershipIndex.isRegistered("act-1", "guest" + i));
+        }
+
+        // 容量为报名人数的2倍时误判率远低于 1%，这里留足余量
+        long falsePositives = (Long) membershipIndex.getStats().get("databaseChecks") - checksBefore;
+        assertTrue(falsePositives < nonMembers / 50, "falsePositives=" + falsePositives);
+    }
+
+    @Test
+    void exactSetOverThresholdIsDroppedAndReloaded() {
+        register("act-1", 1_000);
+        assertTrue(membershipIndex.isRegistered("act-1", "u0"));
+
+        registrations.get("act-1").add("u1000");
+        membershipIndex.onRegistered("act-1", "u1000");
+        assertEquals(0, membershipIndex.getStats().get("activities"));
+
+        assertTrue(membershipIndex.isRegistered("act-1", "u1000"));
+        verify(registrationRepository, times(2)).findActivityUserPairsByActivityIdIn(anyCollection());
+        assertEquals(1, membershipIndex.getStats().get("bloomActivities"));
+    }
+
+    @Test
+    void bloomFilterOverCapacityIsDroppedAndReloaded() {
+        register("act-1", 1_001);
+        assertTrue(membershipIndex.isRegistered("act-1", "u0"));
+
+        // 容量为加载时人数的2倍（2002），多追加一些以覆盖位已全部置位、不计数的重复写入
+        for (int i = 1_001; i < 2_100; i++) {
+            registrations.get("act-1").add("u" + i);
+            membershipIndex.onRegistered("act-1", "u" + i);
+        }
+        assertEquals(0, membershipIndex.getStats().get("activities"));
+
+        assertTrue(membershipIndex.isRegistered("act-1", "u2099"));
+        verify(registrationRepository, times(2)).findActivityUserPairsByActivityIdIn(anyCollection());
+    }
+
+    @Test
+    void onRegisteredIgnoresActivitiesNotLoaded() {
+        membershipIndex.onRegistered("act-1", "u0");
+
+        assertEquals(0, membershipIndex.getStats().get("activities"));
+        verify(registrationRepository, never()).findActivityUserPairsByActivityIdIn(anyCollection());
+    }
+
+    @Test
+    void onRemovedDropsTheActivity() {
+        register("act-1", 10);
+        assertTrue(membershipIndex.isRegistered("act-1", "u3"));
+
+        registrations.get("act-1").remove("u3");
+        membershipIndex.onRemoved("act-1");
+
+        assertFalse(membershipIndex.isRegistered("act-1", "u3"));
+        verify(registrationRepository, times(2)).findActivityUserPairsByActivityIdIn(anyCollection());
+    }
+
+    @Test
+    void fullIndexFallsBackToPerUserQuery() {
+        List<String> activityIds = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            activityIds.add("act-" + i);
+        }
+        membershipIndex.areRegistered(activityIds, "u0");
+        assertEquals(20_000, membershipIndex.getStats().get("activities"));
+
+        register("act-new", 5);
+        assertTrue(membershipIndex.isRegistered("act-new", "u1"));
+        assertFalse(membershipIndex.isRegistered("act-new", "u9"));
+
+        verify(registrationRepository, never()).findActivityUserPairsByActivityIdIn(
+                argThat(ids -> ids.contains("act-new")));
+        verify(registrationRepository, times(2)).existsByActivityIdAndUserId(eq("act-new"), anyString());
+    }
+
+    @Test
+    void areRegisteredBatchesLoadsAndConfirmations() {
+        register("exact", 10);
+        register("bloom", 1_500);
+        register("cold", 10);
+        membershipIndex.areRegistered(List.of("exact", "bloom"), "u0");
+
+        Map<String, Boolean> result = membershipIndex.areRegistered(
+                List.of("cold", "bloom", "exact", "cold"), "u5");
+
+        Map<String, Boolean> expected = new LinkedHashMap<>();
+        expected.put("cold", true);
+        expected.put("bloom", true);
+        expected.put("exact", true);
+        assertEquals(expected, result);
+        assertEquals(List.of("cold", "bloom", "exact"), new ArrayList<>(result.keySet()));
+
+        // 已加载的活动不重复加载，未加载的活动一次加载，布隆过滤器的"可能已报名"一次确认
+        verify(registrationRepository, times(2)).findActivityUserPairsByActivityIdIn(anyCollection());
+        verify(registrationRepository).findActivityUserPairsByActivityIdIn(List.of("cold"));
+        verify(registrationRepository).findActivityIdsByUserIdAndActivityIdIn(eq("u5"), eq(List.of("bloom")));
+        verify(registrationRepository, never()).existsByActivityIdAndUserId(any(), any());
+    }
+
+    private void register(String activityId, int users) {
+        Set<String> userIds = new HashSet<>();
+        for (int i = 0; i < users; i++) {
+            userIds.add("u" + i);
+        }
+        registrations.put(activityId, userIds);
+    }
+}
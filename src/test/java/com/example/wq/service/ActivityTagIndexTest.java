@@ -0,0 +1,182 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.CommunityActivity;
+import com.example.wq.entity.PageResult;
+import com.example.wq.enums.ActivityStatus;
+import com.example.wq.repository.CommunityActivityRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 活动标签倒排索引单元测试（不启动 Spring 容器，仓库为 Mock）
+ *
+ * 校验标签 AND/OR 组合与分面数量、分类/状态分面不应用自身筛选条件、
+ * 活动移出后序号回收复用，以及参与人数变化后快照替换
+ */
+class ActivityTagIndexTest {
+
+    private static final LocalDateTime BASE_TIME = LocalDateTime.of(2026, 5, 1, 9, 0);
+
+    private static final int REGISTERING = ActivityStatus.REGISTERING.getCode();
+    private static final int CLOSED = ActivityStatus.REGISTRATION_CLOSED.getCode();
+
+    private CommunityActivityRepository activityRepository;
+    private ActivityTagIndex tagIndex;
+
+    @BeforeEach
+    void setUp() {
+        activityRepository = mock(CommunityActivityRepository.class);
+        tagIndex = new ActivityTagIndex(activityRepository);
+        when(activityRepository.findLiveActivities(anyInt(), anyInt())).thenReturn(List.of(
+                activity("a1", 1, REGISTERING, 1, "健身", "户外"),
+                activity("a2", 1, CLOSED, 2, "健身"),
+                activity("a3", 2, REGISTERING, 3, "户外", "亲子"),
+                activity("a4", 3, REGISTERING, 4, "亲子"),
+                activity("a5", 2, REGISTERING, 5, "健身", "户外", "亲子")
+        ));
+        tagIndex.rebuild();
+    }
+
+    @Test
+    void allTagsMatchEveryTagWithFacetCounts() {
+        Map<String, Object> result = search(List.of("健身", "户外"), null, null, null);
+
+        assertEquals(List.of("a1", "a5"), ids(result));
+        assertEquals(Map.of("健身", 2, "户外", 2, "亲子", 1), facets(result, "tags"));
+        assertEquals(Map.of(1, 1, 2, 1), facets(result, "categories"));
+        assertEquals(Map.of(REGISTERING, 2), facets(result, "statuses"));
+    }
+
+    @Test
+    void anyTagsMatchAtLeastOneTag() {
+        Map<String, Object> result = search(null, List.of("亲子", "不存在"), null, null);
+
+        assertEquals(List.of("a3", "a4", "a5"), ids(result));
+        assertEquals(Map.of("亲子", 3, "户外", 2, "健身", 1), facets(result, "tags"));
+    }
+
+    @Test
+    void allAndAnyTagsCombine() {
+        Map<String, Object> result = search(List.of("户外"), List.of("健身", "亲子"), null, null);
+
+        assertEquals(List.of("a1", "a3", "a5"), ids(result));
+        assertEquals(0, ids(search(List.of("户外", "不存在"), null, null, null)).size());
+    }
+
+    @Test
+    void categoryAndStatusFacetsExcludeTheirOwnFilter() {
+        Map<String, Object> result = search(null, null, List.of(REGISTERING), List.of(1));
+
+        assertEquals(List.of("a1"), ids(result));
+        // 分类分面只应用状态条件：报名中的活动在各分类上的数量
+        assertEquals(Map.of(1, 1, 2, 2, 3, 1), facets(result, "categories"));
+        // 状态分面只应用分类条件：分类1的活动在各状态上的数量
+        assertEquals(Map.of(REGISTERING, 1, CLOSED, 1), facets(result, "statuses"));
+        // 标签分面使用完整的匹配结果
+        assertEquals(Map.of("健身", 1, "户外", 1), facets(result, "tags"));
+    }
+
+    @Test
+    void startTimeFilterAppliesToEveryFacet() {
+        Map<String, Object> result = tagIndex.search(null, null, null, List.of(2),
+                BASE_TIME.plusDays(4), null, 0, 20);
+
+        assertEquals(List.of("a5"), ids(result));
+        assertEquals(Map.of(2, 1, 3, 1), facets(result, "categories"));
+        assertEquals(Map.of(REGISTERING, 1), facets(result, "statuses"));
+    }
+
+    @Test
+    void removedOrdinalsAreReused() {
+        int slots = (Integer) tagIndex.getStats().get("slots");
+
+        tagIndex.removeActivity("a2");
+        tagIndex.indexActivity(activity("a6", 4, REGISTERING, 6, "讲座"));
+
+        assertEquals(slots, tagIndex.getStats().get("slots"));
+        assertEquals(List.of("a1", "a5"), ids(search(List.of("健身"), null, null, null)));
+        assertEquals(List.of("a6"), ids(search(List.of("讲座"), null, null, null)));
+        assertEquals(2, facets(search(null, null, null, null), "tags").get("健身"));
+        assertEquals(Map.of(REGISTERING, 5), facets(search(null, null, null, null), "statuses"));
+    }
+
+    @Test
+    void reindexMovesActivityBetweenBitmaps() {
+        tagIndex.indexActivity(activity("a1", 4, CLOSED, 1, "讲座"));
+
+        assertEquals(List.of("a5"), ids(search(List.of("健身", "户外"), null, null, null)));
+        assertEquals(List.of("a1"), ids(search(List.of("讲座"), null, List.of(CLOSED), List.of(4))));
+    }
+
+    @Test
+    void participantDeltaReplacesSnapshot() {
+        tagIndex.adjustParticipants("a4", 2);
+        tagIndex.adjustParticipants("a4", -15);
+        tagIndex.adjustParticipants("a5", 3);
+
+        List<CommunityActivity> content = page(search(List.of("亲子"), null, null, null)).getContent();
+        assertEquals(0, content.get(1).getCurrentParticipants());
+        assertEquals(13, content.get(2).getCurrentParticipants());
+    }
+
+    @Test
+    void returnsSnapshotsNotIndexedEntities() {
+        CommunityActivity source = activity("a7", 5, REGISTERING, 7, "书法");
+        tagIndex.indexActivity(source);
+        source.setTitle("changed");
+
+        CommunityActivity view = page(search(List.of("书法"), null, null, null)).getContent().get(0);
+        assertNotSame(source, view);
+        assertEquals("a7", view.getTitle());
+    }
+
+    @Test
+    void pagesInStartTimeOrder() {
+        Map<String, Object> result = tagIndex.search(null, null, null, null, null, null, 1, 2);
+
+        assertEquals(List.of("a3", "a4"), ids(result));
+        assertEquals(5, page(result).getTotalElements());
+    }
+
+    private Map<String, Object> search(List<String> allTags, List<String> anyTags,
+                                       List<Integer> statuses, List<Integer> categories) {
+        return tagIndex.search(allTags, anyTags, statuses, categories, null, null, 0, 20);
+    }
+
+    private static CommunityActivity activity(String id, int category, int status, int dayOffset, String... tags) {
+        CommunityActivity activity = new CommunityActivity();
+        activity.set_id(id);
+        activity.setTitle(id);
+        activity.setCategory(category);
+        activity.setStatus(status);
+        activity.setActivityStartTime(BASE_TIME.plusDays(dayOffset));
+        activity.setMaxParticipants(100);
+        activity.setCurrentParticipants(10);
+        activity.setTags(List.of(tags));
+        return activity;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PageResult<CommunityActivity> page(Map<String, Object> result) {
+        return (PageResult<CommunityActivity>) result.get("page");
+    }
+
+    private static List<String> ids(Map<String, Object> result) {
+        return page(result).getContent().stream().map(CommunityActivity::get_id).toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> Map<K, Integer> facets(Map<String, Object> result, String dimension) {
+        return (Map<K, Integer>) ((Map<String, Object>) result.get("facets")).get(dimension);
+    }
+}
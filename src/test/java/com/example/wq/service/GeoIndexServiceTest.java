@@ -0,0 +1,169 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.CommunityActivity;
+import com.example.wq.enums.ActivityStatus;
+import com.example.wq.repository.CommunityActivityRepository;
+import com.example.wq.repository.CommunityRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 附近活动网格索引单元测试（不启动 Spring 容器，仓库为 Mock）
+ *
+ * 校验逐圈扫描的停止条件（与逐点计算距离的结果一致）、±180° 经线两侧的回绕，
+ * 以及查询结果直接返回内存快照、不访问数据库
+ */
+class GeoIndexServiceTest {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    private CommunityActivityRepository activityRepository;
+    private CommunityRepository communityRepository;
+    private GeoIndexService geoIndexService;
+
+    @BeforeEach
+    void setUp() {
+        activityRepository = mock(CommunityActivityRepository.class);
+        communityRepository = mock(CommunityRepository.class);
+        geoIndexService = new GeoIndexService(activityRepository, communityRepository);
+    }
+
+    @Test
+    void nearestWithinRadiusMatchesBruteForce() {
+        Random random = new Random(42);
+        List<CommunityActivity> activities = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // 以 (31.23, 121.47) 为中心约 ±30 公里范围内随机分布
+            activities.add(activity("a" + i, 31.23 + (random.nextDouble() - 0.5) * 0.6,
+                    121.47 + (random.nextDouble() - 0.5) * 0.6));
+        }
+        rebuild(activities);
+
+        double latitude = 31.2345;
+        double longitude = 121.4712;
+        for (int radius : new int[]{800, 3_000, 12_000}) {
+            List<Map<String, Object>> result = geoIndexService.findNearbyActivities(
+                    latitude, longitude, radius, 20, null, null);
+
+            List<String> expected = activities.stream()
+                    .filter(a -> distance(latitude, longitude, a.getLatitude(), a.getLongitude()) <= radius)
+                    .sorted(Comparator.comparingDouble(a -> distance(latitude, longitude, a.getLatitude(), a.getLongitude())))
+                    .limit(20)
+                    .map(CommunityActivity::get_id)
+                    .toList();
+            assertEquals(expected, ids(result), "radius=" + radius);
+        }
+    }
+
+    @Test
+    void resultsAreSortedByDistanceAndLimited() {
+        List<CommunityActivity> activities = new ArrayList<>();
+        for (int i = 1; i <= 30; i++) {
+            activities.add(activity("a" + i, 30.0 + i * 0.001, 120.0));
+        }
+        rebuild(activities);
+
+        List<Map<String, Object>> result = geoIndexService.findNearbyActivities(30.0, 120.0, 2_000, 5, null, null);
+
+        assertEquals(List.of("a1", "a2", "a3", "a4", "a5"), ids(result));
+        long previous = -1;
+        for (Map<String, Object> item : result) {
+            long distance = (Long) item.get("distance");
+            assertTrue(distance >= previous);
+            previous = distance;
+        }
+    }
+
+    @Test
+    void wrapsAroundAntimeridian() {
+        List<CommunityActivity> activities = new ArrayList<>();
+        activities.add(activity("east", 0.0, 179.998));
+        activities.add(activity("west", 0.0, -179.997));
+        // 远处的点使索引足够稠密，走逐圈扫描而不是逐点计算
+        for (int i = 0; i < 50; i++) {
+            activities.add(activity("far" + i, 45.0, 10.0 + i * 0.1));
+        }
+        rebuild(activities);
+
+        List<Map<String, Object>> fromWest = geoIndexService.findNearbyActivities(0.0, -179.999, 1_000, 10, null, null);
+        assertEquals(List.of("west", "east"), ids(fromWest));
+
+        List<Map<String, Object>> fromEast = geoIndexService.findNearbyActivities(0.0, 179.9995, 1_000, 10, null, null);
+        assertEquals(List.of("east", "west"), ids(fromEast));
+    }
+
+    @Test
+    void filtersByStatusAndCategory() {
+        CommunityActivity closed = activity("closed", 30.0, 120.001);
+        closed.setStatus(ActivityStatus.REGISTRATION_CLOSED.getCode());
+        CommunityActivity other = activity("other", 30.0, 120.002);
+        other.setCategory(2);
+        rebuild(List.of(activity("open", 30.0, 120.003), closed, other));
+
+        assertEquals(List.of("other", "open"), ids(geoIndexService.findNearbyActivities(
+                30.0, 120.0, 1_000, 10, List.of(ActivityStatus.REGISTERING.getCode()), null)));
+        assertEquals(List.of("closed", "open"), ids(geoIndexService.findNearbyActivities(
+                30.0, 120.0, 1_000, 10, null, 1)));
+    }
+
+    @Test
+    void servesSnapshotsAndAppliesParticipantDeltas() {
+        CommunityActivity source = activity("a1", 30.0, 120.0);
+        source.setCurrentParticipants(3);
+        rebuild(List.of(source));
+
+        geoIndexService.adjustParticipants("a1", 1);
+        source.setCurrentParticipants(100);
+
+        CommunityActivity view = (CommunityActivity) geoIndexService.findNearbyActivities(
+                30.0, 120.0, 1_000, 10, null, null).get(0).get("activity");
+        assertNotSame(source, view);
+        assertEquals(4, view.getCurrentParticipants());
+        verify(activityRepository, never()).findAllById(any());
+    }
+
+    private void rebuild(List<CommunityActivity> activities) {
+        when(activityRepository.findGeoCandidates(anyInt(), anyInt())).thenReturn(activities);
+        when(communityRepository.findGeoCandidates(anyInt())).thenReturn(List.of());
+        geoIndexService.rebuild();
+    }
+
+    private static CommunityActivity activity(String id, double latitude, double longitude) {
+        CommunityActivity activity = new CommunityActivity();
+        activity.set_id(id);
+        activity.setLatitude(latitude);
+        activity.setLongitude(longitude);
+        activity.setCategory(1);
+        activity.setMaxParticipants(50);
+        return activity;
+    }
+
+    private static List<String> ids(List<Map<String, Object>> result) {
+        return result.stream().map(item -> ((CommunityActivity) item.get("activity")).get_id()).toList();
+    }
+
+    private static double distance(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
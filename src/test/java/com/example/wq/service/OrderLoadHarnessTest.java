@@ -0,0 +1,245 @@
+package com.example.wq.service;
+
+import com.example.wq.entity.Product;
+import com.example.wq.repository.ProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 下单并发压测
+ *
+ * 内存 H2（MySQL 兼容模式）+ 进程内多线程客户端：热门商品（其中一个开启库存分桶）与普通商品混合下单，
+ * 随后随机支付/取消/保持待支付，输出各操作 p50/p99 延迟与下单吞吐，最后校验每个商品：
+ * - 库存 + 已支付数量 = 初始库存（不超卖、不少卖）
+ * - 锁定中的预占数量 = 待支付订单数量
+ * - 销量 = 已支付数量，库存账本可用量 = 库存 - 锁定预占
+ *
+ * 默认规模随 mvn test 运行；加压：mvn test -Dtest=OrderLoadHarnessTest -Dwq.load.threads=32 -Dwq.load.orders=20000
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class OrderLoadHarnessTest {
+
+    private static final int THREADS = Integer.getInteger("wq.load.threads", 16);
+    private static final int ORDERS = Integer.getInteger("wq.load.orders", 1000);
+
+    private static final int HOT_PRODUCTS = 2;
+    private static final int HOT_STOCK = 300;
+    private static final int NORMAL_PRODUCTS = 10;
+    private static final int NORMAL_STOCK = 100_000;
+
+    @Autowired
+    private MallOrderService mallOrderService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private InventoryLedgerService inventoryLedgerService;
+
+    @Autowired
+    private StockBucketService stockBucketService;
+
+    @Autowired
+    private OrderOutboxService orderOutboxService;
+
+    @Autowired
+    private ProductCounterService productCounterService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void submitPayCancelUnderContention() throws Exception {
+        List<Product> hot = new ArrayList<>();
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < HOT_PRODUCTS + NORMAL_PRODUCTS; i++) {
+            Product product = seedProduct("load-" + i, i < HOT_PRODUCTS ? HOT_STOCK : NORMAL_STOCK);
+            products.add(product);
+            if (i < HOT_PRODUCTS) {
+                hot.add(product);
+            }
+        }
+        stockBucketService.enable(hot.get(0).get_id(), 4);
+
+        List<Long> submitNanos = Collections.synchronizedList(new ArrayList<>());
+        List<Long> payNanos = Collections.synchronizedList(new ArrayList<>());
+        List<Long> cancelNanos = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger submitted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger paid = new AtomicInteger();
+        AtomicInteger cancelled = new AtomicInteger();
+        AtomicInteger sequence = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int n;
+                    while ((n = sequence.getAndIncrement()) < ORDERS) {
+                        // 70% 的下单集中在热门商品上
+                        Product product = random.nextInt(100) < 70
+                                ? hot.get(random.nextInt(hot.size()))
+                                : products.get(HOT_PRODUCTS + random.nextInt(NORMAL_PRODUCTS));
+
+                        long begin = System.nanoTime();
+                        MallOrderService.SubmitOrderResult result = mallOrderService.submitOrder(
+                                request("load-user-" + n, product.get_id(), 1 + random.nextInt(3)));
+                        submitNanos.add(System.nanoTime() - begin);
+                        if (!result.isSuccess()) {
+                            rejected.incrementAndGet();
+                            continue;
+                        }
+                        submitted.incrementAndGet();
+
+                        int action = random.nextInt(100);
+                        if (action < 60) {
+                            begin = System.nanoTime();
+                            if (Boolean.TRUE.equals(mallOrderService.payOrder(result.getOrderId()).get("success"))) {
+                                paid.incrementAndGet();
+                            }
+                            payNanos.add(System.nanoTime() - begin);
+                        } else if (action < 85) {
+                            begin = System.nanoTime();
+                            if (Boolean.TRUE.equals(mallOrderService.cancelOrder(result.getOrderId(), "压测取消").get("success"))) {
+                                cancelled.incrementAndGet();
+                            }
+                            cancelNanos.add(System.nanoTime() - begin);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        assertTrue(done.await(10, TimeUnit.MINUTES), "压测超时");
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        executor.shutdown();
+
+        System.out.printf("%n==== 下单压测：threads=%d, attempts=%d, elapsed=%.2fs ====%n", THREADS, ORDERS, seconds);
+        System.out.printf("下单成功 %d，拒绝（售罄等） %d，支付 %d，取消 %d，吞吐 %.1f orders/s%n",
+                submitted.get(), rejected.get(), paid.get(), cancelled.get(), submitted.get() / seconds);
+        report("submitOrder", submitNanos);
+        report("payOrder", payNanos);
+        report("cancelOrder", cancelNanos);
+
+        settle();
+        for (int i = 0; i < products.size(); i++) {
+            assertInvariants(products.get(i), i < HOT_PRODUCTS ? HOT_STOCK : NORMAL_STOCK);
+        }
+    }
+
+    /**
+     * 等待异步部分落定：分桶汇总回写、订单事件分发、销量计数回写
+     */
+    private void settle() throws InterruptedException {
+        stockBucketService.foldAndRebalance();
+        for (int i = 0; i < 100 && pendingOutboxEvents() > 0; i++) {
+            if (orderOutboxService.dispatchBatch(500) == 0) {
+                // 其他事件正由后台分发任务处理
+                Thread.sleep(50);
+            }
+        }
+        assertEquals(0, pendingOutboxEvents(), "订单事件未分发完");
+        // 后台分发事务提交后才累加计数，留出提交回调的时间
+        Thread.sleep(300);
+        productCounterService.flush();
+    }
+
+    private void assertInvariants(Product seeded, int initialStock) {
+        String productId = seeded.get_id();
+        Product product = productRepository.findById(productId).orElseThrow();
+        int paidQuantity = sumItemQuantity(productId, "1, 2, 3");
+        int pendingQuantity = sumItemQuantity(productId, "0");
+        Integer locked = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(quantity), 0) FROM inventory_lock WHERE product_id = ? AND status = 1",
+                Integer.class, productId);
+
+        String name = product.getName();
+        assertTrue(product.getStock() >= 0, name + " 库存为负");
+        assertEquals(initialStock, product.getStock() + paidQuantity, name + " 库存 + 已支付 != 初始库存");
+        assertEquals(pendingQuantity, locked, name + " 锁定预占 != 待支付数量");
+        assertEquals(paidQuantity, product.getSales(), name + " 销量 != 已支付数量");
+        assertEquals(product.getStock() - locked, inventoryLedgerService.getAvailable(productId),
+                name + " 账本可用量 != 库存 - 锁定预占");
+    }
+
+    private int sumItemQuantity(String productId, String statuses) {
+        Integer quantity = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(oi.quantity), 0) FROM order_item oi JOIN wqorder o ON o._id = oi.order_id " +
+                        "WHERE oi.product_id = ? AND o.status IN (" + statuses + ")",
+                Integer.class, productId);
+        return quantity != null ? quantity : 0;
+    }
+
+    private int pendingOutboxEvents() {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM order_outbox WHERE dispatch_status = 0", Integer.class);
+        return count != null ? count : 0;
+    }
+
+    private Product seedProduct(String name, int stock) {
+        Product product = new Product();
+        product.setName(name);
+        product.setPrice(new BigDecimal("9.90"));
+        product.setCategory(1);
+        product.setPoster("load.png");
+        product.setStock(stock);
+        return productRepository.save(product);
+    }
+
+    private MallOrderService.SubmitOrderRequest request(String userId, String productId, int quantity) {
+        MallOrderService.SubmitOrderRequest.OrderItemRequest item = new MallOrderService.SubmitOrderRequest.OrderItemRequest();
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+
+        MallOrderService.SubmitOrderRequest request = new MallOrderService.SubmitOrderRequest();
+        request.setUserId(userId);
+        request.setReceiverName("压测");
+        request.setReceiverPhone("13800138000");
+        request.setReceiverAddress("压测地址");
+        request.setItems(List.of(item));
+        return request;
+    }
+
+    private void report(String operation, List<Long> nanos) {
+        if (nanos.isEmpty()) {
+            return;
+        }
+        List<Long> sorted = new ArrayList<>(nanos);
+        Collections.sort(sorted);
+        System.out.printf("%-12s count=%-6d p50=%.2fms p99=%.2fms max=%.2fms%n", operation, sorted.size(),
+                percentile(sorted, 50), percentile(sorted, 99), sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    private double percentile(List<Long> sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(index, 0)) / 1e6;
+    }
+}